@@ -0,0 +1,501 @@
+package net.xprova.simulations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.xprova.simulations.TransitionSystem.Gate;
+
+public class BddExplorer {
+
+	// Symbolic breadth-first state space exploration of a TransitionSystem
+	// using BDDs. Sets of states are represented by their characteristic
+	// functions over the current-state variables, and each BFS frontier is
+	// expanded in one image computation, so the cost depends on the size of
+	// the BDDs rather than on the number of states.
+	//
+	// The search follows the same scheme as template1.j (properties are
+	// checked against the states first discovered at each distance, with
+	// delayed properties ignored at distances below their delay).
+	//
+	// The transition relation is partitioned per state bit (next-state
+	// variable equals the next-state function) and clustered, each image
+	// conjoins the clusters in order and quantifies current-state and input
+	// variables as soon as no later cluster depends on them.
+	//
+	// The initial variable order interleaves the current and next variables
+	// of each state bit in the order of state bits used by code generation,
+	// preceded by the input variables. The BDD manager sifts these groups
+	// when the number of nodes grows.
+
+	public static final int L = 0;
+	public static final int H = -1;
+
+	// maximum size (in nodes) of a cluster of the transition relation
+
+	private static final int CLUSTER_LIMIT = 5000;
+
+	// minimum number of nodes before garbage collection
+
+	private static final int GC_THRESHOLD = 1 << 18;
+
+	private final TransitionSystem ts;
+
+	private final BddManager bdd;
+
+	private int[] curVars, nextVars, inVars;
+
+	// renaming of next-state to current-state variables
+
+	private int[] renameMap;
+
+	// variable groups kept together while reordering
+
+	private ArrayList<int[]> groups;
+
+	// function of each net over current-state and input variables
+
+	private int[] nets;
+
+	// transition relation clusters and the variables quantified after each
+
+	private ArrayList<Integer> clusters, clusterCubes;
+
+	// current-state and input variables not in any cluster
+
+	private int initialCube;
+
+	private int nextCollect = GC_THRESHOLD;
+
+	public BddExplorer(TransitionSystem ts) throws Exception {
+
+		if (ts.liveAssertions.length > 0)
+			throw new Exception("BDD engine does not support liveness assertions");
+
+		this.ts = ts;
+
+		bdd = new BddManager(1 << 16);
+
+	}
+
+	public Waveform exploreSpace() throws Exception {
+
+		// returns the waveforms of all nets in a counter-example or null if
+		// all assertions hold
+
+		System.out.println("Building transition relation ...");
+
+		createVariables();
+
+		bdd.setAutoReorder(groups);
+
+		buildNets();
+
+		buildRelation();
+
+		System.out.println("Starting search ...");
+
+		long startTime = System.nanoTime();
+
+		int reached = bdd.ref(getResetState());
+
+		int frontier = bdd.ref(reached);
+
+		ArrayList<Integer> frontiers = new ArrayList<Integer>();
+
+		int distance = 0;
+
+		int bad = BddManager.FALSE;
+
+		while (frontier != BddManager.FALSE) {
+
+			frontiers.add(frontier);
+
+			int assumed = bdd.ref(bdd.and(frontier, checkProperties(ts.assumptions, ts.assumptionDelays, distance)));
+
+			int asserted = checkProperties(ts.assertions, ts.assertionDelays, distance);
+
+			bad = bdd.ref(bdd.and(assumed, bdd.not(asserted)));
+
+			if (bad != BddManager.FALSE) {
+
+				bdd.deref(assumed);
+
+				break;
+
+			}
+
+			int successors = bdd.ref(image(assumed));
+
+			bdd.deref(assumed);
+
+			frontier = bdd.ref(bdd.and(successors, bdd.not(reached)));
+
+			bdd.deref(successors);
+
+			int newReached = bdd.ref(bdd.or(reached, frontier));
+
+			bdd.deref(reached);
+
+			reached = newReached;
+
+			distance++;
+
+			collect();
+
+		}
+
+		double searchTime = (System.nanoTime() - startTime) / 1e9;
+
+		System.out.printf("Completed search in %f seconds\n", searchTime);
+
+		System.out.printf("State bits                     : %d\n", ts.stateBitCount);
+
+		System.out.printf("Input bits                     : %d\n", ts.inputBitCount);
+
+		System.out.printf("States reached                 : %.0f\n", bdd.satCount(reached, curVars));
+
+		System.out.printf("Search depth                   : %d\n", distance);
+
+		System.out.printf("BDD nodes (peak)               : %d\n", bdd.getPeakNodeCount());
+
+		System.out.printf("Variable reorderings           : %d\n", bdd.getReorderings());
+
+		if (bad == BddManager.FALSE) {
+
+			System.out.println("Assertion proven, no counter-examples were found.");
+
+			return null;
+
+		}
+
+		System.out.printf("Counter-example found in %d cycles\n", distance);
+
+		return getCounterExample(frontiers, bad);
+
+	}
+
+	private void createVariables() {
+
+		int stateBitCount = ts.stateBitCount;
+
+		int inputBitCount = ts.inputBitCount;
+
+		curVars = new int[stateBitCount];
+
+		nextVars = new int[stateBitCount];
+
+		inVars = new int[inputBitCount];
+
+		groups = new ArrayList<int[]>();
+
+		for (int i = 0; i < inputBitCount; i++) {
+
+			inVars[i] = bdd.newVar();
+
+			groups.add(new int[] { inVars[i] });
+
+		}
+
+		for (int i = 0; i < stateBitCount; i++) {
+
+			curVars[i] = bdd.newVar();
+
+			nextVars[i] = bdd.newVar();
+
+			groups.add(new int[] { curVars[i], nextVars[i] });
+
+		}
+
+		renameMap = new int[bdd.getVarCount()];
+
+		for (int v = 0; v < renameMap.length; v++)
+			renameMap[v] = v;
+
+		for (int i = 0; i < stateBitCount; i++)
+			renameMap[nextVars[i]] = curVars[i];
+
+	}
+
+	private void buildNets() throws Exception {
+
+		nets = new int[ts.getNetCount()];
+
+		for (int i = 0; i < ts.stateBitCount; i++)
+			nets[i] = bdd.ref(bdd.ithVar(curVars[i]));
+
+		for (int i = 0; i < ts.inputBitCount; i++)
+			nets[ts.stateBitCount + i] = bdd.ref(bdd.ithVar(inVars[i]));
+
+		for (Gate g : ts.gates) {
+
+			nets[g.output] = bdd.ref(buildGate(g));
+
+			collect();
+
+		}
+
+	}
+
+	private int buildGate(Gate g) throws Exception {
+
+		int[] in = new int[g.inputs.length];
+
+		for (int i = 0; i < in.length; i++)
+			in[i] = nets[g.inputs[i]];
+
+		int r;
+
+		if ("CONST".equals(g.type)) {
+
+			if (g.constant == L)
+				return BddManager.FALSE;
+			else if (g.constant == H)
+				return BddManager.TRUE;
+
+			throw new Exception("BDD engine does not support non-binary constants");
+
+		} else if ("BUF".equals(g.type)) {
+
+			return in[0];
+
+		} else if ("NOT".equals(g.type)) {
+
+			return bdd.not(in[0]);
+
+		} else if ("AND".equals(g.type) || "NAND".equals(g.type)) {
+
+			r = BddManager.TRUE;
+
+			for (int f : in)
+				r = bdd.and(r, f);
+
+			return "NAND".equals(g.type) ? bdd.not(r) : r;
+
+		} else if ("OR".equals(g.type) || "NOR".equals(g.type)) {
+
+			r = BddManager.FALSE;
+
+			for (int f : in)
+				r = bdd.or(r, f);
+
+			return "NOR".equals(g.type) ? bdd.not(r) : r;
+
+		} else if ("XOR".equals(g.type)) {
+
+			r = BddManager.FALSE;
+
+			for (int f : in)
+				r = bdd.xor(r, f);
+
+			return r;
+
+		} else if ("MUX2".equals(g.type)) {
+
+			return bdd.ite(in[2], in[1], in[0]);
+
+		} else if ("X2H".equals(g.type)) {
+
+			// binary nets are never X
+
+			return BddManager.FALSE;
+
+		}
+
+		throw new Exception("BDD engine does not support gate " + g.type);
+
+	}
+
+	private void buildRelation() {
+
+		// clusters of next-state relations
+
+		clusters = new ArrayList<Integer>();
+
+		int cluster = BddManager.TRUE;
+
+		for (int i = 0; i < ts.stateBitCount; i++) {
+
+			int f = nets[ts.nextState[i]];
+
+			int rel = bdd.ref(bdd.not(bdd.xor(bdd.ithVar(nextVars[i]), f)));
+
+			int merged = bdd.ref(bdd.and(cluster, rel));
+
+			if (cluster != BddManager.TRUE && bdd.nodeCount(merged) > CLUSTER_LIMIT) {
+
+				clusters.add(cluster);
+
+				bdd.deref(merged);
+
+				cluster = rel;
+
+			} else {
+
+				bdd.deref(cluster);
+
+				bdd.deref(rel);
+
+				cluster = merged;
+
+			}
+
+		}
+
+		if (cluster != BddManager.TRUE)
+			clusters.add(cluster);
+
+		// quantification schedule: variables are quantified after the last
+		// cluster that depends on them
+
+		int[] lastCluster = new int[bdd.getVarCount()];
+
+		Arrays.fill(lastCluster, -1);
+
+		for (int j = 0; j < clusters.size(); j++) {
+
+			boolean[] support = bdd.support(clusters.get(j));
+
+			for (int v = 0; v < support.length; v++)
+				if (support[v])
+					lastCluster[v] = j;
+
+		}
+
+		ArrayList<ArrayList<Integer>> quantified = new ArrayList<ArrayList<Integer>>();
+
+		for (int j = 0; j <= clusters.size(); j++)
+			quantified.add(new ArrayList<Integer>());
+
+		for (int[] vars : new int[][] { curVars, inVars })
+			for (int v : vars)
+				quantified.get(lastCluster[v] + 1).add(v);
+
+		initialCube = bdd.ref(bdd.cube(toArray(quantified.get(0))));
+
+		clusterCubes = new ArrayList<Integer>();
+
+		for (int j = 0; j < clusters.size(); j++)
+			clusterCubes.add(bdd.ref(bdd.cube(toArray(quantified.get(j + 1)))));
+
+		collect();
+
+	}
+
+	private int image(int states) {
+
+		// successors of `states` (a function of current-state and input
+		// variables) as a function of current-state variables
+
+		int r = bdd.exists(states, initialCube);
+
+		for (int j = 0; j < clusters.size(); j++)
+			r = bdd.andExists(r, clusters.get(j), clusterCubes.get(j));
+
+		return bdd.rename(r, renameMap);
+
+	}
+
+	private int getResetState() {
+
+		int r = BddManager.TRUE;
+
+		for (int i = ts.stateBitCount - 1; i >= 0; i--)
+			r = bdd.and(r, ts.resetBits[i] ? bdd.ithVar(curVars[i]) : bdd.nithVar(curVars[i]));
+
+		return r;
+
+	}
+
+	private int checkProperties(int[] props, int[] delays, int distance) {
+
+		// properties are ignored until the search is at least as deep as
+		// their delay
+
+		int r = BddManager.TRUE;
+
+		for (int i = 0; i < props.length; i++)
+			if (distance >= delays[i])
+				r = bdd.and(r, nets[props[i]]);
+
+		return r;
+
+	}
+
+	private void collect() {
+
+		// garbage collection at safe points (all BDDs in use are referenced)
+
+		if (bdd.getNodeCount() < nextCollect)
+			return;
+
+		bdd.gc();
+
+		nextCollect = Math.max(GC_THRESHOLD, 2 * bdd.getNodeCount());
+
+	}
+
+	private Waveform getCounterExample(ArrayList<Integer> frontiers, int bad) throws Exception {
+
+		// walks back from a violating state through the BFS frontiers,
+		// picking at each step a state (and input) of the previous frontier
+		// that leads to the state picked after it
+
+		int cycles = frontiers.size();
+
+		boolean[][] assignments = new boolean[cycles][];
+
+		assignments[cycles - 1] = bdd.satOne(bad);
+
+		for (int t = cycles - 2; t >= 0; t--) {
+
+			int assumed = checkProperties(ts.assumptions, ts.assumptionDelays, t);
+
+			int pre = bdd.ref(bdd.and(frontiers.get(t), assumed));
+
+			for (int i = 0; i < ts.stateBitCount; i++) {
+
+				int f = nets[ts.nextState[i]];
+
+				int next = bdd.ref(bdd.and(pre, assignments[t + 1][curVars[i]] ? f : bdd.not(f)));
+
+				bdd.deref(pre);
+
+				pre = next;
+
+			}
+
+			assignments[t] = bdd.satOne(pre);
+
+			bdd.deref(pre);
+
+		}
+
+		ArrayList<int[]> data = new ArrayList<int[]>();
+
+		for (int i = 0; i < nets.length; i++) {
+
+			int[] w = new int[cycles];
+
+			for (int t = 0; t < cycles; t++)
+				w[t] = bdd.eval(nets[i], assignments[t]) ? H : L;
+
+			data.add(w);
+
+		}
+
+		return new Waveform(ts.getSignalNames(), data);
+
+	}
+
+	private static int[] toArray(ArrayList<Integer> list) {
+
+		int[] result = new int[list.size()];
+
+		for (int i = 0; i < result.length; i++)
+			result[i] = list.get(i);
+
+		return result;
+
+	}
+
+}
@@ -0,0 +1,1257 @@
+package net.xprova.simulations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+
+public class BddManager {
+
+	// A reduced ordered BDD package.
+	//
+	// Nodes are stored in parallel arrays and referred to by index, 0 and 1
+	// are the terminal nodes. Each variable has its own unique subtable
+	// (hash buckets chained through `next`), so the nodes of a level can be
+	// visited when adjacent levels are swapped during reordering.
+	//
+	// Nodes carry reference counts (parents plus external references made
+	// with `ref`). Operations never free nodes, unreferenced nodes are
+	// reclaimed by `gc`, which must be called between operations with all
+	// BDDs still in use referenced. The computed cache is cleared whenever
+	// nodes are freed.
+	//
+	// Variables are identified by the order of creation, their position in
+	// the order (level) changes when `reorder` sifts groups of adjacent
+	// variables to reduce the total number of nodes.
+
+	public static final int FALSE = 0;
+	public static final int TRUE = 1;
+
+	private static final int OP_AND = 0, OP_OR = 1, OP_XOR = 2, OP_NOT = 3, OP_EXISTS = 4, OP_AND_EXISTS = 5,
+			OP_ITE = 6, OP_RENAME = 7;
+
+	private static final int TERMINAL_LEVEL = Integer.MAX_VALUE;
+
+	// maximum growth (relative to the best size found) while sifting a group
+
+	private static final double MAX_GROWTH = 1.2;
+
+	// minimum number of nodes before automatic reordering
+
+	private static final int REORDER_THRESHOLD = 1 << 16;
+
+	private static class ReorderRequest extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		ReorderRequest() {
+
+			super(null, null, false, false);
+
+		}
+
+	}
+
+	private static final ReorderRequest REORDER_REQUEST = new ReorderRequest();
+
+	// node table
+
+	private int[] var, low, high, refs, next;
+
+	private int freeList, nodeCount, peakNodeCount;
+
+	// variables
+
+	private int varCount = 0;
+
+	private int[] level = new int[0], varAtLevel = new int[0];
+
+	private int[][] buckets = new int[0][];
+
+	private int[] levelCount = new int[0];
+
+	// computed cache
+
+	private int[] cacheOp, cacheA, cacheB, cacheC, cacheR;
+
+	private int cacheMask;
+
+	// renaming map of the current `rename` operation
+
+	private int[] renameMap;
+
+	private int renameId = 0;
+
+	// automatic reordering (groups of variables, null when disabled)
+
+	private ArrayList<int[]> reorderGroups;
+
+	private int nextReorder = REORDER_THRESHOLD;
+
+	private boolean inOperation = false;
+
+	private int reorderings = 0;
+
+	public BddManager(int initialSize) {
+
+		int size = Math.max(initialSize, 1024);
+
+		var = new int[size];
+		low = new int[size];
+		high = new int[size];
+		refs = new int[size];
+		next = new int[size];
+
+		Arrays.fill(var, -1);
+
+		freeList = 0;
+
+		for (int i = size - 1; i >= 2; i--) {
+
+			next[i] = freeList;
+
+			freeList = i;
+
+		}
+
+		nodeCount = 0;
+
+		resizeCache(size);
+
+	}
+
+	// variables
+
+	public int newVar() {
+
+		int v = varCount++;
+
+		level = Arrays.copyOf(level, varCount);
+
+		varAtLevel = Arrays.copyOf(varAtLevel, varCount);
+
+		levelCount = Arrays.copyOf(levelCount, varCount);
+
+		buckets = Arrays.copyOf(buckets, varCount);
+
+		level[v] = v;
+
+		varAtLevel[v] = v;
+
+		buckets[v] = new int[16];
+
+		return v;
+
+	}
+
+	public int getVarCount() {
+
+		return varCount;
+
+	}
+
+	public int getLevel(int v) {
+
+		return level[v];
+
+	}
+
+	public int ithVar(int v) {
+
+		return mk(v, FALSE, TRUE);
+
+	}
+
+	public int nithVar(int v) {
+
+		return mk(v, TRUE, FALSE);
+
+	}
+
+	// statistics
+
+	public int getNodeCount() {
+
+		return nodeCount;
+
+	}
+
+	public int getPeakNodeCount() {
+
+		return peakNodeCount;
+
+	}
+
+	public int getReorderings() {
+
+		return reorderings;
+
+	}
+
+	// reference counting and garbage collection
+
+	public int ref(int f) {
+
+		if (f > TRUE)
+			refs[f]++;
+
+		return f;
+
+	}
+
+	public void deref(int f) {
+
+		if (f > TRUE)
+			refs[f]--;
+
+	}
+
+	public void gc() {
+
+		int[] stack = new int[64];
+
+		for (int n = 2; n < var.length; n++) {
+
+			if (var[n] < 0 || refs[n] > 0)
+				continue;
+
+			int sp = 0;
+
+			stack[sp++] = n;
+
+			while (sp > 0) {
+
+				int f = stack[--sp];
+
+				int lo = low[f], hi = high[f];
+
+				freeNode(f);
+
+				for (int c : new int[] { lo, hi }) {
+
+					if (c > TRUE && --refs[c] == 0) {
+
+						if (sp == stack.length)
+							stack = Arrays.copyOf(stack, sp * 2);
+
+						stack[sp++] = c;
+
+					}
+
+				}
+
+			}
+
+		}
+
+		clearCache();
+
+	}
+
+	// boolean operations
+
+	public int not(int f) {
+
+		return run(OP_NOT, f, 0, 0);
+
+	}
+
+	public int and(int f, int g) {
+
+		return run(OP_AND, f, g, 0);
+
+	}
+
+	public int or(int f, int g) {
+
+		return run(OP_OR, f, g, 0);
+
+	}
+
+	public int xor(int f, int g) {
+
+		return run(OP_XOR, f, g, 0);
+
+	}
+
+	public int ite(int f, int g, int h) {
+
+		return run(OP_ITE, f, g, h);
+
+	}
+
+	public int exists(int f, int cube) {
+
+		return run(OP_EXISTS, f, cube, 0);
+
+	}
+
+	public int andExists(int f, int g, int cube) {
+
+		// exists(and(f, g), cube) without building the conjunction
+
+		return run(OP_AND_EXISTS, f, g, cube);
+
+	}
+
+	public int rename(int f, int[] map) {
+
+		// substitutes variable map[v] for each variable v (map[v] == v for
+		// variables that are kept), the result is built with ite so the
+		// mapping does not have to preserve the variable order
+
+		if (renameMap != map) {
+
+			renameMap = map;
+
+			renameId++;
+
+		}
+
+		return run(OP_RENAME, f, 0, 0);
+
+	}
+
+	public int cube(int[] vars) {
+
+		// conjunction of the (positive) variables in `vars`
+
+		int[] levels = new int[vars.length];
+
+		for (int i = 0; i < vars.length; i++)
+			levels[i] = level[vars[i]];
+
+		Arrays.sort(levels);
+
+		int r = TRUE;
+
+		for (int i = levels.length - 1; i >= 0; i--)
+			r = mk(varAtLevel[levels[i]], FALSE, r);
+
+		return r;
+
+	}
+
+	// model queries
+
+	public boolean[] satOne(int f) {
+
+		// returns an assignment (indexed by variable) that satisfies f,
+		// variables not on the chosen path are false
+
+		if (f == FALSE)
+			return null;
+
+		boolean[] result = new boolean[varCount];
+
+		while (f > TRUE) {
+
+			if (low[f] != FALSE) {
+
+				f = low[f];
+
+			} else {
+
+				result[var[f]] = true;
+
+				f = high[f];
+
+			}
+
+		}
+
+		return result;
+
+	}
+
+	public boolean eval(int f, boolean[] assignment) {
+
+		while (f > TRUE)
+			f = assignment[var[f]] ? high[f] : low[f];
+
+		return f == TRUE;
+
+	}
+
+	public double satCount(int f, int[] vars) {
+
+		// number of assignments to `vars` (which must include the support
+		// of f) that satisfy f
+
+		boolean[] inSet = new boolean[varCount];
+
+		for (int v : vars)
+			inSet[v] = true;
+
+		// number of variables of the set below each level
+
+		int[] below = new int[varCount + 1];
+
+		for (int l = varCount - 1; l >= 0; l--)
+			below[l] = below[l + 1] + (inSet[varAtLevel[l]] ? 1 : 0);
+
+		double count = satCountRec(f, below, new HashMap<Integer, Double>());
+
+		return count * Math.pow(2, vars.length - below[Math.min(levelOf(f), varCount)]);
+
+	}
+
+	public boolean[] support(int f) {
+
+		// variables that f depends on (indexed by variable)
+
+		boolean[] result = new boolean[varCount];
+
+		ArrayList<Integer> stack = new ArrayList<Integer>();
+
+		HashSet<Integer> visited = new HashSet<Integer>();
+
+		stack.add(f);
+
+		while (!stack.isEmpty()) {
+
+			int n = stack.remove(stack.size() - 1);
+
+			if (n > TRUE && visited.add(n)) {
+
+				result[var[n]] = true;
+
+				stack.add(low[n]);
+
+				stack.add(high[n]);
+
+			}
+
+		}
+
+		return result;
+
+	}
+
+	public int nodeCount(int f) {
+
+		// number of nodes of f (including terminals)
+
+		ArrayList<Integer> stack = new ArrayList<Integer>();
+
+		HashSet<Integer> visited = new HashSet<Integer>();
+
+		stack.add(f);
+
+		while (!stack.isEmpty()) {
+
+			int n = stack.remove(stack.size() - 1);
+
+			if (visited.add(n) && n > TRUE) {
+
+				stack.add(low[n]);
+
+				stack.add(high[n]);
+
+			}
+
+		}
+
+		return visited.size();
+
+	}
+
+	// dynamic variable reordering
+
+	public void setAutoReorder(ArrayList<int[]> groups) {
+
+		// enables reordering of `groups` (see `reorder`) during operations
+		// when the number of nodes grows past a threshold (twice the number
+		// of nodes after the previous reordering)
+
+		reorderGroups = groups;
+
+	}
+
+	public void reorder(ArrayList<int[]> groups) {
+
+		// sifts groups of variables (each group must occupy adjacent levels
+		// and keeps its internal order) to the position that minimizes the
+		// number of nodes, all BDDs in use must be referenced
+
+		gc();
+
+		ArrayList<int[]> order = new ArrayList<int[]>(groups);
+
+		Collections.sort(order, new Comparator<int[]>() {
+
+			@Override
+			public int compare(int[] a, int[] b) {
+
+				return Integer.compare(level[a[0]], level[b[0]]);
+
+			}
+
+		});
+
+		ArrayList<int[]> bySize = new ArrayList<int[]>(groups);
+
+		Collections.sort(bySize, new Comparator<int[]>() {
+
+			@Override
+			public int compare(int[] a, int[] b) {
+
+				return Integer.compare(groupSize(b), groupSize(a));
+
+			}
+
+		});
+
+		for (int[] g : bySize)
+			siftGroup(order, g);
+
+		clearCache();
+
+		reorderings++;
+
+	}
+
+	// internals
+
+	private void autoReorder() {
+
+		reorder(reorderGroups);
+
+		nextReorder = Math.max(REORDER_THRESHOLD, 2 * nodeCount);
+
+	}
+
+	private int levelOf(int f) {
+
+		return f <= TRUE ? TERMINAL_LEVEL : level[var[f]];
+
+	}
+
+	private int cofactor(int f, int lvl, boolean value) {
+
+		if (levelOf(f) != lvl)
+			return f;
+
+		return value ? high[f] : low[f];
+
+	}
+
+	private int apply(int op, int f, int g) {
+
+		// terminal cases
+
+		switch (op) {
+
+		case OP_AND:
+
+			if (f == FALSE || g == FALSE)
+				return FALSE;
+
+			if (f == TRUE || f == g)
+				return g;
+
+			if (g == TRUE)
+				return f;
+
+			break;
+
+		case OP_OR:
+
+			if (f == TRUE || g == TRUE)
+				return TRUE;
+
+			if (f == FALSE || f == g)
+				return g;
+
+			if (g == FALSE)
+				return f;
+
+			break;
+
+		default:
+
+			if (f == g)
+				return FALSE;
+
+			if (f == FALSE)
+				return g;
+
+			if (g == FALSE)
+				return f;
+
+			if (f == TRUE)
+				return notRec(g);
+
+			if (g == TRUE)
+				return notRec(f);
+
+		}
+
+		if (f > g) {
+
+			int t = f;
+
+			f = g;
+
+			g = t;
+
+		}
+
+		int slot = cacheSlot(op, f, g, 0);
+
+		if (cacheOp[slot] == op && cacheA[slot] == f && cacheB[slot] == g)
+			return cacheR[slot];
+
+		int top = Math.min(levelOf(f), levelOf(g));
+
+		int r0 = apply(op, cofactor(f, top, false), cofactor(g, top, false));
+
+		int r1 = apply(op, cofactor(f, top, true), cofactor(g, top, true));
+
+		int r = mk(varAtLevel[top], r0, r1);
+
+		cacheStore(slot, op, f, g, 0, r);
+
+		return r;
+
+	}
+
+	private int run(int op, int a, int b, int c) {
+
+		// runs an operation, when the number of nodes reaches the
+		// reordering threshold the operation is abandoned, the variables
+		// are reordered (with the operands referenced) and the operation is
+		// restarted
+
+		while (true) {
+
+			try {
+
+				inOperation = true;
+
+				switch (op) {
+
+				case OP_NOT:
+					return notRec(a);
+
+				case OP_ITE:
+					return iteRec(a, b, c);
+
+				case OP_EXISTS:
+					return existsRec(a, b);
+
+				case OP_AND_EXISTS:
+					return andExistsRec(a, b, c);
+
+				case OP_RENAME:
+					return renameRec(a);
+
+				default:
+					return apply(op, a, b);
+
+				}
+
+			} catch (ReorderRequest e) {
+
+				inOperation = false;
+
+				int[] operands = op == OP_RENAME ? new int[] { a } : new int[] { a, b, c };
+
+				for (int f : operands)
+					ref(f);
+
+				autoReorder();
+
+				for (int f : operands)
+					deref(f);
+
+			} finally {
+
+				inOperation = false;
+
+			}
+
+		}
+
+	}
+
+	private int notRec(int f) {
+
+		if (f <= TRUE)
+			return f ^ 1;
+
+		int slot = cacheSlot(OP_NOT, f, 0, 0);
+
+		if (cacheOp[slot] == OP_NOT && cacheA[slot] == f)
+			return cacheR[slot];
+
+		int r = mk(var[f], notRec(low[f]), notRec(high[f]));
+
+		cacheStore(slot, OP_NOT, f, 0, 0, r);
+
+		return r;
+
+	}
+
+	private int iteRec(int f, int g, int h) {
+
+		if (f == TRUE)
+			return g;
+
+		if (f == FALSE)
+			return h;
+
+		if (g == h)
+			return g;
+
+		if (g == TRUE && h == FALSE)
+			return f;
+
+		int slot = cacheSlot(OP_ITE, f, g, h);
+
+		if (cacheOp[slot] == OP_ITE && cacheA[slot] == f && cacheB[slot] == g && cacheC[slot] == h)
+			return cacheR[slot];
+
+		int top = Math.min(levelOf(f), Math.min(levelOf(g), levelOf(h)));
+
+		int v = varAtLevel[top];
+
+		int r0 = iteRec(cofactor(f, top, false), cofactor(g, top, false), cofactor(h, top, false));
+
+		int r1 = iteRec(cofactor(f, top, true), cofactor(g, top, true), cofactor(h, top, true));
+
+		int r = mk(v, r0, r1);
+
+		cacheStore(slot, OP_ITE, f, g, h, r);
+
+		return r;
+
+	}
+
+	private int existsRec(int f, int cube) {
+
+		if (f <= TRUE)
+			return f;
+
+		int lf = levelOf(f);
+
+		while (levelOf(cube) < lf)
+			cube = high[cube];
+
+		if (cube == TRUE)
+			return f;
+
+		int slot = cacheSlot(OP_EXISTS, f, cube, 0);
+
+		if (cacheOp[slot] == OP_EXISTS && cacheA[slot] == f && cacheB[slot] == cube)
+			return cacheR[slot];
+
+		int r;
+
+		if (var[cube] == var[f]) {
+
+			int r0 = existsRec(low[f], high[cube]);
+
+			r = r0 == TRUE ? TRUE : apply(OP_OR, r0, existsRec(high[f], high[cube]));
+
+		} else {
+
+			r = mk(var[f], existsRec(low[f], cube), existsRec(high[f], cube));
+
+		}
+
+		cacheStore(slot, OP_EXISTS, f, cube, 0, r);
+
+		return r;
+
+	}
+
+	private int andExistsRec(int f, int g, int cube) {
+
+		if (f == FALSE || g == FALSE)
+			return FALSE;
+
+		if (f == TRUE)
+			return existsRec(g, cube);
+
+		if (g == TRUE || f == g)
+			return existsRec(f, cube);
+
+		if (f > g) {
+
+			int t = f;
+
+			f = g;
+
+			g = t;
+
+		}
+
+		int top = Math.min(levelOf(f), levelOf(g));
+
+		while (levelOf(cube) < top)
+			cube = high[cube];
+
+		if (cube == TRUE)
+			return apply(OP_AND, f, g);
+
+		int slot = cacheSlot(OP_AND_EXISTS, f, g, cube);
+
+		if (cacheOp[slot] == OP_AND_EXISTS && cacheA[slot] == f && cacheB[slot] == g && cacheC[slot] == cube)
+			return cacheR[slot];
+
+		int r;
+
+		int f0 = cofactor(f, top, false), f1 = cofactor(f, top, true);
+
+		int g0 = cofactor(g, top, false), g1 = cofactor(g, top, true);
+
+		if (levelOf(cube) == top) {
+
+			int r0 = andExistsRec(f0, g0, high[cube]);
+
+			r = r0 == TRUE ? TRUE : apply(OP_OR, r0, andExistsRec(f1, g1, high[cube]));
+
+		} else {
+
+			r = mk(varAtLevel[top], andExistsRec(f0, g0, cube), andExistsRec(f1, g1, cube));
+
+		}
+
+		cacheStore(slot, OP_AND_EXISTS, f, g, cube, r);
+
+		return r;
+
+	}
+
+	private int renameRec(int f) {
+
+		if (f <= TRUE)
+			return f;
+
+		int slot = cacheSlot(OP_RENAME, f, renameId, 0);
+
+		if (cacheOp[slot] == OP_RENAME && cacheA[slot] == f && cacheB[slot] == renameId)
+			return cacheR[slot];
+
+		int r0 = renameRec(low[f]);
+
+		int r1 = renameRec(high[f]);
+
+		int r = iteRec(ithVar(renameMap[var[f]]), r1, r0);
+
+		cacheStore(slot, OP_RENAME, f, renameId, 0, r);
+
+		return r;
+
+	}
+
+	private double satCountRec(int f, int[] below, HashMap<Integer, Double> memo) {
+
+		// satisfying assignments of the set variables at or below the
+		// level of f
+
+		if (f <= TRUE)
+			return f;
+
+		Double m = memo.get(f);
+
+		if (m != null)
+			return m;
+
+		int lf = level[var[f]];
+
+		double r = 0;
+
+		for (int c : new int[] { low[f], high[f] }) {
+
+			int lc = Math.min(levelOf(c), varCount);
+
+			r += satCountRec(c, below, memo) * Math.pow(2, below[lf + 1] - below[lc]);
+
+		}
+
+		memo.put(f, r);
+
+		return r;
+
+	}
+
+	private int mk(int v, int lo, int hi) {
+
+		if (lo == hi)
+			return lo;
+
+		int[] b = buckets[v];
+
+		int h = hash(lo, hi) & (b.length - 1);
+
+		for (int n = b[h]; n != 0; n = next[n])
+			if (low[n] == lo && high[n] == hi)
+				return n;
+
+		if (inOperation && reorderGroups != null && nodeCount >= nextReorder)
+			throw REORDER_REQUEST;
+
+		if (freeList == 0) {
+
+			growNodes();
+
+			b = buckets[v];
+
+			h = hash(lo, hi) & (b.length - 1);
+
+		}
+
+		int n = freeList;
+
+		freeList = next[n];
+
+		var[n] = v;
+		low[n] = lo;
+		high[n] = hi;
+		refs[n] = 0;
+
+		if (lo > TRUE)
+			refs[lo]++;
+
+		if (hi > TRUE)
+			refs[hi]++;
+
+		insertNode(n);
+
+		nodeCount++;
+
+		peakNodeCount = Math.max(peakNodeCount, nodeCount);
+
+		return n;
+
+	}
+
+	private void insertNode(int n) {
+
+		int v = var[n];
+
+		if (levelCount[v] >= 2 * buckets[v].length)
+			rehash(v, buckets[v].length * 2);
+
+		int[] b = buckets[v];
+
+		int h = hash(low[n], high[n]) & (b.length - 1);
+
+		next[n] = b[h];
+
+		b[h] = n;
+
+		levelCount[v]++;
+
+	}
+
+	private void removeNode(int n) {
+
+		int v = var[n];
+
+		int[] b = buckets[v];
+
+		int h = hash(low[n], high[n]) & (b.length - 1);
+
+		if (b[h] == n) {
+
+			b[h] = next[n];
+
+		} else {
+
+			int p = b[h];
+
+			while (next[p] != n)
+				p = next[p];
+
+			next[p] = next[n];
+
+		}
+
+		levelCount[v]--;
+
+	}
+
+	private void freeNode(int n) {
+
+		removeNode(n);
+
+		var[n] = -1;
+
+		next[n] = freeList;
+
+		freeList = n;
+
+		nodeCount--;
+
+	}
+
+	private void rehash(int v, int size) {
+
+		int[] old = buckets[v];
+
+		int[] b = new int[size];
+
+		for (int head : old) {
+
+			int n = head;
+
+			while (n != 0) {
+
+				int nx = next[n];
+
+				int h = hash(low[n], high[n]) & (size - 1);
+
+				next[n] = b[h];
+
+				b[h] = n;
+
+				n = nx;
+
+			}
+
+		}
+
+		buckets[v] = b;
+
+	}
+
+	private void growNodes() {
+
+		int oldSize = var.length;
+
+		int size = oldSize * 2;
+
+		var = Arrays.copyOf(var, size);
+		low = Arrays.copyOf(low, size);
+		high = Arrays.copyOf(high, size);
+		refs = Arrays.copyOf(refs, size);
+		next = Arrays.copyOf(next, size);
+
+		for (int i = size - 1; i >= oldSize; i--) {
+
+			var[i] = -1;
+
+			next[i] = freeList;
+
+			freeList = i;
+
+		}
+
+		resizeCache(size);
+
+	}
+
+	private static int hash(int a, int b) {
+
+		int h = a * 0x9E3779B1 + b * 0x85EBCA77;
+
+		return h ^ (h >>> 15);
+
+	}
+
+	// computed cache (direct mapped)
+
+	private void resizeCache(int nodes) {
+
+		int size = Integer.highestOneBit(Math.max(nodes, 1 << 16));
+
+		cacheOp = new int[size];
+		cacheA = new int[size];
+		cacheB = new int[size];
+		cacheC = new int[size];
+		cacheR = new int[size];
+
+		cacheMask = size - 1;
+
+		clearCache();
+
+	}
+
+	private void clearCache() {
+
+		Arrays.fill(cacheOp, -1);
+
+	}
+
+	private int cacheSlot(int op, int a, int b, int c) {
+
+		int h = (a * 0x9E3779B1) ^ (b * 0x85EBCA77) ^ (c * 0xC2B2AE3D) ^ op;
+
+		return (h ^ (h >>> 16)) & cacheMask;
+
+	}
+
+	private void cacheStore(int slot, int op, int a, int b, int c, int r) {
+
+		cacheOp[slot] = op;
+		cacheA[slot] = a;
+		cacheB[slot] = b;
+		cacheC[slot] = c;
+		cacheR[slot] = r;
+
+	}
+
+	// sifting
+
+	private int groupSize(int[] g) {
+
+		int s = 0;
+
+		for (int v : g)
+			s += levelCount[v];
+
+		return s;
+
+	}
+
+	private void siftGroup(ArrayList<int[]> order, int[] g) {
+
+		int pos = order.indexOf(g);
+
+		int bestPos = pos, bestSize = nodeCount;
+
+		// down to the bottom, then up to the top
+
+		while (pos < order.size() - 1 && nodeCount <= MAX_GROWTH * bestSize) {
+
+			swapGroups(order, pos++);
+
+			if (nodeCount < bestSize) {
+
+				bestSize = nodeCount;
+
+				bestPos = pos;
+
+			}
+
+		}
+
+		while (pos > 0 && (nodeCount <= MAX_GROWTH * bestSize || pos > bestPos)) {
+
+			swapGroups(order, --pos);
+
+			if (nodeCount < bestSize) {
+
+				bestSize = nodeCount;
+
+				bestPos = pos;
+
+			}
+
+		}
+
+		while (pos < bestPos)
+			swapGroups(order, pos++);
+
+	}
+
+	private void swapGroups(ArrayList<int[]> order, int pos) {
+
+		// swaps the groups at positions pos and pos + 1
+
+		int[] a = order.get(pos), b = order.get(pos + 1);
+
+		int top = level[a[0]];
+
+		for (int t = 0; t < b.length; t++)
+			for (int l = top + a.length + t - 1; l >= top + t; l--)
+				swapLevels(l);
+
+		order.set(pos, b);
+
+		order.set(pos + 1, a);
+
+	}
+
+	private void swapLevels(int l) {
+
+		// exchanges the variables at levels l and l + 1, nodes of the upper
+		// variable that depend on the lower one are rewritten in place (so
+		// that references to them stay valid)
+
+		int x = varAtLevel[l], y = varAtLevel[l + 1];
+
+		ArrayList<Integer> moved = new ArrayList<Integer>();
+
+		int[] b = buckets[x];
+
+		for (int h = 0; h < b.length; h++) {
+
+			int n = b[h];
+
+			while (n != 0) {
+
+				int nx = next[n];
+
+				if (var[low[n]] == y || var[high[n]] == y)
+					moved.add(n);
+
+				n = nx;
+
+			}
+
+		}
+
+		for (int n : moved)
+			removeNode(n);
+
+		// the lower variable moves up
+
+		level[x] = l + 1;
+		level[y] = l;
+		varAtLevel[l] = y;
+		varAtLevel[l + 1] = x;
+
+		for (int n : moved) {
+
+			int f0 = low[n], f1 = high[n];
+
+			int f00 = var[f0] == y ? low[f0] : f0, f01 = var[f0] == y ? high[f0] : f0;
+
+			int f10 = var[f1] == y ? low[f1] : f1, f11 = var[f1] == y ? high[f1] : f1;
+
+			int newLow = mk(x, f00, f10);
+
+			int newHigh = mk(x, f01, f11);
+
+			ref(newLow);
+
+			ref(newHigh);
+
+			var[n] = y;
+			low[n] = newLow;
+			high[n] = newHigh;
+
+			insertNode(n);
+
+			release(f0);
+
+			release(f1);
+
+		}
+
+	}
+
+	private void release(int f) {
+
+		// drops a reference to f, freeing nodes that are no longer used
+
+		if (f <= TRUE || --refs[f] > 0)
+			return;
+
+		int lo = low[f], hi = high[f];
+
+		freeNode(f);
+
+		release(lo);
+
+		release(hi);
+
+	}
+
+}
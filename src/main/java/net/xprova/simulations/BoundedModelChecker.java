@@ -0,0 +1,125 @@
+package net.xprova.simulations;
+
+public class BoundedModelChecker {
+
+	// Bounded model checking of a TransitionSystem: the transition relation
+	// is unrolled one frame (clock cycle) at a time from the reset state and
+	// each frame is checked for an assertion violation. Frames that are free
+	// of violations are added to the solver as facts before moving to the
+	// next depth.
+
+	private final TransitionSystem ts;
+
+	private final TransitionUnroller unroller;
+
+	private final SatSolver solver;
+
+	private int depth;
+
+	public BoundedModelChecker(TransitionSystem ts) throws Exception {
+
+		if (ts.liveAssertions.length > 0)
+			throw new Exception("SAT-based engines do not support liveness assertions");
+
+		this.ts = ts;
+
+		unroller = new TransitionUnroller(ts, true);
+
+		solver = unroller.getSolver();
+
+		depth = -1;
+
+	}
+
+	public int getDepth() {
+
+		// largest depth checked without finding a counter-example
+
+		return depth;
+
+	}
+
+	public boolean step() throws Exception {
+
+		// checks the next depth, returns true if a counter-example ending at
+		// that depth was found (available from getCounterExample)
+
+		int frame = unroller.getFrameCount();
+
+		unroller.addFrame();
+
+		int assumed = unroller.checkProperties(frame, ts.assumptions, ts.assumptionDelays, frame);
+
+		int asserted = unroller.checkProperties(frame, ts.assertions, ts.assertionDelays, frame);
+
+		if (solver.solve(unroller.andOf(assumed, SatSolver.neg(asserted))))
+			return true;
+
+		// paths of later frames must satisfy the assumptions of this frame,
+		// and then satisfy its assertions too
+
+		solver.addClause(assumed);
+
+		solver.addClause(asserted);
+
+		depth = frame;
+
+		return false;
+
+	}
+
+	public Waveform getCounterExample() throws Exception {
+
+		return unroller.getWaveform();
+
+	}
+
+	public Waveform check(int maxDepth) throws Exception {
+
+		// returns the waveforms of all nets in a shortest counter-example of
+		// at most maxDepth + 1 cycles, or null if there is none
+
+		System.out.println("Starting bounded model checking ...");
+
+		long startTime = System.nanoTime();
+
+		boolean counterExampleFound = false;
+
+		while (depth < maxDepth && !counterExampleFound)
+			counterExampleFound = step();
+
+		double searchTime = (System.nanoTime() - startTime) / 1e9;
+
+		System.out.printf("Completed search in %f seconds\n", searchTime);
+
+		printStats();
+
+		if (!counterExampleFound) {
+
+			System.out.printf("No counter-examples of up to %d cycles were found.\n", maxDepth + 1);
+
+			return null;
+
+		}
+
+		System.out.printf("Counter-example found in %d cycles\n", depth + 1);
+
+		return getCounterExample();
+
+	}
+
+	public void printStats() {
+
+		System.out.printf("State bits                     : %d\n", ts.stateBitCount);
+
+		System.out.printf("Input bits                     : %d\n", ts.inputBitCount);
+
+		System.out.printf("SAT variables                  : %d\n", solver.getVarCount());
+
+		System.out.printf("SAT clauses                    : %d\n", solver.getClauseCount());
+
+		System.out.printf("SAT conflicts                  : %d\n", solver.getConflicts());
+
+	}
+
+}
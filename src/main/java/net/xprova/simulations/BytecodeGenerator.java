@@ -0,0 +1,373 @@
+package net.xprova.simulations;
+
+import java.util.ArrayList;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import net.xprova.simulations.TransitionSystem.Gate;
+
+public class BytecodeGenerator implements Opcodes {
+
+	// Emits the combinational logic of a TransitionSystem directly as JVM
+	// bytecode (no javac step).
+	//
+	// Gates are spread over static `chunk` methods of at most CHUNK_SIZE
+	// bytes each, which keeps every method well below the 64 KB class file
+	// limit and below HotSpot's huge method threshold (8000 bytes) so that
+	// all chunks remain eligible for JIT compilation. The generated class
+	// implements CompiledModel; its `evaluate` method calls the chunks in
+	// order.
+	//
+	// All gates are emitted without branches: comparison results are
+	// derived from sign bits instead of conditional jumps.
+
+	public static final int CHUNK_SIZE = 6000;
+
+	private static final String MODEL_INTERFACE = "net/xprova/simulations/CompiledModel";
+
+	private static final String NETS_DESC = "([I)V";
+
+	private static class ModelClassLoader extends ClassLoader {
+
+		public ModelClassLoader() {
+
+			super(CompiledModel.class.getClassLoader());
+
+		}
+
+		public Class<?> define(String name, byte[] b) {
+
+			return defineClass(name, b, 0, b.length);
+
+		}
+
+	}
+
+	public static byte[] generate(TransitionSystem ts, String className) throws Exception {
+
+		// split gates into chunks
+
+		ArrayList<ArrayList<Gate>> chunks = new ArrayList<ArrayList<Gate>>();
+
+		ArrayList<Gate> chunk = new ArrayList<Gate>();
+
+		int chunkSize = 0;
+
+		for (Gate g : ts.gates) {
+
+			int size = getGateSize(g);
+
+			if (chunkSize + size > CHUNK_SIZE && !chunk.isEmpty()) {
+
+				chunks.add(chunk);
+
+				chunk = new ArrayList<Gate>();
+
+				chunkSize = 0;
+
+			}
+
+			chunk.add(g);
+
+			chunkSize += size;
+
+		}
+
+		if (!chunk.isEmpty())
+			chunks.add(chunk);
+
+		// emit class
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+
+		cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, "java/lang/Object",
+				new String[] { MODEL_INTERFACE });
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(ACC_PUBLIC, "evaluate", NETS_DESC, null, null);
+
+		mv.visitCode();
+
+		for (int i = 0; i < chunks.size(); i++) {
+
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitMethodInsn(INVOKESTATIC, className, "chunk" + i, NETS_DESC, false);
+
+		}
+
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		for (int i = 0; i < chunks.size(); i++) {
+
+			mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, "chunk" + i, NETS_DESC, null, null);
+
+			mv.visitCode();
+
+			for (Gate g : chunks.get(i))
+				emitGate(mv, g);
+
+			mv.visitInsn(RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+
+		}
+
+		cw.visitEnd();
+
+		try {
+
+			return cw.toByteArray();
+
+		} catch (RuntimeException e) {
+
+			throw new Exception("could not generate model bytecode: " + e.getMessage());
+
+		}
+
+	}
+
+	public static CompiledModel load(String className, byte[] classBytes) throws Exception {
+
+		Class<?> modelClass = new ModelClassLoader().define(className, classBytes);
+
+		return (CompiledModel) modelClass.getDeclaredConstructor().newInstance();
+
+	}
+
+	private static int getGateSize(Gate g) {
+
+		// upper bound on the number of bytecode bytes emitted by `emitGate`
+
+		return 16 + 12 * g.inputs.length;
+
+	}
+
+	private static void emitGate(MethodVisitor mv, Gate g) throws Exception {
+
+		int[] in = g.inputs;
+
+		mv.visitVarInsn(ALOAD, 0);
+
+		pushInt(mv, g.output);
+
+		if ("CONST".equals(g.type)) {
+
+			pushInt(mv, g.constant);
+
+		} else if ("BUF".equals(g.type)) {
+
+			loadNet(mv, in[0]);
+
+		} else if ("NOT".equals(g.type)) {
+
+			loadNet(mv, in[0]);
+
+			mv.visitInsn(ICONST_M1);
+			mv.visitInsn(IXOR);
+
+		} else if ("AND".equals(g.type) || "NAND".equals(g.type)) {
+
+			emitReduction(mv, in, IAND, "NAND".equals(g.type));
+
+		} else if ("OR".equals(g.type) || "NOR".equals(g.type)) {
+
+			emitReduction(mv, in, IOR, "NOR".equals(g.type));
+
+		} else if ("XOR".equals(g.type)) {
+
+			emitReduction(mv, in, IXOR, false);
+
+		} else if ("MUX2".equals(g.type)) {
+
+			// (a & ~s) | (b & s)
+
+			loadNet(mv, in[0]);
+			loadNet(mv, in[2]);
+
+			mv.visitInsn(ICONST_M1);
+			mv.visitInsn(IXOR);
+			mv.visitInsn(IAND);
+
+			loadNet(mv, in[1]);
+			loadNet(mv, in[2]);
+
+			mv.visitInsn(IAND);
+			mv.visitInsn(IOR);
+
+		} else if ("X2H".equals(g.type)) {
+
+			// (a != 0) & (~a != 0)
+
+			loadNet(mv, in[0]);
+
+			emitNonZero(mv);
+
+			loadNet(mv, in[0]);
+
+			mv.visitInsn(ICONST_M1);
+			mv.visitInsn(IXOR);
+
+			emitNonZero(mv);
+
+			mv.visitInsn(IAND);
+
+		} else if ("==".equals(g.type) || "!=".equals(g.type)) {
+
+			loadNet(mv, in[0]);
+			loadNet(mv, in[1]);
+
+			mv.visitInsn(IXOR);
+
+			emitNonZero(mv);
+
+			if ("==".equals(g.type)) {
+
+				mv.visitInsn(ICONST_M1);
+				mv.visitInsn(IXOR);
+
+			}
+
+		} else if ("<".equals(g.type) || ">=".equals(g.type)) {
+
+			emitLessThan(mv, in[0], in[1], ">=".equals(g.type));
+
+		} else if (">".equals(g.type) || "<=".equals(g.type)) {
+
+			emitLessThan(mv, in[1], in[0], "<=".equals(g.type));
+
+		} else if ("GROUP".equals(g.type)) {
+
+			mv.visitInsn(ICONST_0);
+
+			for (int i = 0; i < in.length; i++) {
+
+				loadNet(mv, in[i]);
+
+				mv.visitInsn(ICONST_1);
+				mv.visitInsn(IAND);
+
+				pushInt(mv, i);
+
+				mv.visitInsn(ISHL);
+				mv.visitInsn(IADD);
+
+			}
+
+		} else if ("*BITS".equals(g.type)) {
+
+			loadNet(mv, in[0]);
+
+			mv.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "bitCount", "(I)I", false);
+
+		} else {
+
+			throw new Exception("unrecognized gate " + g.type);
+
+		}
+
+		mv.visitInsn(IASTORE);
+
+	}
+
+	private static void emitReduction(MethodVisitor mv, int[] inputs, int opcode, boolean invert) throws Exception {
+
+		if (inputs.length == 0)
+			throw new Exception("encountered gate with no inputs");
+
+		loadNet(mv, inputs[0]);
+
+		for (int i = 1; i < inputs.length; i++) {
+
+			loadNet(mv, inputs[i]);
+
+			mv.visitInsn(opcode);
+
+		}
+
+		if (invert) {
+
+			mv.visitInsn(ICONST_M1);
+			mv.visitInsn(IXOR);
+
+		}
+
+	}
+
+	private static void emitNonZero(MethodVisitor mv) {
+
+		// x -> (x | -x) >> 31, i.e. -1 if x != 0 and 0 otherwise
+
+		mv.visitInsn(DUP);
+		mv.visitInsn(INEG);
+		mv.visitInsn(IOR);
+
+		pushInt(mv, 31);
+
+		mv.visitInsn(ISHR);
+
+	}
+
+	private static void emitLessThan(MethodVisitor mv, int a, int b, boolean invert) {
+
+		// (int) (((long) a - (long) b) >> 63), i.e. -1 if a < b and 0
+		// otherwise
+
+		loadNet(mv, a);
+
+		mv.visitInsn(I2L);
+
+		loadNet(mv, b);
+
+		mv.visitInsn(I2L);
+		mv.visitInsn(LSUB);
+
+		pushInt(mv, 63);
+
+		mv.visitInsn(LSHR);
+		mv.visitInsn(L2I);
+
+		if (invert) {
+
+			mv.visitInsn(ICONST_M1);
+			mv.visitInsn(IXOR);
+
+		}
+
+	}
+
+	private static void loadNet(MethodVisitor mv, int index) {
+
+		mv.visitVarInsn(ALOAD, 0);
+
+		pushInt(mv, index);
+
+		mv.visitInsn(IALOAD);
+
+	}
+
+	private static void pushInt(MethodVisitor mv, int value) {
+
+		if (value >= -1 && value <= 5)
+			mv.visitInsn(ICONST_0 + value);
+		else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+			mv.visitIntInsn(BIPUSH, value);
+		else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+			mv.visitIntInsn(SIPUSH, value);
+		else
+			mv.visitLdcInsn(value);
+
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map.Entry;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
@@ -32,6 +33,17 @@ public class CodeGenerator {
 	// jNetNames: Java-friendly net names
 	//
 	// assigns: combinations assignments
+	//
+	// combNets: nets driven by `assigns`, in assignment order
+	//
+	// assumptionNets, assertionNets, liveAssertionNets: property output nets
+	//
+	// delayLines: flip-flop chains shared by all delayed property
+	// expressions, delayLines.get(n).get(i) is net n delayed by i + 1 cycles
+	// of the property clock
+	//
+	// delayedNets: nets of delayed property expressions (before the delay),
+	// indexed by expression
 
 	private static TreeSet<Vertex> qNets, inpNets, internalNets;
 
@@ -41,7 +53,22 @@ public class CodeGenerator {
 
 	private static ArrayList<String> assigns;
 
-	private static int resetState;
+	private static ArrayList<Vertex> combNets;
+
+	private static LinkedHashMap<Property, Vertex> assumptionNets, assertionNets, liveAssertionNets;
+
+	private static HashMap<Vertex, ArrayList<Vertex>> delayLines;
+
+	private static HashMap<String, Vertex> delayedNets;
+
+	private static long resetState;
+
+	private static boolean[] resetBits; // reset value of each state bit
+
+	// symmetry generators emitted for {SYMMETRY_STATE_SWAPS} and
+	// {SYMMETRY_INPUT_SWAPS} (searched for only when requested)
+
+	private static ArrayList<SymmetryFinder.Symmetry> symmetries;
 
 	private static final String netIgnorePrefix = "!";
 
@@ -108,17 +135,44 @@ public class CodeGenerator {
 
 			root.delay = 0;
 
-			Vertex net = addProperty(graph, root, clk, rst, set);
+			// identical expressions (and expressions of the same net) share
+			// one delay line
+
+			String key = root.toString();
+
+			Vertex net = delayedNets.get(key);
+
+			if (net == null) {
+
+				net = addProperty(graph, root, clk, rst, set);
+
+				delayedNets.put(key, net);
+
+			}
+
+			root.delay = delay;
+
+			ArrayList<Vertex> taps = delayLines.get(net);
+
+			if (taps == null) {
 
-			// create chain of flip-flops
+				taps = new ArrayList<Vertex>();
 
-			for (int i = 0; i < delay; i++) {
+				delayLines.put(net, taps);
+
+			}
+
+			// extend chain of flip-flops
+
+			while (taps.size() < delay) {
+
+				Vertex tapInput = taps.isEmpty() ? net : taps.get(taps.size() - 1);
 
 				Vertex newFlop = addPropertyModule(graph, "DFF");
 
 				Vertex flopOutput = addPropertyNet(graph);
 
-				graph.addConnection(net, newFlop, "D");
+				graph.addConnection(tapInput, newFlop, "D");
 
 				graph.addConnection(clk, newFlop, "CK");
 
@@ -126,12 +180,10 @@ public class CodeGenerator {
 
 				graph.addConnection(newFlop, flopOutput, "Q");
 
-				net = flopOutput;
+				taps.add(flopOutput);
 			}
 
-			root.delay = delay;
-
-			return net;
+			return taps.get(delay - 1);
 
 		}
 
@@ -245,18 +297,32 @@ public class CodeGenerator {
 
 			// create a liveness net
 
+			// delayed expressions read the reset values of their delay lines
+			// during the first cycles, these are masked so that they cannot
+			// arm or satisfy the property
+
+			int delay = getMaxDelay(root);
+
+			Vertex valid = delay > 0 ? insertWarmUpBlock(graph, delay, clk, rst) : null;
+
 			if (root.children.size() == 2) {
 
 				Vertex trigger = addProperty(graph, root.children.get(0), clk, rst, set);
 
 				Vertex expr = addProperty(graph, root.children.get(1), clk, rst, set);
 
+				trigger = valid == null ? trigger : insertAndGate(graph, trigger, valid);
+
+				expr = valid == null ? expr : insertAndGate(graph, expr, valid);
+
 				return insertTwoInputEventuallyBlock(graph, trigger, expr, clk, set, rst);
 
 			} else if (root.children.size() == 1) {
 
 				Vertex expr = addProperty(graph, root.children.get(0), clk, rst, set);
 
+				expr = valid == null ? expr : insertAndGate(graph, expr, valid);
+
 				return insetSingleInputEventuallyBlock(graph, expr, clk, set, rst);
 
 			}
@@ -338,6 +404,55 @@ public class CodeGenerator {
 
 	}
 
+	private static Vertex insertWarmUpBlock(NetlistGraph graph, int delay, Vertex clk, Vertex rst) throws Exception {
+
+		// a chain of `delay` flip-flops fed by a constant high, its output is
+		// low for the first `delay` cycles and high afterwards
+
+		Vertex tie = addPropertyModule(graph, "TIE1");
+
+		Vertex net = addPropertyNet(graph);
+
+		graph.addConnection(tie, net, "y");
+
+		for (int i = 0; i < delay; i++) {
+
+			Vertex flop = addPropertyModule(graph, "DFF");
+
+			Vertex flopOutput = addPropertyNet(graph);
+
+			graph.addConnection(net, flop, "D");
+
+			graph.addConnection(clk, flop, "CK");
+
+			graph.addConnection(rst, flop, "RS");
+
+			graph.addConnection(flop, flopOutput, "Q");
+
+			net = flopOutput;
+
+		}
+
+		return net;
+
+	}
+
+	private static Vertex insertAndGate(NetlistGraph graph, Vertex a, Vertex b) throws Exception {
+
+		Vertex and = addPropertyModule(graph, "AND");
+
+		Vertex andOutput = addPropertyNet(graph);
+
+		graph.addConnection(a, and);
+
+		graph.addConnection(b, and);
+
+		graph.addConnection(and, andOutput);
+
+		return andOutput;
+
+	}
+
 	private static Vertex insertWhenBlock(NetlistGraph graph, Vertex trigger, Vertex expr, Vertex clk, Vertex rst,
 			Vertex set) throws Exception {
 
@@ -414,12 +529,25 @@ public class CodeGenerator {
 	public static ArrayList<String> generate(NetlistGraph graph, ArrayList<Property> assumptions,
 			ArrayList<Property> assertions, String templateCode) throws Exception {
 
+		addProperties(graph, assumptions, assertions);
+
+		return generate(graph, templateCode, false);
+
+	}
+
+	public static void addProperties(NetlistGraph graph, ArrayList<Property> assumptions,
+			ArrayList<Property> assertions) throws Exception {
+
 		// Step 1: Add properties to graph
 
-		HashMap<Property, Vertex> assumptionNets = new HashMap<Property, Vertex>();
-		HashMap<Property, Vertex> assertionNets = new HashMap<Property, Vertex>();
+		assumptionNets = new LinkedHashMap<Property, Vertex>();
+		assertionNets = new LinkedHashMap<Property, Vertex>();
+
+		liveAssertionNets = new LinkedHashMap<Property, Vertex>();
 
-		HashMap<Property, Vertex> liveAssertionNets = new HashMap<Property, Vertex>();
+		delayLines = new HashMap<Vertex, ArrayList<Vertex>>();
+
+		delayedNets = new HashMap<String, Vertex>();
 
 		Vertex clk = new Vertex(netIgnorePrefix + "clk_prop", VertexType.NET, "input");
 		Vertex rst = new Vertex(netIgnorePrefix + "rst_prop", VertexType.NET, "input");
@@ -457,10 +585,77 @@ public class CodeGenerator {
 
 		}
 
+	}
+
+	public static HashSet<Vertex> getPropertyNets() {
+
+		// returns the output nets of properties added by addProperties
+
+		HashSet<Vertex> result = new HashSet<Vertex>();
+
+		result.addAll(assumptionNets.values());
+
+		result.addAll(assertionNets.values());
+
+		result.addAll(liveAssertionNets.values());
+
+		return result;
+
+	}
+
+	public static int reduceCone(NetlistGraph graph) {
+
+		// Cone-of-influence reduction: removes all modules and nets outside
+		// the transitive fan-in of the property nets added by addProperties.
+		// Flip-flops, inputs and gates that cannot affect any property do
+		// not change verification results but multiply the state and input
+		// spaces. Returns the number of removed flip-flops.
+
+		HashSet<Vertex> roots = getPropertyNets();
+
+		if (roots.isEmpty())
+			return 0;
+
+		HashSet<Vertex> cone = graph.bfs(roots, new HashSet<Vertex>(), true);
+
+		cone.addAll(roots);
+
+		int removedFlops = 0;
+
+		for (Vertex v : graph.getVertices()) {
+
+			if (cone.contains(v))
+				continue;
+
+			if ("DFF".equals(v.subtype))
+				removedFlops++;
+
+			graph.removeVertex(v);
+
+		}
+
+		return removedFlops;
+
+	}
+
+	public static ArrayList<String> generate(NetlistGraph graph, String templateCode, boolean symmetryReduction)
+			throws Exception {
+
+		symmetries = new ArrayList<SymmetryFinder.Symmetry>();
+
+		if (symmetryReduction && templateCode.contains("{SYMMETRY_STATE_SWAPS}"))
+			symmetries = SymmetryFinder.find(build(graph));
+
 		// Step 2 : Populate code generation structures
 
 		populateStructures(graph);
 
+		// templates marked with {BITWISE_ONLY} evaluate several input vectors
+		// per machine word (one per bit) and cannot use arithmetic gates
+
+		if (templateCode.contains("{BITWISE_ONLY}"))
+			checkBitwise(graph);
+
 		// Step 3 : Generate code
 
 		HashMap<String, String> netNameMapping = new HashMap<String, String>();
@@ -596,6 +791,13 @@ public class CodeGenerator {
 
 					}
 
+				} else if (s.contains("{TERNARY_ASSIGN}")) {
+
+					String s2 = s.replaceFirst("//(.)+", "");
+
+					for (String a : getTernaryAssigns(graph))
+						lines.add(s2 + a + expandComment);
+
 				} else if (s.contains("{NET:")) {
 
 					s = s.replaceFirst("//( )+", "");
@@ -616,7 +818,37 @@ public class CodeGenerator {
 
 					s = s.replaceFirst("//( )+", "");
 
-					s = s.replace("{RESET_STATE}", String.format("0x%x", resetState));
+					// templates with a long (or uint64_t) reset state need long
+					// literals, a plain literal of 0x80000000 or above is a
+					// negative int that sign-extends into the high bits
+
+					String resetFmt = templateCode.contains("int getResetState()") ? "0x%x" : "0x%xL";
+
+					s = s.replace("{RESET_STATE}", String.format(resetFmt, resetState));
+
+					s += expandComment;
+
+					lines.add(s);
+
+				} else if (s.contains("{SYMMETRY_STATE_SWAPS}") || s.contains("{SYMMETRY_INPUT_SWAPS}")) {
+
+					s = s.replaceFirst("//( )+", "");
+
+					StringBuilder stateSwaps = new StringBuilder();
+
+					StringBuilder inputSwaps = new StringBuilder();
+
+					for (SymmetryFinder.Symmetry sym : symmetries) {
+
+						stateSwaps.append(getArrayLiteral(sym.stateSwaps)).append(", ");
+
+						inputSwaps.append(getArrayLiteral(sym.inputSwaps)).append(", ");
+
+					}
+
+					s = s.replace("{SYMMETRY_STATE_SWAPS}", "{ " + stateSwaps + "}");
+
+					s = s.replace("{SYMMETRY_INPUT_SWAPS}", "{ " + inputSwaps + "}");
 
 					s += expandComment;
 
@@ -642,6 +874,26 @@ public class CodeGenerator {
 
 					lines.add(s);
 
+				} else if (s.contains("{LIVE_ASSERTION_COUNT}")) {
+
+					s = s.replaceFirst("//( )+", "");
+
+					s = s.replace("{LIVE_ASSERTION_COUNT}", "" + liveAssertionNets.size());
+
+					s += expandComment;
+
+					lines.add(s);
+
+				} else if (s.contains("{ASSERTION_COUNT}")) {
+
+					s = s.replaceFirst("//( )+", "");
+
+					s = s.replace("{ASSERTION_COUNT}", "" + assertionNets.size());
+
+					s += expandComment;
+
+					lines.add(s);
+
 				} else if (s.contains("{ASSUMPTION}")) {
 
 					s = s.replaceFirst("//( )+", "");
@@ -664,6 +916,8 @@ public class CodeGenerator {
 
 					s = s.replaceFirst("//( )+", "");
 
+					int ind = 0;
+
 					for (Entry<Property, Vertex> entry : assertionNets.entrySet()) {
 
 						String netName = entry.getValue().name;
@@ -672,6 +926,8 @@ public class CodeGenerator {
 
 						si = si.replace("{MAXDELAY}", "" + getMaxDelay(entry.getKey()));
 
+						si = si.replace("{ASSERTION_INDEX}", "" + ind++);
+
 						si += expandComment;
 
 						lines.add(si);
@@ -708,6 +964,390 @@ public class CodeGenerator {
 
 	}
 
+	public static TransitionSystem build(NetlistGraph graph) throws Exception {
+
+		// builds an index-based model of graph (properties must have been
+		// added with `addProperties` beforehand)
+
+		populateStructures(graph);
+
+		TransitionSystem ts = new TransitionSystem();
+
+		ArrayList<Vertex> nets = new ArrayList<Vertex>();
+
+		nets.addAll(qNets);
+		nets.addAll(inpNets);
+		nets.addAll(internalNets);
+
+		HashMap<Vertex, Integer> netIndex = new HashMap<Vertex, Integer>();
+
+		ts.netNames = new String[nets.size()];
+
+		for (int i = 0; i < nets.size(); i++) {
+
+			netIndex.put(nets.get(i), i);
+
+			ts.netNames[i] = nets.get(i).name;
+
+		}
+
+		ts.stateBitCount = qNets.size();
+
+		ts.inputBitCount = inpNets.size();
+
+		ts.resetState = resetState;
+
+		ts.resetBits = resetBits;
+
+		ts.nextState = new int[qNets.size()];
+
+		int ind = 0;
+
+		for (Vertex q : qNets)
+			ts.nextState[ind++] = getNetIndex(netIndex, flopMap.get(q));
+
+		ts.gates = new ArrayList<TransitionSystem.Gate>();
+
+		for (Vertex n : combNets) {
+
+			Vertex driver = graph.getSourceModule(n);
+
+			String type = driver.subtype;
+
+			int output = getNetIndex(netIndex, n);
+
+			int constant = 0;
+
+			String[] ports = null;
+
+			if ("TIE0".equals(type) || "TIE1".equals(type) || "TIEX".equals(type) || "CONST".equals(type)) {
+
+				if ("TIE1".equals(type))
+					constant = -1;
+				else if ("TIEX".equals(type))
+					constant = 0xf0f0f0f0;
+				else if ("CONST".equals(type))
+					constant = Integer.parseInt(driver.tag);
+
+				type = "CONST";
+
+				ports = new String[] {};
+
+			} else if (VerilogParser.CASSIGN_MOD.equals(type)) {
+
+				type = "BUF";
+
+			} else if ("MUX2".equals(type)) {
+
+				ports = new String[] { "a", "b", "s" };
+
+			} else if ("<".equals(type) || ">".equals(type) || "<=".equals(type) || ">=".equals(type)) {
+
+				ports = new String[] { "a", "b" };
+
+			} else if ("*BITS".equals(type)) {
+
+				ports = new String[] { "a" };
+
+			} else if ("GROUP".equals(type)) {
+
+				ports = new String[graph.getSources(driver).size()];
+
+				for (int i = 0; i < ports.length; i++)
+					ports[i] = "" + i;
+
+			}
+
+			int[] inputs;
+
+			if (ports == null) {
+
+				ArrayList<Vertex> sources = new ArrayList<Vertex>(graph.getSources(driver));
+
+				inputs = new int[sources.size()];
+
+				for (int i = 0; i < inputs.length; i++)
+					inputs[i] = getNetIndex(netIndex, sources.get(i));
+
+			} else {
+
+				inputs = new int[ports.length];
+
+				for (int i = 0; i < inputs.length; i++)
+					inputs[i] = getNetIndex(netIndex, graph.getNet(driver, ports[i]));
+
+			}
+
+			ts.gates.add(new TransitionSystem.Gate(type, output, inputs, constant));
+
+		}
+
+		ts.assumptions = new int[assumptionNets.size()];
+		ts.assumptionDelays = new int[assumptionNets.size()];
+
+		ind = 0;
+
+		for (Entry<Property, Vertex> entry : assumptionNets.entrySet()) {
+
+			ts.assumptions[ind] = getNetIndex(netIndex, entry.getValue());
+			ts.assumptionDelays[ind] = getMaxDelay(entry.getKey());
+
+			ind++;
+
+		}
+
+		ts.assertions = new int[assertionNets.size()];
+		ts.assertionDelays = new int[assertionNets.size()];
+
+		ind = 0;
+
+		for (Entry<Property, Vertex> entry : assertionNets.entrySet()) {
+
+			ts.assertions[ind] = getNetIndex(netIndex, entry.getValue());
+			ts.assertionDelays[ind] = getMaxDelay(entry.getKey());
+
+			ind++;
+
+		}
+
+		ts.liveAssertions = new int[liveAssertionNets.size()];
+
+		ind = 0;
+
+		for (Vertex v : liveAssertionNets.values())
+			ts.liveAssertions[ind++] = getNetIndex(netIndex, v);
+
+		return ts;
+
+	}
+
+	private static ArrayList<String> getTernaryAssigns(NetlistGraph graph) throws Exception {
+
+		// Dual-rail (three-valued) counterpart of `assigns`, used to decide
+		// whether nets depend on inputs that are left unassigned (X).
+		//
+		// Each net n is represented by two long variables: n_hi (bits that
+		// may be 1) and n_lo (bits that may be 0), so that a 0 is (0, -1), a 1
+		// is (-1, 0) and an X is (-1, -1). Bitwise gates propagate X exactly
+		// per bit, the remaining gates produce X when any of their inputs is
+		// not fully known.
+		//
+		// A third variable, n_x, holds the mask of unassigned inputs that an
+		// unknown net depends on (0 when the net is known). It is the union
+		// of the masks of the gate inputs, so inputs masked by a known
+		// controlling value (e.g. a 0 at an AND gate) are not included.
+
+		ArrayList<String> result = new ArrayList<String>();
+
+		for (Vertex n : combNets) {
+
+			Vertex driver = graph.getSourceModule(n);
+
+			String type = driver.subtype;
+
+			String y = jNetNames.get(n);
+
+			ArrayList<String> in = new ArrayList<String>();
+
+			for (Vertex v : graph.getSources(driver))
+				in.add(jNetNames.get(v));
+
+			if ("TIE0".equals(type) || "TIE1".equals(type) || "TIEX".equals(type) || "CONST".equals(type)) {
+
+				String val = driver.tag;
+
+				if ("TIE0".equals(type))
+					val = "0";
+				else if ("TIE1".equals(type))
+					val = "-1";
+				else if ("TIEX".equals(type))
+					val = "0xf0f0f0f0";
+
+				result.add(String.format("%s_hi = %s;", y, val));
+				result.add(String.format("%s_lo = ~%s_hi;", y, y));
+
+			} else if (VerilogParser.CASSIGN_MOD.equals(type) || "BUF".equals(type)) {
+
+				result.add(String.format("%s_hi = %s_hi;", y, in.get(0)));
+				result.add(String.format("%s_lo = %s_lo;", y, in.get(0)));
+
+			} else if ("NOT".equals(type)) {
+
+				result.add(String.format("%s_hi = %s_lo;", y, in.get(0)));
+				result.add(String.format("%s_lo = %s_hi;", y, in.get(0)));
+
+			} else if ("AND".equals(type) || "NAND".equals(type) || "OR".equals(type) || "NOR".equals(type)) {
+
+				// AND: hi = &hi, lo = |lo (OR is the dual)
+
+				boolean isAnd = "AND".equals(type) || "NAND".equals(type);
+
+				boolean isInv = "NAND".equals(type) || "NOR".equals(type);
+
+				String andRail = isAnd ? "_hi" : "_lo";
+
+				String orRail = isAnd ? "_lo" : "_hi";
+
+				String andExpr = "", orExpr = "";
+
+				for (String i : in) {
+
+					andExpr += (andExpr.isEmpty() ? "" : " & ") + i + andRail;
+
+					orExpr += (orExpr.isEmpty() ? "" : " | ") + i + orRail;
+
+				}
+
+				result.add(String.format("%s%s = %s;", y, isInv ? orRail : andRail, andExpr));
+				result.add(String.format("%s%s = %s;", y, isInv ? andRail : orRail, orExpr));
+
+			} else if ("XOR".equals(type)) {
+
+				// accumulate pairwise: x = X mask, v = binary value, then
+				// hi = v | x and lo = ~v | x
+
+				result.add(String.format("%s_hi = %s_hi;", y, in.get(0)));
+				result.add(String.format("%s_lo = %s_lo;", y, in.get(0)));
+
+				for (int i = 1; i < in.size(); i++) {
+
+					String b = in.get(i);
+
+					result.add(String.format("%s_lo = (%s_hi & %s_lo) | (%s_hi & %s_lo);", y, y, y, b, b));
+					result.add(String.format("%s_hi = (%s_hi ^ %s_hi) | %s_lo;", y, y, b, y));
+					result.add(String.format("%s_lo = ~%s_hi | %s_lo;", y, y, y));
+
+				}
+
+			} else if ("MUX2".equals(type)) {
+
+				String a = jNetNames.get(graph.getNet(driver, "a"));
+				String b = jNetNames.get(graph.getNet(driver, "b"));
+				String sel = jNetNames.get(graph.getNet(driver, "s"));
+
+				String fmt = "%s%s = (%s%s & %s_lo) | (%s%s & %s_hi);";
+
+				result.add(String.format(fmt, y, "_hi", a, "_hi", sel, b, "_hi", sel));
+				result.add(String.format(fmt, y, "_lo", a, "_lo", sel, b, "_lo", sel));
+
+			} else {
+
+				// arithmetic gates: evaluated on the hi rails when all inputs
+				// are known
+
+				String expr;
+
+				if ("GROUP".equals(type)) {
+
+					in.clear();
+
+					expr = "0";
+
+					for (int i = 0; i < graph.getSources(driver).size(); i++) {
+
+						String netI = jNetNames.get(graph.getNet(driver, "" + i));
+
+						in.add(netI);
+
+						expr += String.format(" + ((%s_hi & 1) << %d)", netI, i);
+
+					}
+
+				} else if ("*BITS".equals(type)) {
+
+					expr = String.format("Long.bitCount(%s_hi)", in.get(0));
+
+				} else if ("X2H".equals(type)) {
+
+					expr = String.format("((%s_hi != 0) & (%s_hi != -1)) ? -1 : 0", in.get(0), in.get(0));
+
+				} else {
+
+					final String[] cmpGates = { "==", "!=", "<", ">", "<=", ">=" };
+
+					if (!Arrays.asList(cmpGates).contains(type))
+						throw new Exception("unrecognized gate " + type);
+
+					String a = in.get(0), b = in.get(1);
+
+					if (!"==".equals(type) && !"!=".equals(type)) {
+
+						a = jNetNames.get(graph.getNet(driver, "a"));
+
+						b = jNetNames.get(graph.getNet(driver, "b"));
+
+					}
+
+					expr = String.format("%s_hi %s %s_hi ? -1 : 0", a, type, b);
+
+				}
+
+				String known = "-1";
+
+				for (String i : in)
+					known += String.format(" & (%s_hi ^ %s_lo)", i, i);
+
+				result.add(String.format("%s_hi = (%s) == -1 ? (%s) : -1;", y, known, expr));
+				result.add(String.format("%s_lo = (%s) == -1 ? ~%s_hi : -1;", y, known, y));
+
+			}
+
+			String xMask = "0";
+
+			for (Vertex v : graph.getSources(driver))
+				xMask += " | " + jNetNames.get(v) + "_x";
+
+			result.add(String.format("%s_x = (%s_hi & %s_lo) == 0 ? 0 : (%s);", y, y, y, xMask));
+
+		}
+
+		return result;
+
+	}
+
+	private static void checkBitwise(NetlistGraph graph) throws Exception {
+
+		final String[] bitwiseGates = { "AND", "NAND", "OR", "NOR", "XOR", "NOT", "BUF", "MUX2", "TIE0", "TIE1",
+				VerilogParser.CASSIGN_MOD };
+
+		for (Vertex n : combNets) {
+
+			String type = graph.getSourceModule(n).subtype;
+
+			if (!Arrays.asList(bitwiseGates).contains(type)) {
+
+				String strE = String.format("bit-parallel model does not support gate %s (driving net <%s>)", type, n);
+
+				throw new Exception(strE);
+
+			}
+
+		}
+
+	}
+
+	private static String getArrayLiteral(int[] values) {
+
+		StringBuilder sb = new StringBuilder("{");
+
+		for (int i = 0; i < values.length; i++)
+			sb.append(i == 0 ? " " : ", ").append(values[i]);
+
+		return sb.append(" }").toString();
+
+	}
+
+	private static int getNetIndex(HashMap<Vertex, Integer> netIndex, Vertex v) throws Exception {
+
+		Integer ind = netIndex.get(v);
+
+		if (ind == null)
+			throw new Exception(String.format("net <%s> is not part of the model", v));
+
+		return ind;
+
+	}
+
 	private static void populateStructures(NetlistGraph graph) throws Exception {
 
 		qNets = new TreeSet<Vertex>();
@@ -722,6 +1362,8 @@ public class CodeGenerator {
 
 		assigns = new ArrayList<String>();
 
+		combNets = new ArrayList<Vertex>();
+
 		// flip-flop d input nets:
 		HashSet<Vertex> dNets = new HashSet<Vertex>();
 
@@ -808,6 +1450,8 @@ public class CodeGenerator {
 
 			assigns.add(String.format("{PREFIX1}%s{POSTFIX1} = 0;", jNetNames.get(vd)));
 
+			combNets.add(vd);
+
 		}
 
 		for (Vertex v : graph.getModulesByType("TIE1")) {
@@ -818,6 +1462,8 @@ public class CodeGenerator {
 
 			assigns.add(String.format("{PREFIX1}%s{POSTFIX1} = -1;", jNetNames.get(vd)));
 
+			combNets.add(vd);
+
 		}
 
 		for (Vertex v : graph.getModulesByType("TIEX")) {
@@ -828,6 +1474,8 @@ public class CodeGenerator {
 
 			assigns.add(String.format("{PREFIX1}%s{POSTFIX1} = 0xf0f0f0f0;", jNetNames.get(vd)));
 
+			combNets.add(vd);
+
 		}
 
 		for (Vertex v : graph.getModulesByType("CONST")) {
@@ -838,6 +1486,8 @@ public class CodeGenerator {
 
 			assigns.add(String.format("{PREFIX1}%s{POSTFIX1} = %s;", jNetNames.get(vd), v.tag));
 
+			combNets.add(vd);
+
 		}
 
 		toVisit = netGraph.bfs(processed, 1, false);
@@ -1031,6 +1681,8 @@ public class CodeGenerator {
 
 				processed.add(n);
 
+				combNets.add(n);
+
 				toVisitNext.addAll(netGraph.getDestinations(n));
 
 			}
@@ -1055,6 +1707,12 @@ public class CodeGenerator {
 
 		HashSet<Vertex> ioNets = graph.getIONets();
 
+		resetState = 0;
+
+		resetBits = new boolean[qNets.size()];
+
+		int bitIndex = qNets.size();
+
 		for (Vertex q : qNets.descendingSet()) {
 
 			Vertex v = graph.getSourceModule(q);
@@ -1082,6 +1740,8 @@ public class CodeGenerator {
 
 			resetState = (resetState << 1) + bit;
 
+			resetBits[--bitIndex] = bit == 1;
+
 		}
 
 	}
@@ -1175,7 +1835,10 @@ public class CodeGenerator {
 
 	}
 
-	private static int getMaxDelay(Property p) {
+	public static int getMaxDelay(Property p) {
+
+		// returns the number of cycles property p looks back (0 for
+		// properties without monitor flip-flops)
 
 		Property copy = new Property(p);
 
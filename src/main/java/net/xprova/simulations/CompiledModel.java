@@ -0,0 +1,10 @@
+package net.xprova.simulations;
+
+public interface CompiledModel {
+
+	// evaluates the combinational logic of a TransitionSystem: reads state
+	// and input nets from `nets` and writes all remaining nets back to it
+
+	public void evaluate(int[] nets);
+
+}
@@ -2,54 +2,208 @@ package net.xprova.simulations;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Stack;
 
 public class DepthFirstExplorer {
 
-	static final int[][] graph0 = { { 1 }, { 2 }, { 0 } };
+	// Depth-first search of explicit graphs in compressed sparse row (CSR)
+	// form. The search reports the cycles closed by back edges (edges from
+	// the current search branch to a node on it) and finds lassos through
+	// accepting nodes (liveness counter-examples).
+	//
+	// Three implementations of the cycle search are kept: a textbook
+	// recursive one, a non-recursive one using standard containers and a
+	// non-recursive one using arrays. They report the same cycles in the same
+	// order and differ only in speed and memory use (see
+	// DepthFirstExplorerBenchmark). The array-based search is the default; it
+	// needs two ints per node and no call stack so it handles graphs of
+	// millions of nodes.
 
-	static final int[][] graph1 = { { 1, 2 }, { 3, 4 }, { 6 }, {}, { 5, 6 }, { 4 }, {} };
+	public static class Graph {
 
-	static final int[][] graph2 = { { 1 }, { 2, 5 }, { 3 }, { 4 }, { 2 }, { 6 }, { 7 }, { 5 } };
+		// the successors of node i are targets[offsets[i] .. offsets[i + 1])
 
-	static final int[][] graph3 = { { 1 }, { 2, 4 }, { 3 }, { 2 }, { 3 } };
+		public final int[] offsets;
 
-	static final int[][] graph4 = { { 1, 2, 3 }, { 2 }, { 3 }, { 1 } };
+		public final int[] targets;
 
-	static final int[][] graph5 = { { 1 }, { 2 }, { 3, 4 }, { 1 }, { 1 } };
+		public Graph(int[] offsets, int[] targets) throws Exception {
 
-	static final int[][] graph6 = { { 1 }, { 0, 2 }, { 0, 1 } };
+			if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != targets.length)
+				throw new Exception("offsets must start at 0 and end at the number of edges");
 
-	private static void dfs3(int[][] graph, ArrayList<List<Integer>> cycles_dfs3) {
+			for (int i = 1; i < offsets.length; i++)
+				if (offsets[i] < offsets[i - 1])
+					throw new Exception(String.format("offsets of node %d are decreasing", i - 1));
+
+			int nodeCount = offsets.length - 1;
+
+			for (int t : targets)
+				if (t < 0 || t >= nodeCount)
+					throw new Exception(String.format("edge target %d is not a node", t));
+
+			this.offsets = offsets;
+
+			this.targets = targets;
+
+		}
+
+		public static Graph fromAdjacency(int[][] adjacency) throws Exception {
+
+			int[] offsets = new int[adjacency.length + 1];
+
+			for (int i = 0; i < adjacency.length; i++)
+				offsets[i + 1] = offsets[i] + adjacency[i].length;
+
+			int[] targets = new int[offsets[adjacency.length]];
+
+			for (int i = 0; i < adjacency.length; i++)
+				System.arraycopy(adjacency[i], 0, targets, offsets[i], adjacency[i].length);
+
+			return new Graph(offsets, targets);
+
+		}
+
+		public int getNodeCount() {
+
+			return offsets.length - 1;
+
+		}
+
+		public int getEdgeCount() {
+
+			return targets.length;
+
+		}
+
+	}
+
+	public interface CycleHandler {
+
+		// called for each back edge found by the search: path[0 .. length)
+		// is the current search branch (path[0] is the root) and its last
+		// node has an edge to `target`, which is on the branch. The path
+		// array may be reused by the search. Returns false to stop the
+		// search.
+
+		boolean handle(int[] path, int length, int target);
+
+	}
+
+	public enum Strategy {
+		RECURSIVE, CONTAINERS, ARRAYS
+	}
+
+	public static class Lasso {
+
+		// nodes of a path from the root that ends in a cycle, the last node
+		// is a repetition of nodes[loopStart]
+
+		public final int[] nodes;
+
+		public final int loopStart;
+
+		public Lasso(int[] nodes, int loopStart) {
+
+			this.nodes = nodes;
+
+			this.loopStart = loopStart;
+
+		}
+
+	}
+
+	private static final int UNDISCOVERED = -1;
+
+	private static final int VISITED = -2;
+
+	public static long findCycles(Graph graph, int root, CycleHandler handler) {
+
+		return findCycles(graph, root, Strategy.ARRAYS, handler);
+
+	}
+
+	public static long findCycles(Graph graph, int root, Strategy strategy, CycleHandler handler) {
+
+		// searches the nodes reachable from root, returns the number of back
+		// edges reported to handler
+
+		long[] count = { 0 };
+
+		if (strategy == Strategy.RECURSIVE) {
+
+			dfs1(graph, root, new Path(), new HashSet<Integer>(), new HashSet<Integer>(), handler, count);
+
+		} else if (strategy == Strategy.CONTAINERS) {
+
+			dfs2(graph, root, handler, count);
+
+		} else {
+
+			dfs3(graph, root, handler, count);
+
+		}
+
+		return count[0];
+
+	}
+
+	public static ArrayList<int[]> getCycles(Graph graph, int root, Strategy strategy) {
+
+		// returns the branch of each back edge followed by its target
+
+		final ArrayList<int[]> cycles = new ArrayList<int[]>();
+
+		findCycles(graph, root, strategy, new CycleHandler() {
+
+			@Override
+			public boolean handle(int[] path, int length, int target) {
+
+				int[] cycle = Arrays.copyOf(path, length + 1);
+
+				cycle[length] = target;
+
+				cycles.add(cycle);
+
+				return true;
+
+			}
+
+		});
+
+		return cycles;
+
+	}
+
+	private static void dfs3(Graph graph, int root, CycleHandler handler, long[] count) {
 
 		// a non-recursive implementation based on arrays instead of standard
 		// containers
 
-		// This is a DFS algorithm based on a stack of nodes (stateStack)
-		// representing the current search branch and an additional lookup table
-		// (inputVectors) that holds the index of each node's child in the
-		// stack.
+		// This is a DFS algorithm based on a stack of nodes (stack)
+		// representing the current search branch and an additional lookup
+		// table (next) that holds the index of each node's next child.
 		//
 		// For example:
 		//
-		// stateStack : 0 1 2
-		// InputVectors : 2 3 4
+		// stack : 0 1 2
+		// next  : 2 3 4 (next[0], next[1], next[2])
 		//
 		// mean that the current path is:
 		//
-		// state 0, currently at its 3rd child (index = 2)
-		// state 1, currently at its 4th child (index = 3)
-		// state 2, currently at its 5th child (index = 4)
+		// node 0, currently at its 3rd child (index = 2)
+		// node 1, currently at its 4th child (index = 3)
+		// node 2, currently at its 5th child (index = 4)
 		//
-		// i.e. state 1 is the 3rd child of state 0 and so forth
+		// i.e. node 1 is the 3rd child of node 0 and so forth
 		//
-		// As the 5th child of state 2 is not on the stack, this means the
+		// As the 5th child of node 2 is not on the stack, this means the
 		// algorithm has just removed it from the stack and is about to check
-		// whether state 2 has any subsequent children.
+		// whether node 2 has any subsequent children.
 		//
-		// The array inputVectors can also hold the special values:
+		// The array next can also hold the special values:
 		//
 		// UNDISCOVERED : node has never been pushed to the stack
 		//
@@ -57,72 +211,61 @@ public class DepthFirstExplorer {
 		//
 		// These values can be used to determine in O(1) whether a node is on
 		// the stack or not (specifically, the condition for this is
-		// UNDISCOVERED & !VISITED).
-
-		final int MAX_SIZE = 20;
-
-		final int INITIAL_STATE = 0;
-
-		final int UNDISCOVERED = -1;
-
-		final int VISITED = -2;
+		// !UNDISCOVERED & !VISITED).
 
-		int stateStack[] = new int[MAX_SIZE];
+		int[] stack = new int[graph.getNodeCount()];
 
-		int inputVectors[] = new int[MAX_SIZE];
+		int[] next = new int[graph.getNodeCount()];
 
-		Arrays.fill(inputVectors, UNDISCOVERED);
+		Arrays.fill(next, UNDISCOVERED);
 
-		int stateStackPtr = 0; // next available empty slot
+		int stackPtr = 0; // next available empty slot
 
-		stateStack[stateStackPtr++] = INITIAL_STATE; // initial state
+		stack[stackPtr++] = root;
 
-		inputVectors[INITIAL_STATE] = 0; // initial state
+		next[root] = 0;
 
-		while (stateStackPtr > 0) {
+		while (stackPtr > 0) {
 
-			int currentState = stateStack[stateStackPtr - 1]; // peek
+			int current = stack[stackPtr - 1]; // peek
 
-			int currentInputVec = inputVectors[currentState];
+			int child = graph.offsets[current] + next[current];
 
-			if (currentInputVec < graph[currentState].length) {
+			if (child < graph.offsets[current + 1]) {
 
-				// there is at least one more nextState to explore
+				// there is at least one more child to explore
 
-				inputVectors[currentState] = currentInputVec + 1;
+				next[current]++;
 
-				int nextState = graph[currentState][currentInputVec];
+				int target = graph.targets[child];
 
-				if (inputVectors[nextState] == UNDISCOVERED) {
+				if (next[target] == UNDISCOVERED) {
 
 					// push to stack
 
-					stateStack[stateStackPtr++] = nextState;
+					stack[stackPtr++] = target;
 
-					inputVectors[nextState] = 0;
+					next[target] = 0;
 
-				} else if (inputVectors[nextState] != VISITED) {
+				} else if (next[target] != VISITED) {
 
 					// found a cycle
 
-					Stack<Integer> states = new Stack<Integer>();
+					count[0]++;
 
-					for (int i = 0; i < stateStackPtr; i++)
-						states.push(stateStack[i]);
-
-					processCycle(states, nextState, cycles_dfs3);
+					if (!handler.handle(stack, stackPtr, target))
+						return;
 
 				}
 
 			} else {
 
-				// explored all input vectors of currentState
-
-				// currentState is now marked as visited
+				// explored all children of current, which is now marked as
+				// visited
 
-				inputVectors[currentState] = VISITED;
+				next[current] = VISITED;
 
-				stateStackPtr--; // pop
+				stackPtr--; // pop
 
 			}
 
@@ -130,65 +273,71 @@ public class DepthFirstExplorer {
 
 	}
 
-	private static void dfs2(int[][] graph, ArrayList<List<Integer>> cycles_dfs2) {
+	private static void dfs2(Graph graph, int root, CycleHandler handler, long[] count) {
 
-		// a non-recursive implementation using standard containers
+		// a non-recursive implementation using standard containers (the
+		// branch is also kept in an array to be passed to handler)
 
 		HashSet<Integer> visited = new HashSet<Integer>();
 
-		Stack<Integer> states = new Stack<Integer>();
+		HashSet<Integer> onStack = new HashSet<Integer>();
 
-		Stack<Integer> inputVecs = new Stack<Integer>();
+		Stack<Integer> children = new Stack<Integer>();
 
-		states.push(0); // initial state
+		Path states = new Path();
 
-		inputVecs.push(0); // first input vector
+		states.push(root);
 
-		while (!states.isEmpty()) {
+		children.push(0);
 
-			int currentState = states.pop();
+		onStack.add(root);
 
-			int currentInputVec = inputVecs.pop();
+		while (states.length > 0) {
 
-			if (visited.contains(currentState)) {
+			int current = states.nodes[states.length - 1];
 
-				continue;
-			}
+			int child = graph.offsets[current] + children.peek();
 
-			if (states.contains(currentState)) {
+			if (child < graph.offsets[current + 1]) {
 
-				processCycle(states, currentState, cycles_dfs2);
+				// there are more children to explore
 
-				continue;
-			}
+				children.push(children.pop() + 1);
 
-			if (currentInputVec < graph[currentState].length) {
+				int target = graph.targets[child];
 
-				// there are more input vectors to explore in currentState
+				if (visited.contains(target))
+					continue;
 
-				// first push next input vector of current state:
+				if (onStack.contains(target)) {
 
-				states.push(currentState);
+					count[0]++;
 
-				inputVecs.push(currentInputVec + 1);
+					if (!handler.handle(states.nodes, states.length, target))
+						return;
 
-				// now push next state to stack:
+					continue;
 
-				int nextState = graph[currentState][currentInputVec];
+				}
 
-				states.push(nextState);
+				states.push(target);
 
-				inputVecs.push(0);
+				children.push(0);
 
-				continue;
+				onStack.add(target);
 
 			} else {
 
-				// explored all input vectors of currentState
+				// explored all children of current, which is now marked as
+				// visited
+
+				states.length--;
 
-				// currentState is now marked as visited
+				children.pop();
 
-				visited.add(currentState);
+				onStack.remove(current);
+
+				visited.add(current);
 
 			}
 
@@ -196,112 +345,215 @@ public class DepthFirstExplorer {
 
 	}
 
-	private static void dfs1(int[][] graph, int current, Stack<Integer> stack, HashSet<Integer> visited,
-			ArrayList<List<Integer>> cycles_dfs1) {
+	private static boolean dfs1(Graph graph, int current, Path stack, HashSet<Integer> onStack,
+			HashSet<Integer> visited, CycleHandler handler, long[] count) {
 
-		// textbook recursive implementation using standard containers
+		// textbook recursive implementation using standard containers (the
+		// call stack must be deep enough for the longest search branch),
+		// returns false if the search was stopped
 
 		stack.push(current);
 
-		for (int c : graph[current]) {
+		onStack.add(current);
+
+		for (int i = graph.offsets[current]; i < graph.offsets[current + 1]; i++) {
+
+			int c = graph.targets[i];
 
 			if (visited.contains(c))
 				continue;
 
-			if (stack.contains(c)) {
+			if (onStack.contains(c)) {
+
+				count[0]++;
 
-				processCycle(stack, c, cycles_dfs1);
+				if (!handler.handle(stack.nodes, stack.length, c))
+					return false;
 
 				continue;
+
 			}
 
-			dfs1(graph, c, stack, visited, cycles_dfs1);
+			if (!dfs1(graph, c, stack, onStack, visited, handler, count))
+				return false;
 
 		}
 
-		stack.pop();
+		stack.length--;
+
+		onStack.remove(current);
 
 		visited.add(current);
 
+		return true;
+
 	}
 
-	private static void processCycle(List<Integer> stack, int currentState, List<List<Integer>> cycles) {
+	public static Lasso findLasso(Graph graph, int root, BitSet accepting) {
 
-		stack.add(currentState);
+		// nested DFS: returns a lasso from root whose cycle contains an
+		// accepting node, or null if there is none
+		//
+		// The outer search is the array-based search above. After finishing
+		// an accepting node, an inner search from it looks for a path back
+		// to a node on the outer stack. Nodes reached by inner searches are
+		// flagged and never searched again, so each node is visited at most
+		// twice. A back edge of the outer search from or to an accepting
+		// node also closes a cycle.
 
-		cycles.add(new ArrayList<Integer>(stack));
+		int nodeCount = graph.getNodeCount();
 
-		stack.remove(stack.size() - 1);
+		int[] stack = new int[nodeCount];
 
-	}
+		int[] next = new int[nodeCount];
 
-	private static boolean compareLists(List<List<List<Integer>>> cycles_dfs) {
+		Arrays.fill(next, UNDISCOVERED);
 
-		List<List<Integer>> first = cycles_dfs.get(0);
+		int[] innerStack = new int[nodeCount];
 
-		for (List<List<Integer>> list : cycles_dfs)
-			if (!compareTwoLists(first, list))
-				return false;
+		int[] innerNext = new int[nodeCount];
 
-		return true;
+		BitSet flagged = new BitSet(nodeCount);
 
-	}
+		int stackPtr = 0;
 
-	private static boolean compareTwoLists(List<List<Integer>> first, List<List<Integer>> second) {
+		int innerStackPtr = 0;
 
-		if (first.size() != second.size())
-			return false;
+		stack[stackPtr++] = root;
 
-		for (int i = 0; i < first.size(); i++)
-			if (!compareTwoSubLists(first.get(i), second.get(i)))
-				return false;
+		next[root] = 0;
 
-		return true;
+		while (stackPtr > 0) {
 
-	}
+			if (innerStackPtr > 0) {
 
-	private static boolean compareTwoSubLists(List<Integer> first, List<Integer> second) {
+				int current = innerStack[innerStackPtr - 1];
 
-		if (first.size() != second.size())
-			return false;
+				int child = graph.offsets[current] + innerNext[innerStackPtr - 1];
 
-		for (int i = 0; i < first.size(); i++)
-			if (first.get(i) != second.get(i))
-				return false;
+				if (child == graph.offsets[current + 1]) {
 
-		return true;
+					innerStackPtr--; // pop
+
+					continue;
+
+				}
+
+				innerNext[innerStackPtr - 1]++;
+
+				int target = graph.targets[child];
+
+				if (next[target] >= 0) {
+
+					// inner search reached the outer stack
+
+					return getLasso(stack, stackPtr, innerStack, innerStackPtr, target);
+
+				}
+
+				if (!flagged.get(target)) {
+
+					flagged.set(target);
+
+					innerStack[innerStackPtr] = target;
+
+					innerNext[innerStackPtr] = 0;
+
+					innerStackPtr++;
+
+				}
+
+				continue;
+
+			}
+
+			int current = stack[stackPtr - 1];
+
+			int child = graph.offsets[current] + next[current];
+
+			if (child < graph.offsets[current + 1]) {
+
+				next[current]++;
+
+				int target = graph.targets[child];
+
+				if (next[target] == UNDISCOVERED) {
+
+					stack[stackPtr++] = target;
+
+					next[target] = 0;
+
+				} else if (next[target] != VISITED && (accepting.get(current) || accepting.get(target))) {
+
+					return getLasso(stack, stackPtr, innerStack, 0, target);
+
+				}
+
+			} else if (accepting.get(current) && !flagged.get(current)) {
+
+				// finished an accepting node, start an inner search from it
+
+				flagged.set(current);
+
+				innerStack[0] = current;
+
+				innerNext[0] = 0;
+
+				innerStackPtr = 1;
+
+			} else {
+
+				next[current] = VISITED;
+
+				stackPtr--;
+
+			}
+
+		}
+
+		return null;
 
 	}
 
-	public static void main(String[] args) {
+	private static Lasso getLasso(int[] stack, int stackPtr, int[] innerStack, int innerStackPtr, int target) {
+
+		// the outer stack, the inner stack (except its first node, the top of
+		// the outer stack) and target
 
-		int[][][] graphs = { graph0, graph1, graph2, graph3, graph4, graph5, graph6 };
+		int innerNodes = Math.max(innerStackPtr - 1, 0);
 
-		for (int i = 0; i < graphs.length; i++) {
+		int[] nodes = new int[stackPtr + innerNodes + 1];
 
-			System.out.printf("graph %d: ", i);
+		System.arraycopy(stack, 0, nodes, 0, stackPtr);
 
-			int[][] graph = graphs[i];
+		if (innerNodes > 0)
+			System.arraycopy(innerStack, 1, nodes, stackPtr, innerNodes);
 
-			ArrayList<List<Integer>> cycles_dfs1 = new ArrayList<List<Integer>>();
-			ArrayList<List<Integer>> cycles_dfs2 = new ArrayList<List<Integer>>();
-			ArrayList<List<Integer>> cycles_dfs3 = new ArrayList<List<Integer>>();
+		nodes[nodes.length - 1] = target;
+
+		int loopStart = 0;
+
+		while (stack[loopStart] != target)
+			loopStart++;
+
+		return new Lasso(nodes, loopStart);
+
+	}
 
-			dfs1(graph, 0, new Stack<Integer>(), new HashSet<Integer>(), cycles_dfs1);
+	private static class Path {
 
-			dfs2(graph, cycles_dfs2);
+		// search branch of the container-based searches
 
-			dfs3(graph, cycles_dfs3);
+		int[] nodes = new int[16];
 
-			List<List<List<Integer>>> cycles_dfs = new ArrayList<List<List<Integer>>>();
+		int length = 0;
 
-			cycles_dfs.add(cycles_dfs1);
-			cycles_dfs.add(cycles_dfs2);
-			cycles_dfs.add(cycles_dfs3);
+		void push(int node) {
 
-			boolean result = compareLists(cycles_dfs);
+			if (length == nodes.length)
+				nodes = Arrays.copyOf(nodes, 2 * length);
 
-			System.out.println(result ? "all equal (" + cycles_dfs1.size() + " cycles)" : "mismatch");
+			nodes[length++] = node;
 
 		}
 
@@ -0,0 +1,210 @@
+package net.xprova.simulations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+public class InMemoryCompiler {
+
+	// Compiles generated model code using the system Java compiler without
+	// touching the file system and loads the resulting classes into the
+	// running JVM. This avoids the javac and JVM start-up costs of running
+	// generated models as external programs.
+
+	private static class SourceFile extends SimpleJavaFileObject {
+
+		private final String code;
+
+		public SourceFile(String className, String code) {
+
+			super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+
+			this.code = code;
+
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+
+			return code;
+
+		}
+
+	}
+
+	private static class ClassFile extends SimpleJavaFileObject {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		public ClassFile(String className) {
+
+			super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+
+			return bytes;
+
+		}
+
+	}
+
+	private static class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+		// class name -> compiled class (includes nested and anonymous classes)
+
+		private final HashMap<String, ClassFile> classFiles = new HashMap<String, ClassFile>();
+
+		public ClassFileManager(StandardJavaFileManager fileManager) {
+
+			super(fileManager);
+
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className, Kind kind,
+				FileObject sibling) {
+
+			ClassFile f = new ClassFile(className);
+
+			classFiles.put(className, f);
+
+			return f;
+
+		}
+
+	}
+
+	private static class ByteArrayClassLoader extends ClassLoader {
+
+		private final HashMap<String, ClassFile> classFiles;
+
+		public ByteArrayClassLoader(HashMap<String, ClassFile> classFiles, ClassLoader parent) {
+
+			super(parent);
+
+			this.classFiles = classFiles;
+
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+
+			ClassFile f = classFiles.get(name);
+
+			if (f == null)
+				throw new ClassNotFoundException(name);
+
+			byte[] b = f.bytes.toByteArray();
+
+			return defineClass(name, b, 0, b.length);
+
+		}
+
+	}
+
+	public static Class<?> compile(String className, List<String> lines) throws Exception {
+
+		return compile(className, lines, null);
+
+	}
+
+	public static Class<?> compile(String className, List<String> lines, File classDir) throws Exception {
+
+		// as above, and also writes the compiled classes to `classDir`
+		// (unless null) so they can be loaded again with `load`
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+		if (compiler == null)
+			throw new Exception("no Java compiler available (in-process compilation requires a JDK)");
+
+		StringBuilder sb = new StringBuilder();
+
+		for (String l : lines)
+			sb.append(l).append('\n');
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+		StandardJavaFileManager stdManager = compiler.getStandardFileManager(diagnostics, null, null);
+
+		ClassFileManager fileManager = new ClassFileManager(stdManager);
+
+		List<SourceFile> sources = Arrays.asList(new SourceFile(className, sb.toString()));
+
+		List<String> options = Arrays.asList("-nowarn");
+
+		boolean success = compiler.getTask(null, fileManager, diagnostics, options, null, sources).call();
+
+		fileManager.close();
+
+		if (!success) {
+
+			for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+
+				if (d.getKind() == Diagnostic.Kind.ERROR)
+					System.out.printf("line %d: %s\n", d.getLineNumber(), d.getMessage(Locale.getDefault()));
+
+			}
+
+			throw new Exception("Compilation failed");
+
+		}
+
+		if (classDir != null) {
+
+			for (ClassFile f : fileManager.classFiles.values()) {
+
+				String fileName = f.toUri().getPath().substring(1);
+
+				File classFile = new File(classDir, fileName);
+
+				classFile.getParentFile().mkdirs();
+
+				Files.write(classFile.toPath(), f.bytes.toByteArray());
+
+			}
+
+		}
+
+		ClassLoader parent = InMemoryCompiler.class.getClassLoader();
+
+		return new ByteArrayClassLoader(fileManager.classFiles, parent).loadClass(className);
+
+	}
+
+	public static Class<?> load(String className, File classDir) throws Exception {
+
+		// loads previously compiled classes from `classDir`
+
+		URL[] urls = { classDir.toURI().toURL() };
+
+		ClassLoader parent = InMemoryCompiler.class.getClassLoader();
+
+		return new URLClassLoader(urls, parent).loadClass(className);
+
+	}
+
+}
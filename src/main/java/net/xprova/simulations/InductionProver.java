@@ -0,0 +1,236 @@
+package net.xprova.simulations;
+
+import java.util.ArrayList;
+
+public class InductionProver {
+
+	// Unbounded proof of safety assertions by k-induction.
+	//
+	// The base case is bounded model checking from the reset state. The
+	// induction step unrolls k + 1 frames from an unconstrained state and
+	// checks that the assertions cannot fail in the last frame when they
+	// hold in the k frames before it. The step is strengthened with:
+	//
+	// - simple paths: the states of the step frames are pairwise distinct
+	// (this makes the method complete for large enough k)
+	//
+	// - invariants: state bits that keep their reset value in all reachable
+	// states, found by removing bits that can change from the set of
+	// candidates until the remaining set is inductive
+	//
+	// The step frames have no distance from reset, so the base case is
+	// extended by the maximum property delay to cover the frames in which
+	// delayed properties are ignored.
+
+	private final TransitionSystem ts;
+
+	private final BoundedModelChecker base;
+
+	private final TransitionUnroller step;
+
+	private final SatSolver solver;
+
+	// state bits that hold their reset value in all reachable states
+
+	private ArrayList<Integer> invariants;
+
+	private boolean proven;
+
+	public InductionProver(TransitionSystem ts) throws Exception {
+
+		this.ts = ts;
+
+		base = new BoundedModelChecker(ts);
+
+		step = new TransitionUnroller(ts, false);
+
+		solver = step.getSolver();
+
+	}
+
+	public Waveform prove(int maxK) throws Exception {
+
+		// returns the waveforms of all nets in a counter-example, or null if
+		// the assertions were proven or no proof was found up to maxK
+
+		System.out.println("Starting k-induction ...");
+
+		long startTime = System.nanoTime();
+
+		findInvariants();
+
+		int maxDelay = ts.getMaxDelay();
+
+		boolean counterExampleFound = false;
+
+		proven = false;
+
+		int k;
+
+		for (k = 0; k <= maxK; k++) {
+
+			// base case: no counter-examples of up to k + maxDelay + 1 cycles
+
+			while (base.getDepth() < k + maxDelay && !counterExampleFound)
+				counterExampleFound = base.step();
+
+			if (counterExampleFound)
+				break;
+
+			// induction step: the assertions hold in frame k of any simple
+			// path on which they hold in frames 0 .. k - 1
+
+			int asserted = addStepFrame();
+
+			if (!solver.solve(SatSolver.neg(asserted))) {
+
+				proven = true;
+
+				break;
+
+			}
+
+			solver.addClause(asserted);
+
+		}
+
+		double searchTime = (System.nanoTime() - startTime) / 1e9;
+
+		System.out.printf("Completed search in %f seconds\n", searchTime);
+
+		System.out.printf("State bits                     : %d\n", ts.stateBitCount);
+
+		System.out.printf("Input bits                     : %d\n", ts.inputBitCount);
+
+		System.out.printf("Constant state bits            : %d\n", invariants.size());
+
+		System.out.printf("Base case depth                : %d\n", base.getDepth() + 1);
+
+		System.out.printf("SAT conflicts (induction step) : %d\n", solver.getConflicts());
+
+		if (counterExampleFound) {
+
+			System.out.printf("Counter-example found in %d cycles\n", base.getDepth() + 1);
+
+			return base.getCounterExample();
+
+		}
+
+		if (proven)
+			System.out.printf("Assertion proven by %d-induction.\n", k);
+		else
+			System.out.printf("Assertion not proven by k-induction up to k = %d (no counter-examples found).\n",
+					maxK);
+
+		return null;
+
+	}
+
+	public boolean isProven() {
+
+		// true if the last call to prove found a proof
+
+		return proven;
+
+	}
+
+	private int addStepFrame() throws Exception {
+
+		// adds a frame to the induction step and returns the literal of its
+		// assertions
+
+		int frame = step.getFrameCount();
+
+		int[] nets = step.addFrame();
+
+		for (int i : invariants)
+			solver.addClause(ts.resetBits[i] ? nets[i] : SatSolver.neg(nets[i]));
+
+		int distance = Integer.MAX_VALUE;
+
+		solver.addClause(step.checkProperties(frame, ts.assumptions, ts.assumptionDelays, distance));
+
+		for (int j = 0; j < frame; j++) {
+
+			int[] other = step.getFrame(j);
+
+			int[] diff = new int[ts.stateBitCount];
+
+			for (int i = 0; i < ts.stateBitCount; i++)
+				diff[i] = step.xorOf(nets[i], other[i]);
+
+			solver.addClause(diff);
+
+		}
+
+		return step.checkProperties(frame, ts.assertions, ts.assertionDelays, distance);
+
+	}
+
+	private void findInvariants() throws Exception {
+
+		// one transition from an unconstrained state, with the assumptions
+		// that apply at all distances from reset (no delay)
+
+		TransitionUnroller u = new TransitionUnroller(ts, false);
+
+		SatSolver s = u.getSolver();
+
+		int[] current = u.addFrame();
+
+		int[] next = u.addFrame();
+
+		s.addClause(u.checkProperties(0, ts.assumptions, ts.assumptionDelays, 0));
+
+		invariants = new ArrayList<Integer>();
+
+		for (int i = 0; i < ts.stateBitCount; i++)
+			invariants.add(i);
+
+		while (!invariants.isEmpty()) {
+
+			// look for a transition from a state that satisfies all
+			// candidates to one that violates at least one
+
+			int n = invariants.size();
+
+			int[] assumptions = new int[n + 1];
+
+			int[] violated = new int[n + 1];
+
+			int act = SatSolver.lit(s.newVar(), false);
+
+			for (int j = 0; j < n; j++) {
+
+				int i = invariants.get(j);
+
+				assumptions[j] = ts.resetBits[i] ? current[i] : SatSolver.neg(current[i]);
+
+				violated[j] = ts.resetBits[i] ? SatSolver.neg(next[i]) : next[i];
+
+			}
+
+			assumptions[n] = act;
+
+			violated[n] = SatSolver.neg(act);
+
+			s.addClause(violated);
+
+			if (!s.solve(assumptions))
+				break;
+
+			s.addClause(SatSolver.neg(act));
+
+			ArrayList<Integer> remaining = new ArrayList<Integer>();
+
+			for (int j = 0; j < n; j++)
+				if (!s.getModelValue(violated[j]))
+					remaining.add(invariants.get(j));
+
+			invariants = remaining;
+
+		}
+
+	}
+
+}
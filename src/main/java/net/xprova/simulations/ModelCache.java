@@ -0,0 +1,215 @@
+package net.xprova.simulations;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.xprova.netlistgraph.NetlistGraph;
+import net.xprova.netlistgraph.Vertex;
+import net.xprova.propertylanguage.Property;
+
+public class ModelCache {
+
+	// Content-addressed on-disk cache of compiled models.
+	//
+	// Each entry is a directory in CACHE_DIR named after a SHA1 key of the
+	// model inputs: a canonical description of the netlist (after flip-flop
+	// expansion), the assumptions and assertions, the code template and the
+	// command used to build the model. The classes of code generation and
+	// its netlist optimization and symmetry passes are part of the key so
+	// that entries are invalidated when any of them changes.
+	//
+	// Entries are built in a staging directory and renamed into place once
+	// complete, so a partially built entry is never used.
+
+	public static final String CACHE_DIR = ".xprova.cache";
+
+	// classes of the passes that shape generated models (a change to any of
+	// them invalidates all entries)
+
+	private static final Class<?>[] CODEGEN_CLASSES = { CodeGenerator.class, NetlistOptimizer.class,
+			SymmetryFinder.class, TransitionSystem.class };
+
+	public static String getKey(NetlistGraph graph, List<Property> assumptions, List<Property> assertions,
+			String templateCode, String buildCmd) throws Exception {
+
+		MessageDigest md = MessageDigest.getInstance("SHA1");
+
+		update(md, "netlist");
+
+		for (String s : getCanonicalNetlist(graph))
+			update(md, s);
+
+		update(md, "assumptions");
+
+		for (Property p : assumptions)
+			update(md, getCanonicalProperty(p));
+
+		update(md, "assertions");
+
+		for (Property p : assertions)
+			update(md, getCanonicalProperty(p));
+
+		update(md, "template");
+
+		update(md, templateCode);
+
+		update(md, "build");
+
+		update(md, buildCmd);
+
+		for (Class<?> c : CODEGEN_CLASSES) {
+
+			InputStream genClass = c.getResourceAsStream(c.getSimpleName() + ".class");
+
+			if (genClass == null)
+				continue;
+
+			byte[] dataBytes = new byte[1024];
+
+			int nread = 0;
+
+			while ((nread = genClass.read(dataBytes)) != -1)
+				md.update(dataBytes, 0, nread);
+
+			genClass.close();
+
+		}
+
+		byte[] mdbytes = md.digest();
+
+		StringBuffer sb = new StringBuffer("");
+
+		for (int i = 0; i < mdbytes.length; i++)
+			sb.append(Integer.toString((mdbytes[i] & 0xff) + 0x100, 16).substring(1));
+
+		return sb.toString();
+
+	}
+
+	public static File getEntry(String key) {
+
+		// returns the directory of a complete cache entry or null
+
+		File dir = new File(CACHE_DIR, key);
+
+		return dir.isDirectory() ? dir : null;
+
+	}
+
+	public static File getStagingDir(String key) throws Exception {
+
+		// returns an empty directory in which the entry `key` is built
+
+		File dir = new File(CACHE_DIR, key + ".tmp");
+
+		deleteDir(dir);
+
+		if (!dir.mkdirs())
+			throw new Exception("could not create model cache directory " + dir);
+
+		return dir;
+
+	}
+
+	public static File commit(String key, File stagingDir) throws Exception {
+
+		// moves a complete staging directory into place and returns the entry
+
+		File dir = new File(CACHE_DIR, key);
+
+		if (dir.isDirectory()) {
+
+			// built concurrently by another process
+
+			deleteDir(stagingDir);
+
+			return dir;
+
+		}
+
+		Files.move(stagingDir.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		return dir;
+
+	}
+
+	private static ArrayList<String> getCanonicalNetlist(NetlistGraph graph) {
+
+		// one line per vertex, independent of vertex iteration order
+
+		ArrayList<String> result = new ArrayList<String>();
+
+		for (Vertex n : graph.getNets())
+			result.add(String.format("net %s %s %s", n.name, n.subtype, n.tag));
+
+		for (Vertex m : graph.getModules()) {
+
+			ArrayList<String> pins = new ArrayList<String>();
+
+			for (Vertex s : graph.getSources(m))
+				pins.add(String.format("%s<%s", graph.getPinName(s, m), s.name));
+
+			for (Vertex d : graph.getDestinations(m))
+				pins.add(String.format("%s>%s", graph.getPinName(m, d), d.name));
+
+			Collections.sort(pins);
+
+			result.add(String.format("mod %s %s %s %s", m.name, m.subtype, m.tag, pins));
+
+		}
+
+		Collections.sort(result);
+
+		return result;
+
+	}
+
+	private static String getCanonicalProperty(Property p) {
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(p.name).append('@').append(p.delay);
+
+		if (p.children != null && !p.children.isEmpty()) {
+
+			sb.append('(');
+
+			for (Property c : p.children)
+				sb.append(getCanonicalProperty(c)).append(',');
+
+			sb.append(')');
+
+		}
+
+		return sb.toString();
+
+	}
+
+	private static void update(MessageDigest md, String s) {
+
+		md.update(s.getBytes(StandardCharsets.UTF_8));
+
+		md.update((byte) '\n');
+
+	}
+
+	private static void deleteDir(File dir) {
+
+		File[] files = dir.listFiles();
+
+		if (files != null)
+			for (File f : files)
+				deleteDir(f);
+
+		dir.delete();
+
+	}
+
+}
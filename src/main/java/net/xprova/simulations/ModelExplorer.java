@@ -0,0 +1,256 @@
+package net.xprova.simulations;
+
+import java.util.ArrayList;
+import java.util.Stack;
+
+public class ModelExplorer {
+
+	// Breadth-first state space exploration of a TransitionSystem using a
+	// CompiledModel for next-state and property evaluation. The search
+	// follows the same scheme as template1.j (a direct state LUT storing the
+	// parent state and input vector of each discovered state).
+
+	public static final int L = 0;
+	public static final int H = -1;
+
+	private final TransitionSystem ts;
+
+	private final CompiledModel model;
+
+	public ModelExplorer(TransitionSystem ts, CompiledModel model) {
+
+		this.ts = ts;
+
+		this.model = model;
+
+	}
+
+	public int[] exploreSpace() throws Exception {
+
+		// returns the input vectors of a counter-example (one per cycle) or
+		// null if all assertions hold
+
+		int stateBitCount = ts.stateBitCount;
+
+		int inputBitCount = ts.inputBitCount;
+
+		final int DMASK = 1 << 31;
+
+		if (stateBitCount > 29)
+			throw new Exception(String.format("Memory requirements exceed 4 GB (state bits = %d)", stateBitCount));
+
+		if (inputBitCount > 31)
+			throw new Exception("Number of input bits exceeds 31");
+
+		final int STATE_BUF_SIZE = 1 << stateBitCount;
+
+		int initial = (int) ts.resetState;
+
+		int[] nets = new int[ts.getNetCount()];
+
+		int[] parentState = new int[STATE_BUF_SIZE];
+
+		int[] inputVector = new int[STATE_BUF_SIZE];
+
+		int[] toVisitArr = { initial };
+
+		int toVisitArrOccupied = 1;
+
+		int[] toVisitNextArr = new int[16];
+
+		int distance = 0;
+
+		int state = initial;
+
+		int in = 0;
+
+		int statesDiscovered = 0;
+
+		int statesVisited = 0;
+
+		boolean counterExampleFound = false;
+
+		parentState[initial] = initial | DMASK;
+
+		System.out.println("Starting search ...");
+
+		long startTime = System.nanoTime();
+
+		search_loop: while (toVisitArrOccupied > 0) {
+
+			int toVisitNextArrOccupied = 0;
+
+			for (int i1 = 0; i1 < toVisitArrOccupied; i1++) {
+
+				state = toVisitArr[i1];
+
+				statesVisited++;
+
+				for (int i = 0; i < stateBitCount; i++)
+					nets[i] = -(state >> i & 1);
+
+				int inputPermutes = 1 << inputBitCount;
+
+				for (in = 0; in < inputPermutes; in++) {
+
+					for (int i = 0; i < inputBitCount; i++)
+						nets[stateBitCount + i] = -(in >> i & 1);
+
+					model.evaluate(nets);
+
+					if (!checkProperties(nets, ts.assumptions, ts.assumptionDelays, distance))
+						continue;
+
+					if (!checkProperties(nets, ts.assertions, ts.assertionDelays, distance)) {
+
+						counterExampleFound = true;
+
+						break search_loop;
+
+					}
+
+					int nxState = 0;
+
+					for (int i = 0; i < stateBitCount; i++)
+						nxState |= nets[ts.nextState[i]] & (1 << i);
+
+					if ((parentState[nxState] & DMASK) == 0) {
+
+						statesDiscovered++;
+
+						if (toVisitNextArrOccupied == toVisitNextArr.length) {
+
+							int[] tmp = new int[toVisitNextArr.length * 2];
+
+							System.arraycopy(toVisitNextArr, 0, tmp, 0, toVisitNextArrOccupied);
+
+							toVisitNextArr = tmp;
+
+						}
+
+						toVisitNextArr[toVisitNextArrOccupied++] = nxState;
+
+						parentState[nxState] = state | DMASK;
+
+						inputVector[nxState] = in;
+
+					}
+
+				}
+
+			}
+
+			int[] tmp = toVisitArr;
+
+			toVisitArr = toVisitNextArr;
+
+			toVisitNextArr = tmp;
+
+			toVisitArrOccupied = toVisitNextArrOccupied;
+
+			distance++;
+
+		}
+
+		double searchTime = (System.nanoTime() - startTime) / 1e9;
+
+		System.out.printf("Completed search in %f seconds\n", searchTime);
+
+		System.out.printf("State bits                     : %d\n", stateBitCount);
+
+		System.out.printf("Input bits                     : %d\n", inputBitCount);
+
+		System.out.printf("States visited                 : %d\n", statesVisited);
+
+		System.out.printf("States discovered              : %d\n", statesDiscovered);
+
+		if (!counterExampleFound) {
+
+			System.out.println("Assertion proven, no counter-examples were found.");
+
+			return null;
+
+		}
+
+		System.out.printf("Counter-example found in %d cycles\n", distance);
+
+		Stack<Integer> rList = new Stack<Integer>();
+
+		rList.push(in);
+
+		for (int j = 0; j < distance; j++) {
+
+			rList.push(inputVector[state]);
+
+			state = parentState[state] & ~DMASK;
+
+		}
+
+		int[] result = new int[distance + 1];
+
+		for (int j = 0; j < distance + 1; j++)
+			result[j] = rList.pop();
+
+		return result;
+
+	}
+
+	public Waveform simulate(int[] inputs) throws Exception {
+
+		// simulates the model from its reset state using the input vectors in
+		// `inputs` and returns the waveforms of all nets
+
+		int cycles = inputs.length;
+
+		int netCount = ts.getNetCount();
+
+		int[] nets = new int[netCount];
+
+		int[][] waveforms = new int[netCount][cycles];
+
+		long state = ts.resetState;
+
+		for (int j = 0; j < cycles; j++) {
+
+			for (int i = 0; i < ts.stateBitCount; i++)
+				nets[i] = -(int) (state >> i & 1);
+
+			for (int i = 0; i < ts.inputBitCount; i++)
+				nets[ts.stateBitCount + i] = -(inputs[j] >> i & 1);
+
+			model.evaluate(nets);
+
+			for (int i = 0; i < netCount; i++)
+				waveforms[i][j] = nets[i];
+
+			state = 0;
+
+			for (int i = 0; i < ts.stateBitCount; i++)
+				state |= (long) (nets[ts.nextState[i]] & 1) << i;
+
+		}
+
+		ArrayList<int[]> data = new ArrayList<int[]>();
+
+		for (int[] w : waveforms)
+			data.add(w);
+
+		return new Waveform(ts.getSignalNames(), data);
+
+	}
+
+	private static boolean checkProperties(int[] nets, int[] props, int[] delays, int distance) {
+
+		// properties are ignored until the search is at least as deep as
+		// their maximum delay
+
+		int result = H;
+
+		for (int i = 0; i < props.length; i++)
+			result &= nets[props[i]] | (distance < delays[i] ? H : L);
+
+		return result == H;
+
+	}
+
+}
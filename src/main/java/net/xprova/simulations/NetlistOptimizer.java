@@ -0,0 +1,707 @@
+package net.xprova.simulations;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.xprova.netlistgraph.NetlistGraph;
+import net.xprova.netlistgraph.Vertex;
+import net.xprova.verilogparser.VerilogParser;
+
+public class NetlistOptimizer {
+
+	// Optimization pass over flattened netlists ahead of code generation:
+	//
+	// 1. constant propagation: boolean gates with TIE0/TIE1 inputs are
+	// simplified or replaced by TIE0/TIE1 drivers
+	//
+	// 2. buffer collapsing: BUF and continuous assignment modules (and
+	// double inversions) are removed and their outputs replaced by their
+	// inputs
+	//
+	// 3. structural hashing: modules of the same type with the same inputs
+	// are merged (inputs of commutative gates are compared as sets)
+	//
+	// 4. dead logic removal: modules whose outputs are not used are removed
+	//
+	// The steps are repeated until the netlist no longer changes. Inputs,
+	// outputs, flip-flops and their outputs, nets connected to flip-flop pins
+	// other than D, nets starting with `!` and nets passed in `keep` (e.g.
+	// property nets) are never removed.
+	//
+	// mergeEquivalentFlops is a separate register correspondence pass that
+	// replaces flip-flops by equivalent ones.
+
+	private static final String ignorePrefix = "!";
+
+	private static final List<String> commGates = Arrays.asList("AND", "NAND", "OR", "NOR", "XOR");
+
+	private static final List<String> idemGates = Arrays.asList("AND", "NAND", "OR", "NOR");
+
+	public static int optimize(NetlistGraph graph, Set<Vertex> keep) throws Exception {
+
+		// returns the number of removed modules
+
+		int modules = graph.getModules().size();
+
+		HashSet<Vertex> protectedNets = getProtectedNets(graph, keep);
+
+		boolean changed = true;
+
+		while (changed) {
+
+			changed = propagateConstants(graph);
+
+			changed |= collapseBuffers(graph, protectedNets);
+
+			changed |= hashModules(graph, protectedNets);
+
+			changed |= removeDeadModules(graph, protectedNets);
+
+		}
+
+		return modules - graph.getModules().size();
+
+	}
+
+	public static int mergeEquivalentFlops(NetlistGraph graph) {
+
+		// Register correspondence: flip-flops are partitioned into classes
+		// of candidate equivalent flops, starting from classes of flops with
+		// the same reset value and clock. Classes are then refined by the
+		// structure of the flops' next-state functions, where flip-flop
+		// outputs are identified by their classes, until the partition is
+		// stable. Flops in the same class have the same reset value and
+		// next-state function given that all classes hold in the current
+		// state, so by induction they hold in all reachable states.
+		//
+		// Each flop is replaced by a buffer driven by the first flop of its
+		// class (removed when buffers are collapsed). Design flops come
+		// before property flops (named `*...`) so that state bits keep
+		// design names. Returns the number of replaced flops.
+
+		ArrayList<Vertex> flops = new ArrayList<Vertex>();
+
+		ArrayList<Vertex> propertyFlops = new ArrayList<Vertex>();
+
+		for (Vertex ff : graph.getModulesByType("DFF"))
+			(ff.name.startsWith("*") ? propertyFlops : flops).add(ff);
+
+		Collections.sort(flops);
+
+		Collections.sort(propertyFlops);
+
+		flops.addAll(propertyFlops);
+
+		HashSet<Vertex> ioNets = graph.getIONets();
+
+		HashMap<Vertex, Integer> flopClass = new HashMap<Vertex, Integer>();
+
+		HashMap<String, Integer> classTable = new HashMap<String, Integer>();
+
+		for (Vertex ff : flops) {
+
+			Vertex rsNet = graph.getNet(ff, "RS");
+			Vertex stNet = graph.getNet(ff, "ST");
+			Vertex ckNet = graph.getNet(ff, "CK");
+
+			boolean isReset = ioNets.contains(rsNet) && !ioNets.contains(stNet);
+
+			boolean isSet = !ioNets.contains(rsNet) && ioNets.contains(stNet);
+
+			String key;
+
+			if (graph.getNet(ff, "D") == null || isReset == isSet)
+				key = "ff " + ff.name; // unknown reset value, never merged
+			else
+				key = String.format("%d %s", isSet ? 1 : 0, ckNet);
+
+			flopClass.put(ff, intern(classTable, key));
+
+		}
+
+		int classCount = classTable.size();
+
+		while (true) {
+
+			HashMap<Vertex, Integer> netIds = new HashMap<Vertex, Integer>();
+
+			HashMap<String, Integer> netTable = new HashMap<String, Integer>();
+
+			HashMap<Vertex, Integer> nextClass = new HashMap<Vertex, Integer>();
+
+			HashMap<String, Integer> nextTable = new HashMap<String, Integer>();
+
+			for (Vertex ff : flops) {
+
+				Vertex d = graph.getNet(ff, "D");
+
+				int dId = d == null ? -1 : getNetId(graph, d, flopClass, netIds, netTable);
+
+				nextClass.put(ff, intern(nextTable, flopClass.get(ff) + " " + dId));
+
+			}
+
+			flopClass = nextClass;
+
+			if (nextTable.size() == classCount)
+				break;
+
+			classCount = nextTable.size();
+
+		}
+
+		// replace flops
+
+		HashMap<Integer, Vertex> representatives = new HashMap<Integer, Vertex>();
+
+		int merged = 0;
+
+		for (Vertex ff : flops) {
+
+			Integer c = flopClass.get(ff);
+
+			Vertex rep = representatives.get(c);
+
+			if (rep == null) {
+
+				representatives.put(c, ff);
+
+				continue;
+
+			}
+
+			makeUnary(graph, ff, graph.getNet(rep, "Q"), "BUF");
+
+			merged++;
+
+		}
+
+		return merged;
+
+	}
+
+	private static int intern(HashMap<String, Integer> table, String key) {
+
+		Integer id = table.get(key);
+
+		if (id == null) {
+
+			id = table.size();
+
+			table.put(key, id);
+
+		}
+
+		return id;
+
+	}
+
+	private static int getNetId(NetlistGraph graph, Vertex net, HashMap<Vertex, Integer> flopClass,
+			HashMap<Vertex, Integer> netIds, HashMap<String, Integer> netTable) {
+
+		// returns an id of the function of `net` in terms of inputs and
+		// flip-flop classes, nets with the same id are structurally
+		// equivalent (iterative to support deep logic)
+
+		ArrayDeque<Vertex> stack = new ArrayDeque<Vertex>();
+
+		HashSet<Vertex> expanded = new HashSet<Vertex>();
+
+		stack.push(net);
+
+		while (!stack.isEmpty()) {
+
+			Vertex n = stack.peek();
+
+			if (netIds.containsKey(n)) {
+
+				stack.pop();
+
+				continue;
+
+			}
+
+			Vertex driver = graph.getSourceModule(n);
+
+			String key;
+
+			if (driver == null) {
+
+				key = "net " + n.name;
+
+			} else if ("DFF".equals(driver.subtype)) {
+
+				key = "ff " + flopClass.get(driver);
+
+			} else {
+
+				if (expanded.add(n)) {
+
+					for (Vertex s : graph.getSources(driver))
+						if (!netIds.containsKey(s) && !expanded.contains(s))
+							stack.push(s);
+
+					continue;
+
+				}
+
+				// inputs without ids are part of a combinational loop
+
+				ArrayList<String> inputs = new ArrayList<String>();
+
+				boolean isLoop = false;
+
+				boolean isCommutative = commGates.contains(driver.subtype);
+
+				for (Vertex s : graph.getSources(driver)) {
+
+					String pin = isCommutative ? "" : graph.getPinName(s, driver) + "=";
+
+					inputs.add(pin + netIds.get(s));
+
+					isLoop |= !netIds.containsKey(s);
+
+				}
+
+				Collections.sort(inputs);
+
+				String tag = "CONST".equals(driver.subtype) ? driver.tag : "";
+
+				if (isLoop)
+					key = "net " + n.name;
+				else
+					key = String.format("%s %s %s %s", driver.subtype, tag, graph.getPinName(driver, n), inputs);
+
+			}
+
+			netIds.put(n, intern(netTable, key));
+
+			stack.pop();
+
+		}
+
+		return netIds.get(net);
+
+	}
+
+	private static HashSet<Vertex> getProtectedNets(NetlistGraph graph, Set<Vertex> keep) {
+
+		HashSet<Vertex> result = new HashSet<Vertex>(keep);
+
+		result.addAll(graph.getIONets());
+
+		for (Vertex n : graph.getNets())
+			if (n.name.startsWith(ignorePrefix))
+				result.add(n);
+
+		for (Vertex ff : graph.getModulesByType("DFF")) {
+
+			result.addAll(graph.getDestinations(ff));
+
+			for (Vertex s : graph.getSources(ff))
+				if (!"D".equals(graph.getPinName(s, ff)))
+					result.add(s);
+
+		}
+
+		return result;
+
+	}
+
+	private static ArrayList<Vertex> getSortedModules(NetlistGraph graph) {
+
+		// modules are visited in name order so that results do not depend on
+		// hash set iteration order
+
+		ArrayList<Vertex> result = new ArrayList<Vertex>(graph.getModules());
+
+		Collections.sort(result);
+
+		return result;
+
+	}
+
+	private static int getConstant(NetlistGraph graph, Vertex net) {
+
+		// returns 0 or 1 for nets driven by TIE0 or TIE1, and -1 otherwise
+
+		Vertex driver = graph.getSourceModule(net);
+
+		if (driver == null)
+			return -1;
+
+		if ("TIE0".equals(driver.subtype))
+			return 0;
+
+		if ("TIE1".equals(driver.subtype))
+			return 1;
+
+		return -1;
+
+	}
+
+	private static Vertex getOutput(NetlistGraph graph, Vertex module) {
+
+		// returns the output net of a single-output module or null
+
+		HashSet<Vertex> outputs = graph.getDestinations(module);
+
+		return outputs.size() == 1 ? outputs.iterator().next() : null;
+
+	}
+
+	private static void removeInputs(NetlistGraph graph, Vertex module) {
+
+		for (Vertex s : graph.getSources(module))
+			graph.removeConnection(s, module);
+
+	}
+
+	private static void makeTie(NetlistGraph graph, Vertex module, Vertex y, int value) {
+
+		removeInputs(graph, module);
+
+		module.subtype = value == 1 ? "TIE1" : "TIE0";
+
+		graph.removeConnection(module, y);
+
+		graph.addConnection(module, y, "y");
+
+	}
+
+	private static void makeUnary(NetlistGraph graph, Vertex module, Vertex input, String type) {
+
+		removeInputs(graph, module);
+
+		module.subtype = type;
+
+		graph.addConnection(input, module, "a");
+
+	}
+
+	private static boolean propagateConstants(NetlistGraph graph) {
+
+		boolean changed = false;
+
+		for (Vertex m : getSortedModules(graph)) {
+
+			Vertex y = getOutput(graph, m);
+
+			if (y == null)
+				continue;
+
+			String type = m.subtype;
+
+			ArrayList<Vertex> inputs = new ArrayList<Vertex>(graph.getSources(m));
+
+			Collections.sort(inputs);
+
+			if ("MUX2".equals(type)) {
+
+				// y = s ? b : a
+
+				Vertex sel = graph.getNet(m, "s");
+
+				int s = sel == null ? -1 : getConstant(graph, sel);
+
+				if (s != -1) {
+
+					makeUnary(graph, m, graph.getNet(m, s == 1 ? "b" : "a"), "BUF");
+
+					changed = true;
+
+				}
+
+			} else if ("NOT".equals(type) || "BUF".equals(type) || VerilogParser.CASSIGN_MOD.equals(type)) {
+
+				int c = inputs.size() == 1 ? getConstant(graph, inputs.get(0)) : -1;
+
+				if (c != -1) {
+
+					makeTie(graph, m, y, "NOT".equals(type) ? 1 - c : c);
+
+					changed = true;
+
+				}
+
+			} else if (commGates.contains(type)) {
+
+				boolean isXor = "XOR".equals(type);
+
+				boolean isInverting = "NAND".equals(type) || "NOR".equals(type);
+
+				int controlling = "AND".equals(type) || "NAND".equals(type) ? 0 : 1;
+
+				ArrayList<Vertex> constInputs = new ArrayList<Vertex>();
+
+				ArrayList<Vertex> varInputs = new ArrayList<Vertex>();
+
+				boolean isControlled = false;
+
+				int parity = 0;
+
+				for (Vertex i : inputs) {
+
+					int c = getConstant(graph, i);
+
+					if (c == -1) {
+
+						varInputs.add(i);
+
+					} else {
+
+						constInputs.add(i);
+
+						parity ^= c;
+
+						isControlled |= c == controlling;
+
+					}
+
+				}
+
+				// no XNOR gate, an inverting XOR keeps a single constant 1
+				// input
+
+				boolean isReduced = varInputs.size() < 2 || !isXor || parity == 0 || constInputs.size() > 1;
+
+				if (constInputs.isEmpty() || !isReduced)
+					continue;
+
+				changed = true;
+
+				if (!isXor && isControlled) {
+
+					makeTie(graph, m, y, isInverting ? 1 - controlling : controlling);
+
+				} else if (varInputs.isEmpty()) {
+
+					int value = isXor ? parity : 1 - controlling;
+
+					makeTie(graph, m, y, isInverting ? 1 - value : value);
+
+				} else if (varInputs.size() == 1) {
+
+					boolean inverts = isXor ? parity == 1 : isInverting;
+
+					makeUnary(graph, m, varInputs.get(0), inverts ? "NOT" : "BUF");
+
+				} else if (isXor && parity == 1) {
+
+					Vertex one = null;
+
+					for (Vertex i : constInputs) {
+
+						if (one == null && getConstant(graph, i) == 1)
+							one = i;
+						else
+							graph.removeConnection(i, m);
+
+					}
+
+				} else {
+
+					for (Vertex i : constInputs)
+						graph.removeConnection(i, m);
+
+				}
+
+			}
+
+		}
+
+		return changed;
+
+	}
+
+	private static boolean replaceNet(NetlistGraph graph, Vertex y, Vertex a) {
+
+		// connects the destinations of `y` to `a` and removes `y` and its
+		// driver, unless a destination already has `a` as a non-redundant
+		// input (returns false in that case)
+
+		HashSet<Vertex> destinations = graph.getDestinations(y);
+
+		for (Vertex d : destinations)
+			if (graph.getSources(d).contains(a) && !idemGates.contains(d.subtype))
+				return false;
+
+		for (Vertex d : destinations) {
+
+			String pin = graph.getPinName(y, d);
+
+			graph.removeConnection(y, d);
+
+			if (!graph.getSources(d).contains(a))
+				graph.addConnection(a, d, pin);
+
+		}
+
+		Vertex driver = graph.getSourceModule(y);
+
+		graph.removeVertex(y);
+
+		if (driver != null)
+			graph.removeVertex(driver);
+
+		return true;
+
+	}
+
+	private static boolean collapseBuffers(NetlistGraph graph, HashSet<Vertex> protectedNets) {
+
+		boolean changed = false;
+
+		for (Vertex m : getSortedModules(graph)) {
+
+			if (graph.getVertex(m.name) == null)
+				continue; // removed in this pass
+
+			Vertex y = getOutput(graph, m);
+
+			HashSet<Vertex> inputs = graph.getSources(m);
+
+			if (y == null || inputs.size() != 1)
+				continue;
+
+			Vertex a = inputs.iterator().next();
+
+			if ("NOT".equals(m.subtype)) {
+
+				// y = ~~b becomes y = b
+
+				Vertex inner = graph.getSourceModule(a);
+
+				if (inner != null && "NOT".equals(inner.subtype) && graph.getSources(inner).size() == 1) {
+
+					makeUnary(graph, m, graph.getSources(inner).iterator().next(), "BUF");
+
+					changed = true;
+
+				}
+
+			} else if ("BUF".equals(m.subtype) || VerilogParser.CASSIGN_MOD.equals(m.subtype)) {
+
+				if (!protectedNets.contains(y))
+					changed |= replaceNet(graph, y, a);
+
+			}
+
+		}
+
+		return changed;
+
+	}
+
+	private static String getModuleKey(NetlistGraph graph, Vertex m) {
+
+		// returns a key identifying the function of module m in terms of its
+		// inputs, or null if m cannot be merged
+
+		if ("DFF".equals(m.subtype) || getOutput(graph, m) == null)
+			return null;
+
+		ArrayList<String> inputs = new ArrayList<String>();
+
+		boolean isCommutative = commGates.contains(m.subtype);
+
+		for (Vertex s : graph.getSources(m))
+			inputs.add(isCommutative ? s.name : graph.getPinName(s, m) + "=" + s.name);
+
+		Collections.sort(inputs);
+
+		String tag = "CONST".equals(m.subtype) ? m.tag : "";
+
+		return m.subtype + "|" + tag + "|" + String.join(",", inputs);
+
+	}
+
+	private static boolean hashModules(NetlistGraph graph, HashSet<Vertex> protectedNets) {
+
+		boolean changed = false;
+
+		HashMap<String, Vertex> table = new HashMap<String, Vertex>();
+
+		for (Vertex m : getSortedModules(graph)) {
+
+			String key = getModuleKey(graph, m);
+
+			if (key == null)
+				continue;
+
+			Vertex existing = table.get(key);
+
+			if (existing == null) {
+
+				table.put(key, m);
+
+				continue;
+
+			}
+
+			Vertex y = getOutput(graph, m);
+
+			Vertex y1 = getOutput(graph, existing);
+
+			if (!protectedNets.contains(y)) {
+
+				changed |= replaceNet(graph, y, y1);
+
+			} else if (!protectedNets.contains(y1)) {
+
+				if (replaceNet(graph, y1, y)) {
+
+					table.put(key, m);
+
+					changed = true;
+
+				}
+
+			}
+
+		}
+
+		return changed;
+
+	}
+
+	private static boolean removeDeadModules(NetlistGraph graph, HashSet<Vertex> protectedNets) {
+
+		boolean changed = false;
+
+		for (Vertex m : getSortedModules(graph)) {
+
+			if ("DFF".equals(m.subtype))
+				continue;
+
+			HashSet<Vertex> outputs = graph.getDestinations(m);
+
+			boolean isDead = true;
+
+			for (Vertex y : outputs)
+				isDead &= !protectedNets.contains(y) && graph.getDestinations(y).isEmpty();
+
+			if (isDead) {
+
+				for (Vertex y : outputs)
+					graph.removeVertex(y);
+
+				graph.removeVertex(m);
+
+				changed = true;
+
+			}
+
+		}
+
+		return changed;
+
+	}
+
+}
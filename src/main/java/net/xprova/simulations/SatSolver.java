@@ -0,0 +1,896 @@
+package net.xprova.simulations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+public class SatSolver {
+
+	// A CDCL SAT solver: two watched literals, first-UIP clause learning
+	// with local minimization, VSIDS branching with phase saving, Luby
+	// restarts and deletion of learnt clauses with high LBD (number of
+	// distinct decision levels).
+	//
+	// The solver is incremental: clauses can be added between calls to
+	// `solve`, which accepts assumption literals that hold for that call
+	// only.
+	//
+	// Variables are numbered from 0. The literals of variable v are 2 * v
+	// (positive) and 2 * v + 1 (negative).
+
+	private static class Clause {
+
+		int[] lits;
+
+		boolean deleted;
+
+		int lbd;
+
+		Clause(int[] lits) {
+
+			this.lits = lits;
+
+		}
+
+	}
+
+	private static class WatchList {
+
+		// clauses watching a literal, each with a blocker literal of the
+		// clause (when the blocker is true the clause is skipped without
+		// accessing it)
+
+		Clause[] items = new Clause[4];
+
+		int[] blockers = new int[4];
+
+		int size = 0;
+
+		void add(Clause c, int blocker) {
+
+			if (size == items.length) {
+
+				items = Arrays.copyOf(items, size * 2);
+
+				blockers = Arrays.copyOf(blockers, size * 2);
+
+			}
+
+			items[size] = c;
+
+			blockers[size++] = blocker;
+
+		}
+
+	}
+
+	private static final int RESTART_BASE = 100;
+
+	private static final double VAR_DECAY = 0.95;
+
+	private int varCount = 0;
+
+	private byte[] values = new byte[0]; // 1 (true), -1 (false) or 0
+
+	private int[] levels = new int[0];
+
+	private Clause[] reasons = new Clause[0];
+
+	private boolean[] phases = new boolean[0], seen = new boolean[0];
+
+	private double[] activity = new double[0];
+
+	private double varInc = 1;
+
+	private WatchList[] watchers = new WatchList[0];
+
+	private int[] trail = new int[0], trailLim = new int[0];
+
+	private int trailSize = 0, decisionLevel = 0, propagated = 0;
+
+	// decision heap (max-heap on activity)
+
+	private int[] heap = new int[0], heapIndex = new int[0];
+
+	private int heapSize = 0;
+
+	private ArrayList<Clause> learnts = new ArrayList<Clause>();
+
+	private int clauseCount = 0, maxLearnts = 2000;
+
+	private boolean ok = true;
+
+	private boolean[] model;
+
+	private long conflicts = 0, decisions = 0, propagations = 0;
+
+	public static int lit(int var, boolean negated) {
+
+		return 2 * var + (negated ? 1 : 0);
+
+	}
+
+	public static int neg(int lit) {
+
+		return lit ^ 1;
+
+	}
+
+	public int newVar() {
+
+		int v = varCount++;
+
+		if (v == values.length) {
+
+			int n = Math.max(16, v * 2);
+
+			values = Arrays.copyOf(values, n);
+			levels = Arrays.copyOf(levels, n);
+			reasons = Arrays.copyOf(reasons, n);
+			phases = Arrays.copyOf(phases, n);
+			seen = Arrays.copyOf(seen, n);
+			activity = Arrays.copyOf(activity, n);
+			trail = Arrays.copyOf(trail, n);
+			trailLim = Arrays.copyOf(trailLim, n);
+			heap = Arrays.copyOf(heap, n);
+			heapIndex = Arrays.copyOf(heapIndex, n);
+			watchers = Arrays.copyOf(watchers, 2 * n);
+
+		}
+
+		watchers[2 * v] = new WatchList();
+		watchers[2 * v + 1] = new WatchList();
+
+		heapIndex[v] = -1;
+
+		heapInsert(v);
+
+		return v;
+
+	}
+
+	public int getVarCount() {
+
+		return varCount;
+
+	}
+
+	public int getClauseCount() {
+
+		return clauseCount;
+
+	}
+
+	public long getConflicts() {
+
+		return conflicts;
+
+	}
+
+	public long getDecisions() {
+
+		return decisions;
+
+	}
+
+	public long getPropagations() {
+
+		return propagations;
+
+	}
+
+	public boolean addClause(int... lits) {
+
+		// adds a clause (between calls to solve), returns false if the
+		// clause set became unsatisfiable
+
+		if (!ok)
+			return false;
+
+		int[] c = lits.clone();
+
+		Arrays.sort(c);
+
+		int n = 0;
+
+		for (int i = 0; i < c.length; i++) {
+
+			int v = litValue(c[i]);
+
+			if (v == 1 || (i > 0 && c[i] == neg(c[i - 1]) && (c[i] & 1) == 1))
+				return true; // satisfied or tautology
+
+			if (v == -1 || (n > 0 && c[n - 1] == c[i]))
+				continue;
+
+			c[n++] = c[i];
+
+		}
+
+		if (n == 0) {
+
+			ok = false;
+
+			return false;
+
+		}
+
+		if (n == 1) {
+
+			enqueue(c[0], null);
+
+			ok = propagate() == null;
+
+			return ok;
+
+		}
+
+		Clause clause = new Clause(Arrays.copyOf(c, n));
+
+		attach(clause);
+
+		clauseCount++;
+
+		return true;
+
+	}
+
+	public boolean solve(int... assumptions) {
+
+		// returns true if the clauses and assumptions are satisfiable
+
+		model = null;
+
+		if (!ok)
+			return false;
+
+		int restarts = 0;
+
+		long restartLimit = RESTART_BASE * luby(restarts);
+
+		long conflictsSinceRestart = 0;
+
+		while (true) {
+
+			Clause confl = propagate();
+
+			if (confl != null) {
+
+				conflicts++;
+
+				conflictsSinceRestart++;
+
+				if (decisionLevel == 0) {
+
+					ok = false;
+
+					return false;
+
+				}
+
+				int[] learnt = analyze(confl);
+
+				cancelUntil(backjumpLevel(learnt));
+
+				if (learnt.length == 1) {
+
+					enqueue(learnt[0], null);
+
+				} else {
+
+					Clause c = new Clause(learnt);
+
+					c.lbd = getLbd(learnt);
+
+					attach(c);
+
+					learnts.add(c);
+
+					enqueue(learnt[0], c);
+
+				}
+
+				varInc /= VAR_DECAY;
+
+			} else {
+
+				if (conflictsSinceRestart >= restartLimit) {
+
+					cancelUntil(0);
+
+					restartLimit = RESTART_BASE * luby(++restarts);
+
+					conflictsSinceRestart = 0;
+
+					continue;
+
+				}
+
+				if (learnts.size() - trailSize >= maxLearnts)
+					reduceLearnts();
+
+				int next = -1;
+
+				while (decisionLevel < assumptions.length) {
+
+					int p = assumptions[decisionLevel];
+
+					int v = litValue(p);
+
+					if (v == 1) {
+
+						trailLim[decisionLevel++] = trailSize; // dummy level
+
+					} else if (v == -1) {
+
+						cancelUntil(0);
+
+						return false;
+
+					} else {
+
+						next = p;
+
+						break;
+
+					}
+
+				}
+
+				if (next == -1) {
+
+					int var = pickBranchVar();
+
+					if (var == -1) {
+
+						model = new boolean[varCount];
+
+						for (int i = 0; i < varCount; i++)
+							model[i] = values[i] == 1;
+
+						cancelUntil(0);
+
+						return true;
+
+					}
+
+					decisions++;
+
+					next = lit(var, !phases[var]);
+
+				}
+
+				trailLim[decisionLevel++] = trailSize;
+
+				enqueue(next, null);
+
+			}
+
+		}
+
+	}
+
+	public boolean getModelValue(int lit) {
+
+		// value of a literal in the model found by the last call to solve
+
+		return model[lit >> 1] ^ ((lit & 1) == 1);
+
+	}
+
+	private int litValue(int lit) {
+
+		int v = values[lit >> 1];
+
+		return (lit & 1) == 0 ? v : -v;
+
+	}
+
+	private void attach(Clause c) {
+
+		watchers[c.lits[0]].add(c, c.lits[1]);
+
+		watchers[c.lits[1]].add(c, c.lits[0]);
+
+	}
+
+	private void enqueue(int lit, Clause reason) {
+
+		int v = lit >> 1;
+
+		values[v] = (byte) ((lit & 1) == 0 ? 1 : -1);
+
+		levels[v] = decisionLevel;
+
+		reasons[v] = reason;
+
+		trail[trailSize++] = lit;
+
+	}
+
+	private Clause propagate() {
+
+		// returns a conflicting clause or null
+
+		while (propagated < trailSize) {
+
+			int falseLit = neg(trail[propagated++]);
+
+			WatchList ws = watchers[falseLit];
+
+			Clause[] items = ws.items;
+
+			int[] blockers = ws.blockers;
+
+			int n = ws.size, i = 0, j = 0;
+
+			propagations++;
+
+			while (i < n) {
+
+				Clause c = items[i];
+
+				int blocker = blockers[i++];
+
+				if (litValue(blocker) == 1) {
+
+					items[j] = c;
+
+					blockers[j++] = blocker;
+
+					continue;
+
+				}
+
+				if (c.deleted)
+					continue;
+
+				int[] ls = c.lits;
+
+				if (ls[0] == falseLit) {
+
+					ls[0] = ls[1];
+
+					ls[1] = falseLit;
+
+				}
+
+				int first = ls[0];
+
+				if (first != blocker && litValue(first) == 1) {
+
+					items[j] = c;
+
+					blockers[j++] = first;
+
+					continue;
+
+				}
+
+				boolean moved = false;
+
+				for (int k = 2; k < ls.length; k++) {
+
+					if (litValue(ls[k]) != -1) {
+
+						ls[1] = ls[k];
+
+						ls[k] = falseLit;
+
+						watchers[ls[1]].add(c, first);
+
+						moved = true;
+
+						break;
+
+					}
+
+				}
+
+				if (moved)
+					continue;
+
+				items[j] = c;
+
+				blockers[j++] = first;
+
+				if (litValue(first) == -1) {
+
+					while (i < n) {
+
+						items[j] = items[i];
+
+						blockers[j++] = blockers[i++];
+
+					}
+
+					ws.size = j;
+
+					propagated = trailSize;
+
+					return c;
+
+				}
+
+				enqueue(first, c);
+
+			}
+
+			ws.size = j;
+
+		}
+
+		return null;
+
+	}
+
+	private int[] analyze(Clause confl) {
+
+		// first-UIP learning, returns the learnt clause with the asserting
+		// literal first
+
+		ArrayList<Integer> learnt = new ArrayList<Integer>();
+
+		learnt.add(-1);
+
+		int pathCount = 0, p = -1, index = trailSize - 1;
+
+		do {
+
+			int[] ls = confl.lits;
+
+			for (int k = p == -1 ? 0 : 1; k < ls.length; k++) {
+
+				int q = ls[k], v = q >> 1;
+
+				if (!seen[v] && levels[v] > 0) {
+
+					bumpVar(v);
+
+					seen[v] = true;
+
+					if (levels[v] >= decisionLevel)
+						pathCount++;
+					else
+						learnt.add(q);
+
+				}
+
+			}
+
+			while (!seen[trail[index] >> 1])
+				index--;
+
+			p = trail[index--];
+
+			confl = reasons[p >> 1];
+
+			seen[p >> 1] = false;
+
+			pathCount--;
+
+		} while (pathCount > 0);
+
+		learnt.set(0, neg(p));
+
+		// remove literals implied by other literals of the clause
+
+		int n = 1;
+
+		int[] result = new int[learnt.size()];
+
+		result[0] = learnt.get(0);
+
+		for (int i = 1; i < learnt.size(); i++) {
+
+			int q = learnt.get(i);
+
+			Clause r = reasons[q >> 1];
+
+			boolean redundant = r != null;
+
+			if (r != null) {
+
+				for (int k = 1; k < r.lits.length && redundant; k++) {
+
+					int v = r.lits[k] >> 1;
+
+					redundant = seen[v] || levels[v] == 0;
+
+				}
+
+			}
+
+			if (!redundant)
+				result[n++] = q;
+
+		}
+
+		for (int i = 1; i < learnt.size(); i++)
+			seen[learnt.get(i) >> 1] = false;
+
+		result = Arrays.copyOf(result, n);
+
+		// second watch: literal with the highest level
+
+		for (int i = 2; i < n; i++) {
+
+			if (levels[result[i] >> 1] > levels[result[1] >> 1]) {
+
+				int t = result[1];
+
+				result[1] = result[i];
+
+				result[i] = t;
+
+			}
+
+		}
+
+		return result;
+
+	}
+
+	private int backjumpLevel(int[] learnt) {
+
+		return learnt.length == 1 ? 0 : levels[learnt[1] >> 1];
+
+	}
+
+	private int getLbd(int[] lits) {
+
+		HashSetInt levelSet = new HashSetInt();
+
+		for (int l : lits)
+			levelSet.add(levels[l >> 1]);
+
+		return levelSet.size;
+
+	}
+
+	private static class HashSetInt {
+
+		// small set of decision levels (used to compute LBD)
+
+		int[] items = new int[8];
+
+		int size = 0;
+
+		void add(int x) {
+
+			for (int i = 0; i < size; i++)
+				if (items[i] == x)
+					return;
+
+			if (size == items.length)
+				items = Arrays.copyOf(items, size * 2);
+
+			items[size++] = x;
+
+		}
+
+	}
+
+	private void cancelUntil(int level) {
+
+		if (decisionLevel <= level)
+			return;
+
+		for (int i = trailSize - 1; i >= trailLim[level]; i--) {
+
+			int v = trail[i] >> 1;
+
+			phases[v] = values[v] == 1;
+
+			values[v] = 0;
+
+			reasons[v] = null;
+
+			if (heapIndex[v] == -1)
+				heapInsert(v);
+
+		}
+
+		trailSize = trailLim[level];
+
+		propagated = trailSize;
+
+		decisionLevel = level;
+
+	}
+
+	private void reduceLearnts() {
+
+		// deletes half of the learnt clauses, keeping clauses with low LBD
+		// and clauses that are reasons of current assignments
+
+		Collections.sort(learnts, new Comparator<Clause>() {
+
+			@Override
+			public int compare(Clause a, Clause b) {
+
+				return Integer.compare(b.lbd, a.lbd);
+
+			}
+
+		});
+
+		ArrayList<Clause> kept = new ArrayList<Clause>();
+
+		int toDelete = learnts.size() / 2;
+
+		for (Clause c : learnts) {
+
+			boolean locked = reasons[c.lits[0] >> 1] == c && litValue(c.lits[0]) == 1;
+
+			if (toDelete > 0 && c.lbd > 2 && !locked) {
+
+				c.deleted = true;
+
+				toDelete--;
+
+			} else {
+
+				kept.add(c);
+
+			}
+
+		}
+
+		learnts = kept;
+
+		maxLearnts += maxLearnts / 10;
+
+	}
+
+	private static long luby(int i) {
+
+		// i-th element (from 0) of the Luby sequence 1 1 2 1 1 2 4 ...
+
+		int size = 1, seq = 0;
+
+		while (size < i + 1) {
+
+			seq++;
+
+			size = 2 * size + 1;
+
+		}
+
+		while (size - 1 != i) {
+
+			size = (size - 1) >> 1;
+
+			seq--;
+
+			i = i % size;
+
+		}
+
+		return 1L << seq;
+
+	}
+
+	// VSIDS
+
+	private void bumpVar(int v) {
+
+		if ((activity[v] += varInc) > 1e100) {
+
+			for (int i = 0; i < varCount; i++)
+				activity[i] *= 1e-100;
+
+			varInc *= 1e-100;
+
+		}
+
+		if (heapIndex[v] != -1)
+			heapUp(heapIndex[v]);
+
+	}
+
+	private int pickBranchVar() {
+
+		while (heapSize > 0) {
+
+			int v = heapRemoveMax();
+
+			if (values[v] == 0)
+				return v;
+
+		}
+
+		return -1;
+
+	}
+
+	private void heapInsert(int v) {
+
+		heap[heapSize] = v;
+
+		heapIndex[v] = heapSize;
+
+		heapUp(heapSize++);
+
+	}
+
+	private int heapRemoveMax() {
+
+		int v = heap[0];
+
+		heapIndex[v] = -1;
+
+		heapSize--;
+
+		if (heapSize > 0) {
+
+			heap[0] = heap[heapSize];
+
+			heapIndex[heap[0]] = 0;
+
+			heapDown(0);
+
+		}
+
+		return v;
+
+	}
+
+	private void heapUp(int i) {
+
+		int v = heap[i];
+
+		while (i > 0) {
+
+			int parent = (i - 1) >> 1;
+
+			if (activity[heap[parent]] >= activity[v])
+				break;
+
+			heap[i] = heap[parent];
+
+			heapIndex[heap[i]] = i;
+
+			i = parent;
+
+		}
+
+		heap[i] = v;
+
+		heapIndex[v] = i;
+
+	}
+
+	private void heapDown(int i) {
+
+		int v = heap[i];
+
+		while (true) {
+
+			int child = 2 * i + 1;
+
+			if (child >= heapSize)
+				break;
+
+			if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]])
+				child++;
+
+			if (activity[heap[child]] <= activity[v])
+				break;
+
+			heap[i] = heap[child];
+
+			heapIndex[heap[i]] = i;
+
+			i = child;
+
+		}
+
+		heap[i] = v;
+
+		heapIndex[v] = i;
+
+	}
+
+}
@@ -0,0 +1,585 @@
+package net.xprova.simulations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+
+public class SymmetryFinder {
+
+	// Finds symmetries of a TransitionSystem: permutations of its state and
+	// input bits that map the reset state, the next-state functions and the
+	// sets of properties onto themselves. States related by a symmetry have
+	// isomorphic futures, so a state space search only needs to visit one
+	// (canonical) state of each class.
+	//
+	// Each symmetry is a set of disjoint transpositions (swaps). Candidate
+	// pairs of state bits are found by color refinement (bits with the same
+	// reset value and next-state function shape, up to the colors of the
+	// bits they depend on) and extended to a full symmetry by matching
+	// their next-state functions gate by gate (partial matches that fail
+	// are combined with each other). The result is then verified
+	// by comparing structurally hashed functions, so a symmetry is only
+	// returned if it holds syntactically (this misses symmetries that need
+	// logic rewriting but never reports a false one).
+
+	public static class Symmetry {
+
+		// pairs of swapped state bits and input bits, as flat arrays of
+		// (a0, b0, a1, b1 ...)
+
+		public int[] stateSwaps;
+
+		public int[] inputSwaps;
+
+		public Symmetry(int[] stateSwaps, int[] inputSwaps) {
+
+			this.stateSwaps = stateSwaps;
+			this.inputSwaps = inputSwaps;
+
+		}
+
+		@Override
+		public String toString() {
+
+			return String.format("%s %s", Arrays.toString(stateSwaps), Arrays.toString(inputSwaps));
+
+		}
+
+	}
+
+	private static final HashSet<String> COMMUTATIVE = new HashSet<String>(
+			Arrays.asList("AND", "NAND", "OR", "NOR", "XOR", "XNOR"));
+
+	private static final HashSet<String> SUPPORTED = new HashSet<String>(
+			Arrays.asList("CONST", "BUF", "NOT", "X2H", "MUX2", "AND", "NAND", "OR", "NOR", "XOR", "XNOR"));
+
+	private static final int MAX_REFINEMENTS = 32;
+
+	private static final int MAX_ATTEMPTS = 1024;
+
+	private static final int MAX_PARTNERS = 4;
+
+	public static ArrayList<Symmetry> find(TransitionSystem ts) {
+
+		// returns generators of the symmetries found (an empty list if the
+		// model has word-level gates)
+
+		ArrayList<Symmetry> result = new ArrayList<Symmetry>();
+
+		int netCount = ts.getNetCount();
+
+		int leafCount = ts.stateBitCount + ts.inputBitCount;
+
+		TransitionSystem.Gate[] drivers = new TransitionSystem.Gate[netCount];
+
+		for (TransitionSystem.Gate g : ts.gates) {
+
+			if (!SUPPORTED.contains(g.type))
+				return result;
+
+			drivers[g.output] = g;
+
+		}
+
+		// structural hashes of all nets
+
+		int[] leafIds = new int[leafCount];
+
+		for (int i = 0; i < leafCount; i++)
+			leafIds[i] = i;
+
+		HashMap<String, Integer> table = new HashMap<String, Integer>();
+
+		int[] ids = hashNets(ts, leafIds, table);
+
+		int[] shapes = refineColors(ts);
+
+		// candidate pairs: state bits of the same color
+
+		HashMap<Integer, ArrayList<Integer>> classes = new HashMap<Integer, ArrayList<Integer>>();
+
+		for (int k = 0; k < ts.stateBitCount; k++) {
+
+			if (!classes.containsKey(shapes[k]))
+				classes.put(shapes[k], new ArrayList<Integer>());
+
+			classes.get(shapes[k]).add(k);
+
+		}
+
+		ArrayList<int[]> found = new ArrayList<int[]>();
+
+		ArrayList<int[]> partial = new ArrayList<int[]>();
+
+		int attempts = 0;
+
+		for (int k = 0; k < ts.stateBitCount; k++) {
+
+			ArrayList<Integer> members = classes.get(shapes[k]);
+
+			int pos = members.indexOf(k);
+
+			// pair each bit with the preceding bits of its class (adjacent
+			// first) until a symmetry found earlier swaps them
+
+			for (int p = pos - 1; p >= 0 && p >= pos - MAX_PARTNERS && attempts < MAX_ATTEMPTS; p--) {
+
+				int other = members.get(p);
+
+				boolean covered = false;
+
+				for (int[] sigma : found)
+					covered |= sigma[other] == k;
+
+				if (covered)
+					break;
+
+				attempts++;
+
+				int[] sigma = match(ts, drivers, shapes, other, k);
+
+				if (sigma == null)
+					continue;
+
+				if (verify(ts, complete(sigma), ids, table)) {
+
+					found.add(complete(sigma));
+
+					result.add(getSwaps(ts, complete(sigma)));
+
+				} else {
+
+					partial.add(sigma);
+
+				}
+
+			}
+
+		}
+
+		// inputs that only feed the properties are not reached by matching
+		// next-state functions, so pairs of inputs are partial matches too
+
+		for (int i = ts.stateBitCount; i < leafCount; i++) {
+
+			for (int j = i + 1; j < leafCount; j++) {
+
+				int[] sigma = new int[leafCount];
+
+				Arrays.fill(sigma, -1);
+
+				sigma[i] = j;
+
+				sigma[j] = i;
+
+				partial.add(sigma);
+
+			}
+
+		}
+
+		// partial matches can fail verification because some bits are only
+		// related through the properties (e.g. two copies of a component
+		// that only meet in an assertion), so each is combined with the
+		// consistent matches that follow it
+
+		for (int i = 0; i < partial.size() && attempts < MAX_ATTEMPTS; i++) {
+
+			int[] sigma = partial.get(i).clone();
+
+			boolean covered = false;
+
+			for (int[] f : found)
+				covered |= agrees(f, sigma);
+
+			if (covered)
+				continue;
+
+			for (int j = 0; j < partial.size() && attempts < MAX_ATTEMPTS; j++) {
+
+				if (j == i || !merge(sigma, partial.get(j)))
+					continue;
+
+				attempts++;
+
+				if (verify(ts, complete(sigma), ids, table)) {
+
+					found.add(complete(sigma));
+
+					result.add(getSwaps(ts, complete(sigma)));
+
+					break;
+
+				}
+
+			}
+
+		}
+
+		return result;
+
+	}
+
+	private static int[] hashNets(TransitionSystem ts, int[] leafIds, HashMap<String, Integer> table) {
+
+		// returns an id for each net such that two nets have the same id iff
+		// they compute structurally identical functions of the leaves (with
+		// leaf i labeled leafIds[i]), commutative gate inputs are unordered
+
+		int leafCount = ts.stateBitCount + ts.inputBitCount;
+
+		int[] ids = new int[ts.getNetCount()];
+
+		Arrays.fill(ids, -1);
+
+		System.arraycopy(leafIds, 0, ids, 0, leafCount);
+
+		for (TransitionSystem.Gate g : ts.gates) {
+
+			int[] in = new int[g.inputs.length];
+
+			for (int i = 0; i < in.length; i++)
+				in[i] = ids[g.inputs[i]];
+
+			if (COMMUTATIVE.contains(g.type))
+				Arrays.sort(in);
+
+			String key = g.type + " " + g.constant + " " + Arrays.toString(in);
+
+			Integer id = table.get(key);
+
+			if (id == null) {
+
+				id = leafCount + table.size();
+
+				table.put(key, id);
+
+			}
+
+			ids[g.output] = id;
+
+		}
+
+		return ids;
+
+	}
+
+	private static int[] refineColors(TransitionSystem ts) {
+
+		// colors state bits by reset value and next-state function shape
+		// (inputs are indistinguishable, state bits are labeled with their
+		// colors) until the number of colors stops growing, returns the
+		// shape of every net under the final coloring
+
+		int leafCount = ts.stateBitCount + ts.inputBitCount;
+
+		int[] colors = new int[ts.stateBitCount];
+
+		for (int k = 0; k < ts.stateBitCount; k++)
+			colors[k] = ts.resetBits[k] ? 1 : 0;
+
+		int colorCount = 0;
+
+		int[] shapes = null;
+
+		for (int round = 0; round < MAX_REFINEMENTS; round++) {
+
+			int[] leafIds = new int[leafCount];
+
+			for (int i = 0; i < leafCount; i++)
+				leafIds[i] = i < ts.stateBitCount ? colors[i] : leafCount - 1;
+
+			shapes = hashNets(ts, leafIds, new HashMap<String, Integer>());
+
+			HashMap<String, Integer> newColors = new HashMap<String, Integer>();
+
+			int[] refined = new int[ts.stateBitCount];
+
+			for (int k = 0; k < ts.stateBitCount; k++) {
+
+				String key = colors[k] + " " + shapes[ts.nextState[k]];
+
+				Integer c = newColors.get(key);
+
+				if (c == null) {
+
+					c = newColors.size();
+
+					newColors.put(key, c);
+
+				}
+
+				refined[k] = c;
+
+			}
+
+			colors = refined;
+
+			if (newColors.size() == colorCount)
+				break;
+
+			colorCount = newColors.size();
+
+		}
+
+		// state bits take their color as shape
+
+		System.arraycopy(colors, 0, shapes, 0, ts.stateBitCount);
+
+		return shapes;
+
+	}
+
+	private static int[] match(TransitionSystem ts, TransitionSystem.Gate[] drivers, final int[] shapes, int a,
+			int b) {
+
+		// extends the swap of state bits a and b to a permutation of all
+		// leaves by matching the next-state functions of swapped state bits
+		// (leaves they do not reach are left at -1), returns null if the
+		// functions do not match
+
+		int leafCount = ts.stateBitCount + ts.inputBitCount;
+
+		int[] sigma = new int[leafCount];
+
+		Arrays.fill(sigma, -1);
+
+		HashSet<Long> visited = new HashSet<Long>();
+
+		ArrayList<int[]> stack = new ArrayList<int[]>();
+
+		stack.add(new int[] { a, b });
+
+		while (!stack.isEmpty()) {
+
+			int[] pair = stack.remove(stack.size() - 1);
+
+			int u = pair[0], v = pair[1];
+
+			if (u == v || !visited.add((long) u << 32 | v))
+				continue;
+
+			if (u < leafCount || v < leafCount) {
+
+				if (u >= leafCount || v >= leafCount || (u < ts.stateBitCount) != (v < ts.stateBitCount))
+					return null;
+
+				if (sigma[u] == -1 && sigma[v] == -1) {
+
+					sigma[u] = v;
+					sigma[v] = u;
+
+					if (u < ts.stateBitCount)
+						stack.add(new int[] { ts.nextState[u], ts.nextState[v] });
+
+				} else if (sigma[u] != v) {
+
+					return null;
+
+				}
+
+				continue;
+
+			}
+
+			TransitionSystem.Gate gu = drivers[u], gv = drivers[v];
+
+			if (gu == null || gv == null || !gu.type.equals(gv.type) || gu.constant != gv.constant
+					|| gu.inputs.length != gv.inputs.length)
+				return null;
+
+			if (!COMMUTATIVE.contains(gu.type)) {
+
+				for (int i = 0; i < gu.inputs.length; i++)
+					stack.add(new int[] { gu.inputs[i], gv.inputs[i] });
+
+				continue;
+
+			}
+
+			// commutative gates: inputs common to both gates are paired with
+			// themselves, the others in order of shape
+
+			ArrayList<Integer> inU = new ArrayList<Integer>();
+
+			ArrayList<Integer> inV = new ArrayList<Integer>();
+
+			for (int n : gu.inputs)
+				inU.add(n);
+
+			for (int n : gv.inputs)
+				inV.add(n);
+
+			for (int n : gu.inputs) {
+
+				if (inV.contains(n)) {
+
+					inU.remove((Integer) n);
+
+					inV.remove((Integer) n);
+
+				}
+
+			}
+
+			Comparator<Integer> byShape = new Comparator<Integer>() {
+
+				@Override
+				public int compare(Integer n1, Integer n2) {
+
+					return Integer.compare(shapes[n1], shapes[n2]);
+
+				}
+
+			};
+
+			Collections.sort(inU, byShape);
+
+			Collections.sort(inV, byShape);
+
+			for (int i = 0; i < inU.size(); i++)
+				stack.add(new int[] { inU.get(i), inV.get(i) });
+
+		}
+
+		return sigma;
+
+	}
+
+	private static int[] complete(int[] sigma) {
+
+		// maps the leaves left unmatched (-1) to themselves
+
+		int[] result = sigma.clone();
+
+		for (int i = 0; i < result.length; i++)
+			if (result[i] == -1)
+				result[i] = i;
+
+		return result;
+
+	}
+
+	private static boolean agrees(int[] f, int[] sigma) {
+
+		// true if f maps every leaf matched by sigma the same way
+
+		for (int i = 0; i < sigma.length; i++)
+			if (sigma[i] != -1 && f[i] != sigma[i])
+				return false;
+
+		return true;
+
+	}
+
+	private static boolean merge(int[] sigma, int[] other) {
+
+		// adds the swaps of other to sigma if they do not conflict with it
+
+		for (int i = 0; i < sigma.length; i++)
+			if (other[i] != -1 && sigma[i] != -1 && sigma[i] != other[i])
+				return false;
+
+		for (int i = 0; i < sigma.length; i++)
+			if (other[i] != -1)
+				sigma[i] = other[i];
+
+		return true;
+
+	}
+
+	private static boolean verify(TransitionSystem ts, int[] sigma, int[] ids, HashMap<String, Integer> table) {
+
+		// checks that sigma preserves the reset state, the next-state
+		// functions and the property sets
+
+		for (int k = 0; k < ts.stateBitCount; k++)
+			if (ts.resetBits[k] != ts.resetBits[sigma[k]])
+				return false;
+
+		// permuted[n] is the id of net n with every leaf i replaced by leaf
+		// sigma[i]
+
+		int[] leafIds = new int[sigma.length];
+
+		for (int i = 0; i < sigma.length; i++)
+			leafIds[i] = sigma[i];
+
+		int[] permuted = hashNets(ts, leafIds, table);
+
+		for (int k = 0; k < ts.stateBitCount; k++)
+			if (permuted[ts.nextState[k]] != ids[ts.nextState[sigma[k]]])
+				return false;
+
+		return samePropertySet(ts.assumptions, ts.assumptionDelays, ids, permuted)
+				&& samePropertySet(ts.assertions, ts.assertionDelays, ids, permuted)
+				&& samePropertySet(ts.liveAssertions, new int[ts.liveAssertions.length], ids, permuted);
+
+	}
+
+	private static boolean samePropertySet(int[] nets, int[] delays, int[] ids, int[] permuted) {
+
+		ArrayList<String> before = new ArrayList<String>();
+
+		ArrayList<String> after = new ArrayList<String>();
+
+		for (int i = 0; i < nets.length; i++) {
+
+			before.add(ids[nets[i]] + " " + delays[i]);
+
+			after.add(permuted[nets[i]] + " " + delays[i]);
+
+		}
+
+		Collections.sort(before);
+
+		Collections.sort(after);
+
+		return before.equals(after);
+
+	}
+
+	private static Symmetry getSwaps(TransitionSystem ts, int[] sigma) {
+
+		ArrayList<Integer> stateSwaps = new ArrayList<Integer>();
+
+		ArrayList<Integer> inputSwaps = new ArrayList<Integer>();
+
+		for (int i = 0; i < sigma.length; i++) {
+
+			if (sigma[i] <= i)
+				continue;
+
+			if (i < ts.stateBitCount) {
+
+				stateSwaps.add(i);
+				stateSwaps.add(sigma[i]);
+
+			} else {
+
+				inputSwaps.add(i - ts.stateBitCount);
+				inputSwaps.add(sigma[i] - ts.stateBitCount);
+
+			}
+
+		}
+
+		return new Symmetry(toArray(stateSwaps), toArray(inputSwaps));
+
+	}
+
+	private static int[] toArray(ArrayList<Integer> list) {
+
+		int[] result = new int[list.size()];
+
+		for (int i = 0; i < result.length; i++)
+			result[i] = list.get(i);
+
+		return result;
+
+	}
+
+}
@@ -0,0 +1,106 @@
+package net.xprova.simulations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TransitionSystem {
+
+	// A flat, index-based snapshot of the model produced by CodeGenerator.
+	//
+	// Nets are numbered in the same order used by the code templates: state
+	// bits first, then input bits, then the remaining (non-state) nets. Net
+	// values follow the template convention of 0 (low) and -1 (high).
+	//
+	// gates: combinational assignments in evaluation order
+	//
+	// nextState: index of the flip-flop d net for each state bit
+	//
+	// resetState, resetBits: reset value of state bits, packed (first 64
+	// bits) and one per state bit
+	//
+	// assumptions, assertions, liveAssertions: indices of property nets
+
+	public static class Gate {
+
+		public String type;
+
+		public int output;
+
+		public int[] inputs;
+
+		public int constant;
+
+		public Gate(String type, int output, int[] inputs, int constant) {
+
+			this.type = type;
+			this.output = output;
+			this.inputs = inputs;
+			this.constant = constant;
+
+		}
+
+		@Override
+		public String toString() {
+
+			return String.format("%s %d <- %s", type, output, Arrays.toString(inputs));
+
+		}
+
+	}
+
+	public String[] netNames;
+
+	public int stateBitCount, inputBitCount;
+
+	public int[] nextState;
+
+	public ArrayList<Gate> gates;
+
+	public long resetState;
+
+	public boolean[] resetBits;
+
+	public int[] assumptions, assumptionDelays;
+
+	public int[] assertions, assertionDelays;
+
+	public int[] liveAssertions;
+
+	public int getNetCount() {
+
+		return netNames.length;
+
+	}
+
+	public int getNetIndex(String name) {
+
+		for (int i = 0; i < netNames.length; i++)
+			if (netNames[i].equals(name))
+				return i;
+
+		return -1;
+
+	}
+
+	public List<String> getSignalNames() {
+
+		return Arrays.asList(netNames);
+
+	}
+
+	public int getMaxDelay() {
+
+		int maxDelay = 0;
+
+		for (int d : assumptionDelays)
+			maxDelay = Math.max(maxDelay, d);
+
+		for (int d : assertionDelays)
+			maxDelay = Math.max(maxDelay, d);
+
+		return maxDelay;
+
+	}
+
+}
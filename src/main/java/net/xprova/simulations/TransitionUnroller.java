@@ -0,0 +1,353 @@
+package net.xprova.simulations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.xprova.simulations.TransitionSystem.Gate;
+
+public class TransitionUnroller {
+
+	// Unrolls the transition relation of a TransitionSystem into a
+	// SatSolver, one frame (clock cycle) at a time. The first frame starts
+	// either at the reset state or at an unconstrained state.
+	//
+	// Nets are encoded as single bits, so only boolean gates are supported.
+
+	public static final int L = 0;
+	public static final int H = -1;
+
+	private final TransitionSystem ts;
+
+	private final boolean fromReset;
+
+	private final SatSolver solver;
+
+	private final int litTrue, litFalse;
+
+	// literal of each net, one array per frame
+
+	private final ArrayList<int[]> frames;
+
+	public TransitionUnroller(TransitionSystem ts, boolean fromReset) {
+
+		this.ts = ts;
+
+		this.fromReset = fromReset;
+
+		solver = new SatSolver();
+
+		frames = new ArrayList<int[]>();
+
+		litTrue = SatSolver.lit(solver.newVar(), false);
+
+		litFalse = SatSolver.neg(litTrue);
+
+		solver.addClause(litTrue);
+
+	}
+
+	public SatSolver getSolver() {
+
+		return solver;
+
+	}
+
+	public int getTrue() {
+
+		return litTrue;
+
+	}
+
+	public int getFalse() {
+
+		return litFalse;
+
+	}
+
+	public int getFrameCount() {
+
+		return frames.size();
+
+	}
+
+	public int[] getFrame(int frame) {
+
+		return frames.get(frame);
+
+	}
+
+	public int[] addFrame() throws Exception {
+
+		int[] nets = new int[ts.getNetCount()];
+
+		Arrays.fill(nets, litFalse);
+
+		int frame = frames.size();
+
+		for (int i = 0; i < ts.stateBitCount; i++) {
+
+			if (frame > 0)
+				nets[i] = frames.get(frame - 1)[ts.nextState[i]];
+			else if (fromReset)
+				nets[i] = ts.resetBits[i] ? litTrue : litFalse;
+			else
+				nets[i] = SatSolver.lit(solver.newVar(), false);
+
+		}
+
+		for (int i = 0; i < ts.inputBitCount; i++)
+			nets[ts.stateBitCount + i] = SatSolver.lit(solver.newVar(), false);
+
+		for (Gate g : ts.gates)
+			nets[g.output] = encodeGate(g, nets);
+
+		frames.add(nets);
+
+		return nets;
+
+	}
+
+	public int checkProperties(int frame, int[] props, int[] delays, int distance) {
+
+		// returns a literal that is true when the properties hold in a frame
+		// at `distance` cycles from reset (properties are ignored until the
+		// distance is at least as large as their delay)
+
+		int[] nets = frames.get(frame);
+
+		int[] lits = new int[props.length];
+
+		for (int i = 0; i < props.length; i++)
+			lits[i] = distance < delays[i] ? litTrue : nets[props[i]];
+
+		return andOf(lits);
+
+	}
+
+	public Waveform getWaveform() throws Exception {
+
+		// waveforms of all nets in the model found by the last call to
+		// SatSolver.solve
+
+		int netCount = ts.getNetCount();
+
+		ArrayList<int[]> data = new ArrayList<int[]>();
+
+		for (int i = 0; i < netCount; i++) {
+
+			int[] w = new int[frames.size()];
+
+			for (int j = 0; j < w.length; j++)
+				w[j] = solver.getModelValue(frames.get(j)[i]) ? H : L;
+
+			data.add(w);
+
+		}
+
+		return new Waveform(ts.getSignalNames(), data);
+
+	}
+
+	private int encodeGate(Gate g, int[] nets) throws Exception {
+
+		int[] in = new int[g.inputs.length];
+
+		for (int i = 0; i < in.length; i++)
+			in[i] = nets[g.inputs[i]];
+
+		if ("CONST".equals(g.type)) {
+
+			if (g.constant == L)
+				return litFalse;
+			else if (g.constant == H)
+				return litTrue;
+
+			throw new Exception("SAT-based engines do not support non-binary constants");
+
+		} else if ("BUF".equals(g.type)) {
+
+			return in[0];
+
+		} else if ("NOT".equals(g.type)) {
+
+			return SatSolver.neg(in[0]);
+
+		} else if ("AND".equals(g.type)) {
+
+			return andOf(in);
+
+		} else if ("NAND".equals(g.type)) {
+
+			return SatSolver.neg(andOf(in));
+
+		} else if ("OR".equals(g.type)) {
+
+			return orOf(in);
+
+		} else if ("NOR".equals(g.type)) {
+
+			return SatSolver.neg(orOf(in));
+
+		} else if ("XOR".equals(g.type)) {
+
+			int result = litFalse;
+
+			for (int l : in)
+				result = xorOf(result, l);
+
+			return result;
+
+		} else if ("MUX2".equals(g.type)) {
+
+			return muxOf(in[0], in[1], in[2]);
+
+		} else if ("X2H".equals(g.type)) {
+
+			// binary nets are never X
+
+			return litFalse;
+
+		}
+
+		throw new Exception("SAT-based engines do not support gate " + g.type);
+
+	}
+
+	// Tseitin encoding (with constant folding)
+
+	public int andOf(int... lits) {
+
+		int[] args = new int[lits.length];
+
+		int n = 0;
+
+		for (int l : lits) {
+
+			if (l == litFalse)
+				return litFalse;
+
+			if (l == litTrue)
+				continue;
+
+			boolean duplicate = false;
+
+			for (int i = 0; i < n; i++) {
+
+				if (args[i] == SatSolver.neg(l))
+					return litFalse;
+
+				duplicate |= args[i] == l;
+
+			}
+
+			if (!duplicate)
+				args[n++] = l;
+
+		}
+
+		if (n == 0)
+			return litTrue;
+
+		if (n == 1)
+			return args[0];
+
+		int out = SatSolver.lit(solver.newVar(), false);
+
+		int[] clause = new int[n + 1];
+
+		for (int i = 0; i < n; i++) {
+
+			solver.addClause(SatSolver.neg(out), args[i]);
+
+			clause[i] = SatSolver.neg(args[i]);
+
+		}
+
+		clause[n] = out;
+
+		solver.addClause(clause);
+
+		return out;
+
+	}
+
+	public int orOf(int... lits) {
+
+		int[] negated = new int[lits.length];
+
+		for (int i = 0; i < lits.length; i++)
+			negated[i] = SatSolver.neg(lits[i]);
+
+		return SatSolver.neg(andOf(negated));
+
+	}
+
+	public int xorOf(int a, int b) {
+
+		if (a == litFalse)
+			return b;
+
+		if (b == litFalse)
+			return a;
+
+		if (a == litTrue)
+			return SatSolver.neg(b);
+
+		if (b == litTrue)
+			return SatSolver.neg(a);
+
+		if (a == b)
+			return litFalse;
+
+		if (a == SatSolver.neg(b))
+			return litTrue;
+
+		int out = SatSolver.lit(solver.newVar(), false);
+
+		int na = SatSolver.neg(a), nb = SatSolver.neg(b), nout = SatSolver.neg(out);
+
+		solver.addClause(nout, a, b);
+
+		solver.addClause(nout, na, nb);
+
+		solver.addClause(out, na, b);
+
+		solver.addClause(out, a, nb);
+
+		return out;
+
+	}
+
+	public int muxOf(int a, int b, int s) {
+
+		// (a & ~s) | (b & s)
+
+		if (s == litFalse || a == b)
+			return a;
+
+		if (s == litTrue)
+			return b;
+
+		int out = SatSolver.lit(solver.newVar(), false);
+
+		int ns = SatSolver.neg(s), nout = SatSolver.neg(out);
+
+		solver.addClause(s, SatSolver.neg(a), out);
+
+		solver.addClause(s, a, nout);
+
+		solver.addClause(ns, SatSolver.neg(b), out);
+
+		solver.addClause(ns, b, nout);
+
+		// redundant, helps propagation when a and b agree
+
+		solver.addClause(SatSolver.neg(a), SatSolver.neg(b), out);
+
+		solver.addClause(a, b, nout);
+
+		return out;
+
+	}
+
+}
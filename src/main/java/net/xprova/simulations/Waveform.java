@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 public class Waveform {
 
@@ -20,6 +21,17 @@ public class Waveform {
 
 	private int cycles;
 
+	// counter-examples of live assertions are lassos: the last cycle repeats
+	// cycle loopStart (-1 for other counter-examples)
+
+	private int loopStart = -1;
+
+	// plain-text files mark the cycles of the loop with this signal
+
+	public static final String LOOP_SIGNAL = "*loop";
+
+	private static final String VCD_LOOP_SIGNAL = "counter_example_loop";
+
 	private static final int L = 0;
 
 	private static final int H = -1;
@@ -33,6 +45,102 @@ public class Waveform {
 		readTextFile(textFile);
 	}
 
+	public Waveform(List<String> signals, List<int[]> data) throws Exception {
+
+		// constructs a waveform from simulation data held in memory (e.g.
+		// counter-examples of models executed in-process)
+
+		sigNames = new ArrayList<String>();
+
+		selectedSignals = new HashSet<String>();
+
+		waveforms = new HashMap<String, int[]>();
+
+		cycles = 0;
+
+		for (int i = 0; i < signals.size(); i++) {
+
+			String sigName = signals.get(i);
+
+			int[] sigData = data.get(i);
+
+			sigNames.add(sigName);
+
+			waveforms.put(sigName, sigData);
+
+			cycles = cycles == 0 ? sigData.length : cycles;
+
+			if (cycles != sigData.length)
+				throw new Exception("signal " + sigName + " had a different number of cycles");
+
+		}
+
+		selectedSignals.addAll(sigNames);
+
+	}
+
+	public int getLoopStart() {
+
+		return loopStart;
+
+	}
+
+	public void setLoopStart(int loopStart) {
+
+		this.loopStart = loopStart;
+
+	}
+
+	public int getCycles() {
+
+		return cycles;
+
+	}
+
+	public int[] getSignal(String sigName) {
+
+		// values (L or H) of a signal in each cycle, null for unknown signals
+
+		return waveforms.get(sigName);
+
+	}
+
+	public void writeTextFile(String file) throws Exception {
+
+		// writes waveform data in the same plain-text format read by
+		// readTextFile
+
+		int maxSigName = 0;
+
+		for (String s : sigNames)
+			maxSigName = s.length() > maxSigName ? s.length() : maxSigName;
+
+		String strFmt = String.format("%%%ds : ", maxSigName);
+
+		File txtFile = new File(file);
+
+		System.out.println("Saving counter-example waveform data (plain-text) to " + txtFile.getAbsolutePath() + " ...");
+
+		PrintStream fout = new PrintStream(txtFile);
+
+		for (String sig : sigNames) {
+
+			StringBuilder sb = new StringBuilder(String.format(strFmt, sig));
+
+			for (int v : waveforms.get(sig))
+				sb.append(getBitStr(v));
+
+			fout.println(sb.toString());
+
+		}
+
+		if (loopStart != -1)
+			fout.println(String.format(strFmt, LOOP_SIGNAL) + getLoopStr("1", "0"));
+
+		fout.close();
+
+	}
+
 	public void print(PrintStream out) {
 
 		int maxL = 0;
@@ -72,6 +180,16 @@ public class Waveform {
 			}
 
 		}
+
+		if (loopStart != -1) {
+
+			out.println();
+
+			out.printf(strFmt, "(loop)");
+
+			out.println(getLoopStr("^", " "));
+
+		}
 	}
 
 	public void printWaveJSON(PrintStream out) {
@@ -148,6 +266,13 @@ public class Waveform {
 		for (String signal : vcdSignals)
 			vcdLines.add(String.format("$var wire 1 %s %s $end", vcdIDs.get(signal), getSignalNameVCD(signal)));
 
+		// lassos have an extra signal that is high in the cycles of the loop
+
+		String loopID = getIdentifierVCD(vcdIDs.size());
+
+		if (loopStart != -1)
+			vcdLines.add(String.format("$var wire 1 %s %s $end", loopID, VCD_LOOP_SIGNAL));
+
 		vcdLines.add("$upscope $end");
 
 		vcdLines.add("$enddefinitions $end");
@@ -181,6 +306,9 @@ public class Waveform {
 
 			}
 
+			if (loopStart != -1 && (j == 0 || j == loopStart || j == cycles - 1))
+				vcdLines.add(String.format("%s%s", getLoopStr("1", "0").charAt(j), loopID));
+
 		}
 
 		vcdLines.add(String.format("#%d", cycles));
@@ -232,6 +360,9 @@ public class Waveform {
 
 			}
 
+			if (loopStart != -1)
+				tclLines.add(String.format("lappend sigList {top.%s}", VCD_LOOP_SIGNAL));
+
 			tclLines.add("set num_added [ gtkwave::addSignalsFromList $sigList ]");
 
 			// write tcl script
@@ -281,6 +412,20 @@ public class Waveform {
 
 	// internal
 
+	private String getLoopStr(String inLoop, String outOfLoop) {
+
+		// marks the cycles of the loop, the last cycle (a repetition of
+		// cycle loopStart) is not part of it
+
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < cycles; i++)
+			sb.append(i >= loopStart && i < cycles - 1 ? inLoop : outOfLoop);
+
+		return sb.toString();
+
+	}
+
 	private String getIdentifierVCD(int i) {
 
 		// maps an integer to a valid VCD identifier
@@ -516,6 +661,14 @@ public class Waveform {
 
 						String sigDataStr = line.substring(k + 3);
 
+						if (sigName.equals(LOOP_SIGNAL)) {
+
+							loopStart = sigDataStr.indexOf('1');
+
+							continue;
+
+						}
+
 						int n = sigDataStr.length();
 
 						int[] sigData = new int[n];
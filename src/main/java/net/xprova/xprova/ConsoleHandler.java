@@ -3,12 +3,17 @@ package net.xprova.xprova;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -41,7 +46,17 @@ import net.xprova.piccolo.Command;
 import net.xprova.piccolo.Console;
 import net.xprova.propertylanguage.Property;
 import net.xprova.propertylanguage.PropertyBuilder;
+import net.xprova.simulations.BddExplorer;
+import net.xprova.simulations.BoundedModelChecker;
+import net.xprova.simulations.BytecodeGenerator;
 import net.xprova.simulations.CodeGenerator;
+import net.xprova.simulations.DepthFirstExplorer;
+import net.xprova.simulations.InMemoryCompiler;
+import net.xprova.simulations.InductionProver;
+import net.xprova.simulations.ModelCache;
+import net.xprova.simulations.ModelExplorer;
+import net.xprova.simulations.NetlistOptimizer;
+import net.xprova.simulations.TransitionSystem;
 import net.xprova.simulations.Waveform;
 import net.xprova.verilogparser.VerilogParser;
 
@@ -785,11 +800,24 @@ public class ConsoleHandler {
 		description = "generate state space graph",
 		help = {
 			"Usage:",
-			"  space"
+			"  space [--print]",
+			"",
+			"Options:",
+			"  -p --print       print state transitions to console"
 		}
 	)
 	//@formatter:on
-	public void space() throws Exception {
+	public void space(String args[]) throws Exception {
+
+		// parse input
+
+		Options options = new Options();
+
+		options.addOption(Option.builder("p").longOpt("print").build());
+
+		CommandLineParser parser = new DefaultParser();
+
+		CommandLine line = parser.parse(options, args);
 
 		// code:
 
@@ -799,52 +827,82 @@ public class ConsoleHandler {
 
 		final String codeGenClassName = "CodeSimulator";
 
-		NetlistGraph currentCopy = current;
+		// generate code
+
+		String templateCode = loadResourceString(codeGenTemplateFile);
+
+		ArrayList<Property> emptyList = new ArrayList<Property>();
 
-		String javaFile = getTempFile(codeGenClassName + ".java");
+		ArrayList<String> lines = CodeGenerator.generate(current, emptyList, emptyList, templateCode);
 
-		String compileCmd = "javac " + javaFile;
+		// compile and run in-process
 
-		String runCodeGenCmd = String.format("java -classpath %s %s", getTempFile(""), codeGenClassName);
+		out.println("Compiling (in-process) ...");
 
-		// generate code
+		Class<?> simClass = InMemoryCompiler.compile(codeGenClassName, lines);
 
-		String templateCode = loadResourceString(codeGenTemplateFile);
+		out.println("Executing compiled code (in-process) ...");
 
-		ArrayList<Property> emptyList = new ArrayList<Property>();
+		int[][] stateGraph;
+
+		int stateBitCount;
 
-		ArrayList<String> lines = CodeGenerator.generate(currentCopy, emptyList, emptyList, templateCode);
+		try {
 
-		out.println("Saving code to " + javaFile + " ...");
+			Object sim = simClass.getDeclaredConstructor().newInstance();
 
-		PrintStream fout = new PrintStream(javaFile);
+			int initial = (Integer) simClass.getMethod("getResetState").invoke(sim);
 
-		for (String l : lines)
-			fout.println(l);
+			stateBitCount = (Integer) simClass.getMethod("getStateBitCount").invoke(sim);
 
-		fout.close();
+			stateGraph = (int[][]) simClass.getMethod("getStateGraph", int.class).invoke(sim, initial);
 
-		// compile using javac
+		} catch (InvocationTargetException e) {
 
-		out.println("Compiling ...");
+			throw new Exception("state space exploration failed: " + e.getCause().getMessage());
 
-		int compileExitCode = executeProgram(compileCmd, true, true);
+		}
 
-		if (compileExitCode != 0)
-			throw new Exception("Compilation failed");
+		int[] states = stateGraph[0];
 
-		// run code
+		DepthFirstExplorer.Graph graph = new DepthFirstExplorer.Graph(stateGraph[1], stateGraph[2]);
 
-		out.println("Executing compiled code ...");
+		long cycles = DepthFirstExplorer.findCycles(graph, 0, new DepthFirstExplorer.CycleHandler() {
 
-		// TODO: check exit code and report if failed:
+			@Override
+			public boolean handle(int[] path, int length, int target) {
 
-		executeProgram(runCodeGenCmd, true, true);
+				return true;
 
-		int exitCode = executeProgram(compileCmd, true, true);
+			}
 
-		if (exitCode != 0)
-			throw new Exception("state space exploration failed");
+		});
+
+		out.printf("States                         : %d\n", graph.getNodeCount());
+
+		out.printf("Transitions                    : %d\n", graph.getEdgeCount());
+
+		out.printf("Cycles (DFS back edges)        : %d\n", cycles);
+
+		if (line.hasOption("print")) {
+
+			String stateFmt = "%" + Math.max(stateBitCount, 1) + "s";
+
+			for (int i = 0; i < graph.getNodeCount(); i++) {
+
+				for (int j = graph.offsets[i]; j < graph.offsets[i + 1]; j++) {
+
+					String from = String.format(stateFmt, Integer.toBinaryString(states[i])).replace(' ', '0');
+
+					String to = String.format(stateFmt, Integer.toBinaryString(states[graph.targets[j]]));
+
+					out.printf("%s -> %s\n", from, to.replace(' ', '0'));
+
+				}
+
+			}
+
+		}
 
 	}
 
@@ -855,7 +913,11 @@ public class ConsoleHandler {
 			"Usage:",
 			"  prove [--print] [--vcd <file>] [--txt <file>] [--gtkwave]",
 			"        [--wavejson] [--signals sig1,sig2...] [--keep]",
-			"        [--onlycode] [--dfs|--hash|--cpp]",
+			"        [--onlycode] [--inprocess] [--dfs|--hash|--bitmap|--lanes|--cpp|--bytecode]",
+			"        [--threads <n>] [--store <dir>] [--store-size <n>]",
+			"        [--mem <n>] [--max-frontier <n>] [--input-classes] [--symmetry] [--sort]",
+			"        [--cache] [--incremental] [--all] [--no-coi] [--no-opt]",
+			"        [--bmc <k>|--induction <k>|--bdd]",
 			"",
 			"Options:",
 			"  -p --print       print counter-example to console",
@@ -864,11 +926,52 @@ public class ConsoleHandler {
 			"  -g --gtkwave     open counter-example using gtkwave",
 			"  -w --wavejson    print counter-example in WaveJSON format",
 			"  -s --signals     list of signals to include in counter-example",
-			"  -k --keep        keep assertion logic in current design (debugging)",
+			"  -k --keep        keep assertion logic in current design (debugging, the",
+			"                   design is not reduced or optimized)",
 			"  -c --onlycode    generate code but do not compile or run Java model (debugging)",
+			"  -i --inprocess   compile and run Java model inside the running JVM",
+			"  -x --cache       reuse compiled models from .xprova.cache when the design,",
+			"                   properties and template are unchanged",
+			"  --incremental    store the reachable states of the design and check",
+			"                   assertions without delays against them in later runs",
+			"                   (with --hash)",
 			"  -d --dfs         use DFS (required for verifying liveness properties)",
 			"  -h --hash        force use of hash tables",
-			"  --cpp            generate and use c++ program",
+			"  --bitmap         use a bitmap visited set (1 bit per state, more than 32 state bits)",
+			"  --lanes          evaluate 64 input vectors per word (bitwise logic only)",
+			"  --cpp            generate and use c++ program (with --hash or --dfs to select",
+			"                   its hash table or DFS engine)",
+			"  -b --bytecode    emit model bytecode directly (no javac, no method size limit)",
+			"  --threads <n>    use n threads for state space exploration (default, --dfs and",
+			"                   BFS --cpp models), with --dfs the visited set is a bit",
+			"                   array of all states (up to 29 state bits instead of 60)",
+			"  --store <dir>    keep hash table in a memory-mapped file in dir (with --hash),",
+			"                   or spill deep DFS stacks to it (with --dfs)",
+			"  --store-size <n> size of memory-mapped hash table in GB (default 4)",
+			"  --mem <n>        memory budget in GB of hash table (with --hash, default 2) or",
+			"                   visited bitmap (with --bitmap, default sized from state bits)",
+			"  --max-frontier <n>",
+			"                   maximum number of states in a BFS frontier (with --hash)",
+			"  --input-classes  enumerate classes of equivalent input vectors instead of",
+			"                   all vectors (with --hash, default above 30 input bits)",
+			"  --symmetry       store one state per class of states related by swapping",
+			"                   symmetric flip-flops and inputs (with --hash)",
+			"  --sort           radix-sort BFS frontiers before expanding them (default",
+			"                   and --hash models)",
+			"  --all            check all assertions in one search and report a",
+			"                   counter-example for each (default model)",
+			"  --no-coi         keep flip-flops, inputs and gates outside the cone of",
+			"                   influence of properties (counter-example waveforms",
+			"                   only contain signals in the cone without this option)",
+			"  --no-opt         do not propagate constants, collapse buffers or merge",
+			"                   identical gates and equivalent flip-flops before code",
+			"                   generation",
+			"  --bmc <k>        search for counter-examples of up to k + 1 cycles using",
+			"                   bounded model checking (SAT, boolean gates only)",
+			"  --induction <k>  prove assertions by k-induction with k up to the given",
+			"                   depth (SAT, boolean gates only)",
+			"  --bdd            symbolic BFS using BDDs with dynamic variable reordering",
+			"                   (boolean gates only)",
 		}
 	)
 	//@formatter:on
@@ -894,12 +997,54 @@ public class ConsoleHandler {
 
 				Option.builder("c").longOpt("onlycode").build(),
 
-				Option.builder("d").longOpt("depth").build(),
+				Option.builder("d").longOpt("dfs").build(),
+
+				Option.builder().longOpt("depth").build(), // old name of --dfs
 
 				Option.builder("h").longOpt("hash").build(),
 
 				Option.builder().longOpt("cpp").build(),
 
+				Option.builder().longOpt("bitmap").build(),
+
+				Option.builder().longOpt("lanes").build(),
+
+				Option.builder("i").longOpt("inprocess").build(),
+
+				Option.builder("b").longOpt("bytecode").build(),
+
+				Option.builder("x").longOpt("cache").build(),
+
+				Option.builder().longOpt("incremental").build(),
+
+				Option.builder().longOpt("threads").hasArg().build(),
+
+				Option.builder().longOpt("store").hasArg().build(),
+
+				Option.builder().longOpt("store-size").hasArg().build(),
+
+				Option.builder().longOpt("mem").hasArg().build(),
+
+				Option.builder().longOpt("max-frontier").hasArg().build(),
+
+				Option.builder().longOpt("input-classes").build(),
+
+				Option.builder().longOpt("symmetry").build(),
+
+				Option.builder().longOpt("sort").build(),
+
+				Option.builder().longOpt("all").build(),
+
+				Option.builder().longOpt("no-coi").build(),
+
+				Option.builder().longOpt("no-opt").build(),
+
+				Option.builder().longOpt("bmc").hasArg().build(),
+
+				Option.builder().longOpt("induction").hasArg().build(),
+
+				Option.builder().longOpt("bdd").build(),
+
 		};
 
 		Options options = new Options();
@@ -917,20 +1062,162 @@ public class ConsoleHandler {
 
 		boolean keepAssertionLogic = line.hasOption("k");
 
-		boolean useDepthTemplate = line.hasOption("d");
+		boolean runInProcess = line.hasOption("i");
+
+		boolean useDepthTemplate = line.hasOption("d") || line.hasOption("depth");
 
 		boolean useHashTemplate = line.hasOption("h");
 
 		boolean useCppTemplate = line.hasOption("cpp");
 
+		boolean useBitmapTemplate = line.hasOption("bitmap");
+
+		boolean useLanesTemplate = line.hasOption("lanes");
+
+		boolean useBytecode = line.hasOption("b");
+
+		boolean useCache = line.hasOption("x");
+
+		boolean useIncremental = line.hasOption("incremental");
+
+		int threads = Integer.parseInt(line.getOptionValue("threads", "1"));
+
 		String codeGenTemplateFile;
 
-		final String codeGenClassName = "CodeSimulator";
+		if (useCppTemplate && runInProcess)
+			throw new Exception("c++ models cannot be executed in-process");
+
+		boolean useOtherModel = useCppTemplate || useDepthTemplate || useHashTemplate || useBitmapTemplate
+				|| useLanesTemplate;
+
+		if (useBytecode && (useOtherModel || runInProcess))
+			throw new Exception("--bytecode cannot be combined with other model options or --inprocess");
+
+		if (useCache && (useBytecode || line.hasOption("c")))
+			throw new Exception("--cache cannot be combined with --bytecode or --onlycode");
+
+		if (useIncremental && (!useHashTemplate || useCppTemplate || useDepthTemplate || line.hasOption("c")))
+			throw new Exception("--incremental is only supported by the hash (--hash) model and not with --onlycode");
+
+		if (threads < 1)
+			throw new Exception("number of threads must be positive");
+
+		// the c++ model expands BFS levels in parallel (OpenMP), its DFS
+		// engine is sequential
+
+		boolean isThreadedModel = !useOtherModel || (useDepthTemplate && !useCppTemplate)
+				|| (useCppTemplate && !useDepthTemplate);
+
+		if (threads > 1 && (!isThreadedModel || useBytecode))
+			throw new Exception("--threads is only supported by the default (BFS), DFS (--dfs) and BFS c++ models");
+
+		// symbolic engines (SAT and BDD)
+
+		int symbolicEngines = 0;
+
+		for (String opt : new String[] { "bmc", "induction", "bdd" })
+			if (line.hasOption(opt))
+				symbolicEngines++;
+
+		boolean useSymbolic = symbolicEngines > 0;
+
+		if (symbolicEngines > 1)
+			throw new Exception("--bmc, --induction and --bdd cannot be combined");
+
+		if (useSymbolic && (useOtherModel || useBytecode || runInProcess || useCache || useIncremental || threads > 1
+				|| line.hasOption("all") || line.hasOption("c")))
+			throw new Exception("symbolic engines cannot be combined with other model, search or code options");
+
+		// the DFS model uses the store directory for stack blocks spilled on
+		// deep searches
+
+		boolean isStoreModel = (useHashTemplate || useDepthTemplate) && !useCppTemplate;
+
+		if (line.hasOption("store") && !isStoreModel)
+			throw new Exception("--store is only supported by the hash (--hash) and DFS (--dfs) models");
+
+		if (line.hasOption("store-size") && (!useHashTemplate || useDepthTemplate || useCppTemplate))
+			throw new Exception("--store-size is only supported by the hash (--hash) model");
+
+		boolean isHashModel = useHashTemplate && !useCppTemplate;
+
+		boolean isBitmapModel = useBitmapTemplate && !useCppTemplate && !useDepthTemplate && !useHashTemplate;
+
+		if (line.hasOption("mem") && !isHashModel && !isBitmapModel)
+			throw new Exception("--mem is only supported by the hash (--hash) and bitmap (--bitmap) models");
+
+		if (line.hasOption("max-frontier") && (!useHashTemplate || useCppTemplate))
+			throw new Exception("--max-frontier is only supported by the hash (--hash) model");
+
+		boolean useInputClasses = line.hasOption("input-classes");
+
+		if (useInputClasses && (!useHashTemplate || useCppTemplate))
+			throw new Exception("--input-classes is only supported by the hash (--hash) model");
+
+		boolean useSymmetry = line.hasOption("symmetry");
+
+		if (useSymmetry && (!useHashTemplate || useCppTemplate || useIncremental))
+			throw new Exception("--symmetry is only supported by the hash (--hash) model without --incremental");
+
+		// heap size of external Java models, leaving room for the hash table
+		// budget and the frontier arrays (bitmap models without --mem are
+		// sized from their state bits in runModel)
+
+		double memBudget = Double.parseDouble(line.getOptionValue("mem", "2"));
+
+		if (memBudget <= 0)
+			throw new Exception("memory budget must be positive");
+
+		int heapSize = (int) Math.max(6, Math.ceil((isBitmapModel ? 1 : 1.5) * memBudget + 1));
+
+		// model options (forwarded to the generated model)
+
+		ArrayList<String> modelArgs = new ArrayList<String>();
+
+		if (threads > 1)
+			modelArgs.addAll(Arrays.asList("--threads", "" + threads));
+
+		for (String opt : new String[] { "store", "store-size", "mem", "max-frontier" })
+			if (line.hasOption(opt))
+				modelArgs.addAll(Arrays.asList("--" + opt, line.getOptionValue(opt)));
+
+		if (useInputClasses)
+			modelArgs.add("--input-classes");
+
+		if (useSymmetry)
+			modelArgs.add("--symmetry");
+
+		if (line.hasOption("sort")) {
+
+			boolean isSortedModel = !useOtherModel || (useHashTemplate && !useCppTemplate && !useDepthTemplate);
+
+			if (!isSortedModel || useBytecode)
+				throw new Exception("--sort is only supported by the default and hash (--hash) models");
+
+			modelArgs.add("--sort");
+
+		}
+
+		if (line.hasOption("all")) {
+
+			if (useOtherModel || useBytecode || threads > 1)
+				throw new Exception("--all is only supported by the default (BFS) model with one thread");
+
+			modelArgs.add("--all");
+
+		}
 
 		if (useCppTemplate) {
 
+			// the c++ model selects its engine at run time
+
 			codeGenTemplateFile = "template1.c";
 
+			if (useDepthTemplate)
+				modelArgs.add("--dfs");
+			else if (useHashTemplate)
+				modelArgs.add("--hash");
+
 		} else if (useDepthTemplate) {
 
 			codeGenTemplateFile = "template2.j";
@@ -939,6 +1226,14 @@ public class ConsoleHandler {
 
 			codeGenTemplateFile = "template4.j";
 
+		} else if (useBitmapTemplate) {
+
+			codeGenTemplateFile = "template5.j";
+
+		} else if (useLanesTemplate) {
+
+			codeGenTemplateFile = "template6.j";
+
 		} else {
 
 			codeGenTemplateFile = "template1.j";
@@ -949,105 +1244,330 @@ public class ConsoleHandler {
 
 		String txtFile = line.getOptionValue("txt", defaultTextFile);
 
-		String txtArg = "--txt " + txtFile;
+		NetlistGraph currentCopy = keepAssertionLogic ? current : new NetlistGraph(current);
 
-		String compileCmd;
+		(new Transformer(currentCopy, defsFF)).expandDFFx();
 
-		String genCodeFile;
+		if (useBytecode) {
 
-		String runCodeGenCmd;
+			proveBytecode(line, currentCopy, txtFile);
 
-		boolean isJavaTemplate = !useCppTemplate;
+			return;
 
-		if (isJavaTemplate) {
+		}
 
-			genCodeFile = getTempFile(codeGenClassName + ".java");
+		if (useSymbolic) {
 
-			compileCmd = "javac " + genCodeFile;
+			proveSymbolic(line, currentCopy, txtFile);
 
-			runCodeGenCmd = String.format("java -Xmx6g -classpath %s %s %s", getTempFile(""), codeGenClassName, txtArg);
+			return;
 
-		} else {
+		}
+
+		if (useIncremental) {
+
+			// the reachable states of the design under the current
+			// assumptions are computed once and stored in the model cache
+			// directory, later runs check their assertions against them
+
+			// delayed assertions (#, ##, |=>, $rose, $stable ...) add monitor
+			// flip-flops that are not part of the stored states
 
-			genCodeFile = getTempFile(codeGenClassName + ".cpp");
+			for (Property p : assertions)
+				if (CodeGenerator.getMaxDelay(p) > 0)
+					throw new Exception("--incremental does not support assertions with delays");
 
-			runCodeGenCmd = getTempFile(codeGenClassName + ".exe");
+			ArrayList<Property> noAssertions = new ArrayList<Property>();
 
-			compileCmd = String.format("g++ -o %s -O2 %s", runCodeGenCmd, genCodeFile);
+			NetlistGraph reachCopy = new NetlistGraph(current);
+
+			(new Transformer(reachCopy, defsFF)).expandDFFx();
+
+			String templateCode = loadResourceString(codeGenTemplateFile);
+
+			String reachKey = ModelCache.getKey(reachCopy, assumptions, noAssertions, templateCode, "reachable");
+
+			File reachFile = new File(ModelCache.CACHE_DIR, reachKey + ".reach");
+
+			if (reachFile.exists()) {
+
+				out.printf("Using stored reachable states %s ...\n", reachKey);
+
+			} else {
+
+				out.println("Computing reachable states ...");
+
+				File reachTmpFile = new File(ModelCache.CACHE_DIR, reachKey + ".reach.tmp");
+
+				reachTmpFile.getParentFile().mkdirs();
+
+				ArrayList<String> reachArgs = new ArrayList<String>(modelArgs);
+
+				reachArgs.addAll(Arrays.asList("--save-reachable", reachTmpFile.getAbsolutePath()));
+
+				runModel(line, reachCopy, assumptions, noAssertions, codeGenTemplateFile, reachArgs, txtFile, heapSize);
+
+				if (!reachTmpFile.renameTo(reachFile))
+					throw new Exception("could not store reachable states in " + reachFile);
+
+			}
+
+			modelArgs.addAll(Arrays.asList("--check-reachable", reachFile.getAbsolutePath()));
 
 		}
 
-		NetlistGraph currentCopy = keepAssertionLogic ? current : new NetlistGraph(current);
+		runModel(line, currentCopy, assumptions, assertions, codeGenTemplateFile, modelArgs, txtFile, heapSize);
 
-		(new Transformer(currentCopy, defsFF)).expandDFFx();
+	}
 
-		// generate code
+	private void runModel(CommandLine line, NetlistGraph graph, ArrayList<Property> assumptions,
+			ArrayList<Property> assertions, String codeGenTemplateFile, ArrayList<String> modelArgs, String txtFile,
+			int heapSize) throws Exception {
+
+		// generates, compiles (unless cached) and runs a model of `graph`
+		// using `prove` options in `line`
+
+		final String codeGenClassName = "CodeSimulator";
+
+		boolean runInProcess = line.hasOption("i");
+
+		boolean useCache = line.hasOption("x");
+
+		// stored reachable states (--incremental) must cover all flip-flops,
+		// -k works on the current design, which must not be reduced
+
+		boolean reduceCone = !line.hasOption("no-coi") && !line.hasOption("incremental") && !line.hasOption("k");
+
+		boolean optimize = !line.hasOption("no-opt") && !line.hasOption("k");
+
+		boolean useSymmetry = line.hasOption("symmetry");
+
+		String txtArg = "--txt " + txtFile;
+
+		String modelArgStr = modelArgs.isEmpty() ? "" : " " + String.join(" ", modelArgs);
+
+		boolean isJavaTemplate = codeGenTemplateFile.endsWith(".j");
+
+		String genCodeFile = getTempFile(codeGenClassName + (isJavaTemplate ? ".java" : ".cpp"));
+
+		// c++ models are always built with OpenMP so that a cached model can
+		// run with any number of threads
+
+		String cppFlags = "-O3 -march=native -fopenmp";
 
 		String templateCode = loadResourceString(codeGenTemplateFile);
 
-		ArrayList<String> lines = CodeGenerator.generate(currentCopy, assumptions, assertions, templateCode);
+		// look up compiled model cache
 
-		out.println("Saving code to " + genCodeFile + " ...");
+		String cacheKey = null;
 
-		PrintStream fout = new PrintStream(genCodeFile);
+		File cacheEntry = null;
 
-		for (String l : lines)
-			fout.println(l);
+		File buildDir = new File(getTempFile(""));
 
-		fout.close();
+		if (useCache) {
 
-		if (line.hasOption("c"))
-			return;
+			String buildCmd = (isJavaTemplate ? "java" : "g++ " + cppFlags) + (reduceCone ? " coi" : "")
+					+ (optimize ? " opt" : "") + (useSymmetry ? " sym" : "");
+
+			cacheKey = ModelCache.getKey(graph, assumptions, assertions, templateCode, buildCmd);
+
+			cacheEntry = ModelCache.getEntry(cacheKey);
+
+			if (cacheEntry == null) {
+
+				buildDir = ModelCache.getStagingDir(cacheKey);
+
+			} else {
+
+				out.printf("Using cached model %s ...\n", cacheKey);
+
+			}
+
+		}
+
+		Class<?> simClass = null;
+
+		boolean isGenerated = cacheEntry == null;
+
+		if (isGenerated) {
+
+			// generate code
+
+			CodeGenerator.addProperties(graph, assumptions, assertions);
 
-		// compile
+			if (reduceCone)
+				reportConeReduction(graph);
 
-		out.println("Compiling ...");
+			if (optimize)
+				reportOptimization(graph);
+
+			ArrayList<String> lines = CodeGenerator.generate(graph, templateCode, useSymmetry);
+
+			out.println("Saving code to " + genCodeFile + " ...");
+
+			PrintStream fout = new PrintStream(genCodeFile);
+
+			for (String l : lines)
+				fout.println(l);
+
+			fout.close();
+
+			if (line.hasOption("c"))
+				return;
+
+			// compile
+
+			if (runInProcess) {
+
+				out.println("Compiling (in-process) ...");
+
+				simClass = InMemoryCompiler.compile(codeGenClassName, lines, useCache ? buildDir : null);
+
+			} else {
+
+				out.println("Compiling ...");
+
+				String compileCmd;
+
+				if (isJavaTemplate) {
+
+					compileCmd = String.format("javac -d %s %s", buildDir, genCodeFile);
+
+				} else {
+
+					File exeFile = new File(buildDir, codeGenClassName + ".exe");
+
+					compileCmd = String.format("g++ -o %s %s %s", exeFile, cppFlags, genCodeFile);
+
+				}
+
+				int compileExitCode = executeProgram(compileCmd, true, true);
+
+				if (compileExitCode != 0)
+					throw new Exception("Compilation failed");
+
+			}
 
-		int compileExitCode = executeProgram(compileCmd, true, true);
+			if (useCache)
+				cacheEntry = ModelCache.commit(cacheKey, buildDir);
 
-		if (compileExitCode != 0)
-			throw new Exception("Compilation failed");
+		} else if (runInProcess) {
+
+			simClass = InMemoryCompiler.load(codeGenClassName, cacheEntry);
+
+		}
+
+		File modelDir = useCache ? cacheEntry : buildDir;
 
 		// run code
 
-		out.println("Executing compiled code ...");
+		boolean checkAll = line.hasOption("all");
 
-		int genExitCode = executeProgram(runCodeGenCmd, true, true);
+		if (runInProcess) {
 
-		if (genExitCode == 100) {
+			ArrayList<Waveform> assertionCounters = new ArrayList<Waveform>();
 
-			// 100 is a special exit code for terminating successfully after
-			// finding a counter-example
+			Waveform counter = runModelInProcess(simClass, modelArgs, assertionCounters);
+
+			if (counter == null)
+				return;
+
+			if (!checkAll) {
+
+				saveCounterExample(line, counter, txtFile);
+
+				return;
+
+			}
+
+			if (line.hasOption("t"))
+				counter.writeTextFile(txtFile);
+
+			for (int k = 0; k < assertionCounters.size(); k++) {
+
+				Waveform c = assertionCounters.get(k);
+
+				if (c == null)
+					continue;
 
-			boolean runGtkwave = line.hasOption("g");
+				if (line.hasOption("t"))
+					c.writeTextFile(txtFile + "." + (k + 1));
+
+				showAssertionCounterExample(line, c, k);
+
+			}
+
+			return;
+
+		}
 
-			boolean printToConsole = line.hasOption("p");
+		// with --all, models save the counter-example of each falsified
+		// assertion k to <txtFile>.k, remove files left by earlier runs
 
-			boolean writeVCD = line.hasOption("v");
+		if (checkAll)
+			for (int k = 0; k < assertions.size(); k++)
+				new File(txtFile + "." + (k + 1)).delete();
 
-			boolean printWaveJSON = line.hasOption('w');
+		// the bitmap model takes 2^(state bits - 3) bytes, cached models are
+		// sized from the cone of influence (before netlist optimization)
 
-			String defVCD = getTempFile("counter-example.vcd");
+		if ("template5.j".equals(codeGenTemplateFile) && !line.hasOption("mem")) {
 
-			String vcdFile = line.getOptionValue("v", defVCD);
+			if (!isGenerated) {
 
-			boolean loadCounter = runGtkwave || printToConsole || writeVCD || printWaveJSON;
+				CodeGenerator.addProperties(graph, assumptions, assertions);
+
+				if (reduceCone)
+					CodeGenerator.reduceCone(graph);
+
+			}
+
+			int stateBitCount = graph.getModulesByType("DFF").size();
+
+			heapSize = Math.max(heapSize, getBitmapHeapSize(stateBitCount));
+
+		}
+
+		String runCodeGenCmd;
+
+		if (isJavaTemplate) {
+
+			// generated models have very large methods, which HotSpot would
+			// otherwise leave interpreted
+
+			runCodeGenCmd = String.format("java -Xmx%dg -XX:-DontCompileHugeMethods -classpath %s %s %s", heapSize,
+					modelDir, codeGenClassName, txtArg + modelArgStr);
+
+		} else {
+
+			runCodeGenCmd = new File(modelDir, codeGenClassName + ".exe").getAbsolutePath() + " " + txtArg
+					+ modelArgStr;
+
+		}
+
+		out.println("Executing compiled code ...");
+
+		int genExitCode = executeProgram(runCodeGenCmd, true, true);
+
+		if (genExitCode == 100) {
+
+			// 100 is a special exit code for terminating successfully after
+			// finding a counter-example
 
-			if (loadCounter) {
+			if (isCounterExampleRequested(line) && !checkAll)
+				showCounterExample(line, new Waveform(txtFile));
 
-				Waveform counter = new Waveform(txtFile);
+			if (isCounterExampleRequested(line) && checkAll) {
 
-				if (line.hasOption('s'))
-					counter.selectSignals(line.getOptionValue('s').split(","));
+				for (int k = 0; k < assertions.size(); k++) {
 
-				if (printToConsole)
-					counter.print(System.out);
+					File f = new File(txtFile + "." + (k + 1));
 
-				if (runGtkwave || writeVCD)
-					counter.writeVCDFile(vcdFile, runGtkwave);
+					if (f.exists())
+						showAssertionCounterExample(line, new Waveform(f.getPath()), k);
 
-				if (printWaveJSON)
-					counter.printWaveJSON(System.out);
+				}
 
 			}
 
@@ -1279,6 +1799,325 @@ public class ConsoleHandler {
 
 	// Internal Methods:
 
+	private boolean isCounterExampleRequested(CommandLine line) {
+
+		return line.hasOption("g") || line.hasOption("p") || line.hasOption("v") || line.hasOption('w');
+
+	}
+
+	private void showCounterExample(CommandLine line, Waveform counter) throws Exception {
+
+		showCounterExample(line, counter, line.getOptionValue("v", getTempFile("counter-example.vcd")));
+
+	}
+
+	private void showCounterExample(CommandLine line, Waveform counter, String vcdFile) throws Exception {
+
+		boolean runGtkwave = line.hasOption("g");
+
+		boolean printToConsole = line.hasOption("p");
+
+		boolean writeVCD = line.hasOption("v");
+
+		boolean printWaveJSON = line.hasOption('w');
+
+		if (line.hasOption('s'))
+			counter.selectSignals(line.getOptionValue('s').split(","));
+
+		if (counter.getLoopStart() != -1)
+			out.printf("Counter-example loops back to cycle %d in its last cycle\n", counter.getLoopStart());
+
+		if (printToConsole)
+			counter.print(System.out);
+
+		if (runGtkwave || writeVCD)
+			counter.writeVCDFile(vcdFile, runGtkwave);
+
+		if (printWaveJSON)
+			counter.printWaveJSON(System.out);
+
+	}
+
+	private void showAssertionCounterExample(CommandLine line, Waveform counter, int k) throws Exception {
+
+		// shows the counter-example of assertion k (prove --all), vcd files
+		// are suffixed with the assertion number
+
+		out.printf("Counter-example of assertion %d:\n", k + 1);
+
+		String vcdFile = line.getOptionValue("v", getTempFile("counter-example.vcd")) + "." + (k + 1);
+
+		showCounterExample(line, counter, vcdFile);
+
+	}
+
+	private void saveCounterExample(CommandLine line, Waveform counter, String txtFile) throws Exception {
+
+		// used by in-process engines, which do not write the plain-text
+		// counter-example themselves
+
+		if (line.hasOption("t"))
+			counter.writeTextFile(txtFile);
+
+		showCounterExample(line, counter);
+
+	}
+
+	private int getBitmapHeapSize(int stateBitCount) {
+
+		// heap size (in GB) of bitmap models, 1 GB above the bitmap size
+
+		long bitmapBytes = stateBitCount > 6 ? 1L << (stateBitCount - 3) : 8;
+
+		return (int) Math.max(6, Math.ceil(bitmapBytes / (1024.0 * 1024 * 1024) + 1));
+
+	}
+
+	private void reportConeReduction(NetlistGraph graph) {
+
+		int flops = graph.getModulesByType("DFF").size();
+
+		int removed = CodeGenerator.reduceCone(graph);
+
+		out.printf("Cone-of-influence reduction removed %d of %d flip-flops\n", removed, flops);
+
+	}
+
+	private void reportOptimization(NetlistGraph graph) throws Exception {
+
+		int modules = graph.getModules().size();
+
+		int removed = NetlistOptimizer.optimize(graph, CodeGenerator.getPropertyNets());
+
+		int merged = NetlistOptimizer.mergeEquivalentFlops(graph);
+
+		if (merged > 0)
+			removed += NetlistOptimizer.optimize(graph, CodeGenerator.getPropertyNets());
+
+		out.printf("Netlist optimization removed %d of %d modules\n", removed, modules);
+
+		out.printf("Register correspondence merged %d flip-flops\n", merged);
+
+	}
+
+	private void proveBytecode(CommandLine line, NetlistGraph graph, String txtFile) throws Exception {
+
+		final String modelClassName = "CodeSimulatorModel";
+
+		CodeGenerator.addProperties(graph, assumptions, assertions);
+
+		// -k works on the current design, which must not be reduced
+
+		if (!line.hasOption("no-coi") && !line.hasOption("k"))
+			reportConeReduction(graph);
+
+		if (!line.hasOption("no-opt") && !line.hasOption("k"))
+			reportOptimization(graph);
+
+		TransitionSystem ts = CodeGenerator.build(graph);
+
+		out.println("Generating bytecode ...");
+
+		byte[] classBytes = BytecodeGenerator.generate(ts, modelClassName);
+
+		if (line.hasOption("c")) {
+
+			String classFile = getTempFile(modelClassName + ".class");
+
+			out.println("Saving bytecode to " + classFile + " ...");
+
+			FileOutputStream fout = new FileOutputStream(classFile);
+
+			fout.write(classBytes);
+
+			fout.close();
+
+			return;
+
+		}
+
+		out.println("Executing model ...");
+
+		ModelExplorer explorer = new ModelExplorer(ts, BytecodeGenerator.load(modelClassName, classBytes));
+
+		int[] counterExample = explorer.exploreSpace();
+
+		if (counterExample != null)
+			saveCounterExample(line, explorer.simulate(counterExample), txtFile);
+
+	}
+
+	private void proveSymbolic(CommandLine line, NetlistGraph graph, String txtFile) throws Exception {
+
+		// bounded model checking (--bmc), k-induction (--induction) or BDD
+		// reachability (--bdd)
+
+		int maxDepth = 0;
+
+		for (String opt : new String[] { "bmc", "induction" })
+			if (line.hasOption(opt))
+				maxDepth = Integer.parseInt(line.getOptionValue(opt));
+
+		if (maxDepth < 0)
+			throw new Exception("depth must not be negative");
+
+		CodeGenerator.addProperties(graph, assumptions, assertions);
+
+		// -k works on the current design, which must not be reduced
+
+		if (!line.hasOption("no-coi") && !line.hasOption("k"))
+			reportConeReduction(graph);
+
+		if (!line.hasOption("no-opt") && !line.hasOption("k"))
+			reportOptimization(graph);
+
+		TransitionSystem ts = CodeGenerator.build(graph);
+
+		Waveform counter;
+
+		if (line.hasOption("bmc"))
+			counter = new BoundedModelChecker(ts).check(maxDepth);
+		else if (line.hasOption("induction"))
+			counter = new InductionProver(ts).prove(maxDepth);
+		else
+			counter = new BddExplorer(ts).exploreSpace();
+
+		if (counter != null)
+			saveCounterExample(line, counter, txtFile);
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private Waveform runModelInProcess(Class<?> simClass, ArrayList<String> modelArgs,
+			ArrayList<Waveform> assertionCounters) throws Exception {
+
+		// runs the state space exploration of a compiled model inside this
+		// JVM, returns the counter-example waveform (or null if the
+		// assertions were proven)
+		//
+		// models that check all assertions (--all) also report one
+		// counter-example per assertion, these are added to
+		// `assertionCounters` (null for proven assertions)
+
+		out.println("Executing compiled code (in-process) ...");
+
+		try {
+
+			Object sim = simClass.getDeclaredConstructor().newInstance();
+
+			if (!modelArgs.isEmpty()) {
+
+				String[] argArr = modelArgs.toArray(new String[0]);
+
+				simClass.getMethod("configure", String[].class).invoke(sim, (Object) argArr);
+
+			}
+
+			// models use int or long state vectors depending on the template
+
+			Method getResetState = simClass.getMethod("getResetState");
+
+			Class<?> stateType = getResetState.getReturnType();
+
+			Object initial = getResetState.invoke(sim);
+
+			Object counterExample = simClass.getMethod("exploreSpace", stateType).invoke(sim, initial);
+
+			if (counterExample == null)
+				return null;
+
+			Method simulate = simClass.getMethod("simulate_internal", stateType, counterExample.getClass());
+
+			List<String> sigNames = (List<String>) simClass.getMethod("getSignalNames").invoke(sim);
+
+			Field tracesField = null;
+
+			try {
+
+				tracesField = simClass.getField("assertionTraces");
+
+			} catch (NoSuchFieldException e) {
+
+				// model does not check assertions separately
+
+			}
+
+			Object traces = tracesField == null ? null : tracesField.get(sim);
+
+			if (traces != null) {
+
+				for (int k = 0; k < Array.getLength(traces); k++) {
+
+					Object t = Array.get(traces, k);
+
+					if (t == null)
+						assertionCounters.add(null);
+					else
+						assertionCounters.add(getWaveform(sigNames, (List<?>) simulate.invoke(sim, initial, t)));
+
+				}
+
+			}
+
+			Waveform counter = getWaveform(sigNames, (List<?>) simulate.invoke(sim, initial, counterExample));
+
+			try {
+
+				counter.setLoopStart(simClass.getField("loopStart").getInt(sim));
+
+			} catch (NoSuchFieldException e) {
+
+				// model does not check liveness assertions
+
+			}
+
+			return counter;
+
+		} catch (InvocationTargetException e) {
+
+			Throwable cause = e.getCause();
+
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+
+			throw new Exception("state space exploration failed: " + cause);
+
+		}
+
+	}
+
+	private Waveform getWaveform(List<String> sigNames, List<?> data) throws Exception {
+
+		// converts the int[] or long[] waveforms returned by
+		// simulate_internal
+
+		ArrayList<int[]> waveforms = new ArrayList<int[]>();
+
+		for (Object d : data) {
+
+			if (d instanceof int[]) {
+
+				waveforms.add((int[]) d);
+
+			} else {
+
+				long[] ld = (long[]) d;
+
+				int[] id = new int[ld.length];
+
+				for (int j = 0; j < ld.length; j++)
+					id[j] = (int) ld[j];
+
+				waveforms.add(id);
+
+			}
+
+		}
+
+		return new Waveform(sigNames, waveforms);
+
+	}
+
 	private int executeProgram(String cmd, boolean showOutput, boolean waitFor) throws Exception {
 
 		final Runtime rt = Runtime.getRuntime();
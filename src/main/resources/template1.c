@@ -1,9 +1,80 @@
+#include <stdarg.h>
+#include <stdint.h>
 #include <stdio.h>
+#include <stdlib.h>
 #include <string.h>
 #include <time.h>
 
+#include <algorithm>
+#include <string>
+#include <vector>
+
+#ifdef _OPENMP
+#include <omp.h>
+#endif
+
 using namespace std;
 
+// Search engines (selected by command line options):
+//
+// lut  : BFS with a lookup table indexed by state (default, up to 29 state
+//        bits)
+// hash : BFS with states kept in a hash table (--hash, up to 60 state bits)
+// dfs  : nested DFS with states kept in a hash table, also checks live
+//        assertions (--dfs, up to 59 state bits)
+//
+// The levels of both BFS engines are expanded by --threads threads when
+// built with OpenMP (-fopenmp). Counter-examples are written to the --txt
+// file in the plain-text format of the Java models.
+
+const int L = 0;
+
+const int H = -1;
+
+enum Engine {
+	LUT, HASH, DFS
+};
+
+Engine engine = LUT;
+
+int threads = 1;
+
+const char *txtFile = NULL;
+
+// lassos (DFS) end with a cycle that repeats cycle loopStart
+
+int loopStart = -1;
+
+// counter gates are generated as calls to Java's Integer.bitCount
+
+struct BitCounter {
+
+	int bitCount(int x) const {
+
+		return __builtin_popcount(x);
+
+	}
+
+};
+
+const BitCounter Integer = BitCounter();
+
+void fail(const char *fmt, ...) {
+
+	va_list args;
+
+	va_start(args, fmt);
+
+	vfprintf(stderr, fmt, args);
+
+	va_end(args);
+
+	fprintf(stderr, "\n");
+
+	exit(1);
+
+}
+
 int getStateBitCount() {
 
 	// return {STATE_BIT_COUNT};
@@ -16,159 +87,225 @@ int getInputBitCount() {
 
 }
 
-void exploreSpace(int initial) {
+int getLiveAssertionCount() {
 
-	int stateBitCount = getStateBitCount();
+	// return {LIVE_ASSERTION_COUNT};
 
-	int inputBitCount = getInputBitCount();
+}
+
+uint64_t getResetState() {
 
-	int DMASK = 1 << 31;
+	// return {RESET_STATE};
 
-	// method parameters:
+}
 
-	const int STATE_BUF_SIZE = 1 << stateBitCount;
+double getTime() {
 
-	const int DISCOVERED_BUF_SIZE = 1 << stateBitCount - 2;
+	timespec t;
 
-	bool printStateList = false;
+	clock_gettime(CLOCK_MONOTONIC, &t);
 
-	// memory usage checks:
+	return t.tv_sec + t.tv_nsec / 1e9;
 
-	if (stateBitCount > 29) {
-		fprintf(stderr, "Memory requirements exceed 4 GB (state bits = %d)", stateBitCount);
-		return; // add error code
-	}
+}
 
-	if (inputBitCount > 32) {
-		fprintf(stderr, "Input vector not representable as int type (input bits = %d)", inputBitCount);
-		return; // add error code
-	}
+string getByteSize(uint64_t bytes) {
 
-	// search variables
+	char str[32];
 
-	int *toVisitArr = new int[1];
+	if (bytes < 1024)
+		snprintf(str, sizeof(str), "%lu bytes", (unsigned long) bytes);
+	else if (bytes < 1024 * 1024)
+		snprintf(str, sizeof(str), "%1.2f KB", bytes / 1024.0);
+	else if (bytes < 1024 * 1024 * 1024)
+		snprintf(str, sizeof(str), "%1.2f MB", bytes / 1024.0 / 1024);
+	else
+		snprintf(str, sizeof(str), "%1.2f GB", bytes / 1024.0 / 1024 / 1024);
 
-	toVisitArr[0] = initial;
+	return str;
 
-	const int L = 0;
+}
 
-	const int H = -1;
+// Transition function
+//
+// All engines evaluate the design through evaluate(), which the compiler
+// inlines into their search loops.
 
-	int toVisitArrOccupied = 1;
+struct Step {
 
-	int distance = 0;
+	uint64_t next; // next state
 
-	int in = 0; // input vector
+	int assumptions; // H if all assumptions hold
 
-	int statesDiscovered = 0;
+	int assertions; // H if all assertions hold
 
-	int statesVisited = -1; // to offset the two visits to `initial`
+	int armed; // H if any live assertion is armed
 
-	bool counter_example_found = false;
+};
 
-	int bufSelector = 0;
+static inline Step evaluate(uint64_t state, uint32_t in, int distance) {
 
-	int state = initial;
+	// int {STATE_BIT} = -(int) (state >> {STATE_BIT_INDEX} & 1);
 
-	int assumptions;
+	// int {INPUT_BIT} = -(int) (in >> {INPUT_BIT_INDEX} & 1);
 
-	int assertions;
+	// int {NON_STATE_BIT};
 
-	// state LUT and discovery arrays
+	// {COMB_ASSIGN}
 
-	int *parentState = new int[STATE_BUF_SIZE];
+	Step s;
 
-	int *inputVector = new int[STATE_BUF_SIZE];
+	s.next = 0;
 
-	int **buf = new int*[2];
+	// s.next |= (uint64_t) ({NEXT_STATE_BIT} & 1) << {STATE_BIT_INDEX};
 
-	for (int k = 0; k < 2; k++)
-		buf[k] = new int[DISCOVERED_BUF_SIZE];
+	// properties are only checked once their delay lines are filled
 
-	memset(parentState, 0, STATE_BUF_SIZE<<2);
+	s.assumptions = H;
 
-	memset(inputVector, 0, STATE_BUF_SIZE<<2);
+	// s.assumptions &= {ASSUMPTION} | (distance < {MAXDELAY} ? H : L);
 
-	// net declarations
+	s.assertions = H;
 
-	// int {STATE_BIT} = -(initial >> {STATE_BIT_INDEX} & 1);
+	// s.assertions &= {ASSERTION} | (distance < {MAXDELAY} ? H : L);
 
-	// int {NON_STATE_BIT};
+	s.armed = L;
 
-	printf("Starting search ...\n");
+	// s.armed |= {LIVE_ASSERTION};
 
-	timespec startTime, endTime;
+	return s;
 
-	clock_gettime(CLOCK_PROCESS_CPUTIME_ID, &startTime);
+}
 
-	search_loop: while (toVisitArrOccupied > 0) {
+// LUT engine
+//
+// Each BFS level is split across threads, which record discovered states
+// in `links` using compare-and-swap (as the parallel search of the Java
+// model does). An entry packs the parent state and input vector of a state:
+//
+// bit 63     : FFLAG, set once the level that discovered the state is
+//              complete (entry is final)
+// bit 62     : DFLAG, state is discovered
+// bits 61-32 : parent state
+// bits 31-0  : input vector
+//
+// The smallest (parent, input) entry of a state and the smallest (state,
+// input) violation of a level win, so counter-examples do not depend on the
+// number of threads.
 
-		bufSelector = 1 - bufSelector;
+const uint64_t FFLAG = 1ULL << 63;
 
-		int* toVisitNextArr = buf[bufSelector];
+const uint64_t DFLAG = 1ULL << 62;
 
-		int toVisitNextArrOccupied = 0;
+const uint64_t NO_VIOLATION = UINT64_MAX;
 
-		for (int i1 = 0; i1 < toVisitArrOccupied; i1++) {
+// smaller frontiers are expanded by one thread (not worth starting a team)
 
-			state = toVisitArr[i1];
+const long MIN_PARALLEL_FRONTIER = 256;
 
-			statesVisited++;
+static inline void lowerTo(uint64_t *target, uint64_t key) {
 
-			// {STATE_BIT} = -(state >> {STATE_BIT_INDEX} & 1);
+	uint64_t current = __atomic_load_n(target, __ATOMIC_RELAXED);
 
-			int inputPermutes = 1 << (inputBitCount);
+	while (key < current
+			&& !__atomic_compare_exchange_n(target, &current, key, true, __ATOMIC_RELAXED, __ATOMIC_RELAXED))
+		;
 
-			for (in = 0; in < inputPermutes; in++) {
+}
 
-				// int {INPUT_BIT} = -(in >> {INPUT_BIT_INDEX} & 1);
+bool exploreSpaceLut(uint64_t initial, vector<uint32_t> &counterExample) {
 
-				// {COMB_ASSIGN}
+	int stateBitCount = getStateBitCount();
 
+	int inputBitCount = getInputBitCount();
 
-				// check assumptions
+	if (stateBitCount > 29)
+		fail("Memory requirements exceed 4 GB (state bits = %d), use --hash", stateBitCount);
 
-				assumptions = H; // intersection of assumptions
+	if (inputBitCount > 30)
+		fail("Number of input bits exceeds 30");
 
-				// assumptions &= {ASSUMPTION} | (distance < {MAXDELAY} ? H : L);
+	const uint64_t STATE_BUF_SIZE = 1ULL << stateBitCount;
 
-				if (assumptions == H) {
+	const uint32_t inputPermutes = 1U << inputBitCount;
 
-					// check assertions
+	uint64_t *links = (uint64_t *) calloc(STATE_BUF_SIZE, sizeof(uint64_t));
 
-					assertions = H; // intersection of assertions
+	if (links == NULL)
+		fail("Could not allocate state LUT (%s)", getByteSize(8 * STATE_BUF_SIZE).c_str());
 
-					// assertions &= {ASSERTION} | (distance < {MAXDELAY} ? H : L);
+	links[initial] = FFLAG | DFLAG | initial << 32;
 
-					if (assertions == L) {
+	vector<uint32_t> frontier(1, (uint32_t) initial), nextFrontier;
 
-						counter_example_found = true;
+	uint64_t violation = NO_VIOLATION;
 
-						break;
+	int distance = 0;
 
-					}
+	uint64_t statesVisited = 0;
+
+	uint64_t statesDiscovered = 0;
+
+	printf("Starting search (%d threads) ...\n", threads);
+
+	double startTime = getTime();
+
+	while (!frontier.empty()) {
+
+		nextFrontier.clear();
+
+		long frontierSize = frontier.size();
+
+		#pragma omp parallel num_threads(threads) if (frontierSize >= MIN_PARALLEL_FRONTIER)
+		{
+
+			vector<uint32_t> discovered;
+
+			#pragma omp for schedule(dynamic, 64)
+			for (long i1 = 0; i1 < frontierSize; i1++) {
+
+				uint64_t state = frontier[i1];
+
+				// states larger than the smallest violating state of this
+				// level cannot change the reported counter-example
+
+				if (state > __atomic_load_n(&violation, __ATOMIC_RELAXED) >> 32)
+					continue;
+
+				for (uint32_t in = 0; in < inputPermutes; in++) {
+
+					Step s = evaluate(state, in, distance);
+
+					if (s.assumptions != H)
+						continue;
 
-					int nxState = 0;
+					if (s.assertions == L) {
 
-					// nxState |= {NEXT_STATE_BIT} & (1 << {STATE_BIT_INDEX});
+						// remaining inputs of this state have larger keys
 
-					// Note: we check if state is discovered only if all
-					// assumptions hold. This avoids accessing
-					// `parentState` when it's not really needed.
+						lowerTo(&violation, state << 32 | in);
 
-					bool undiscovered = (parentState[nxState] & DMASK) == 0;
+						break;
+
+					}
+
+					uint64_t key = DFLAG | state << 32 | in;
 
-					if (undiscovered) {
+					uint64_t *link = links + s.next;
 
-						statesDiscovered++;
+					uint64_t current = __atomic_load_n(link, __ATOMIC_RELAXED);
 
-						toVisitNextArr[toVisitNextArrOccupied] = nxState;
+					while (current == 0 || ((current & FFLAG) == 0 && key < current)) {
 
-						toVisitNextArrOccupied++;
+						if (__atomic_compare_exchange_n(link, &current, key, false, __ATOMIC_RELAXED,
+								__ATOMIC_RELAXED)) {
 
-						parentState[nxState] = state | DMASK;
+							if (current == 0)
+								discovered.push_back((uint32_t) s.next);
 
-						inputVector[nxState] = in;
+							break;
+
+						}
 
 					}
 
@@ -176,98 +313,960 @@ void exploreSpace(int initial) {
 
 			}
 
-			if (counter_example_found)
-				break;
+			#pragma omp critical
+			nextFrontier.insert(nextFrontier.end(), discovered.begin(), discovered.end());
 
 		}
 
-		if (counter_example_found)
+		statesVisited += frontierSize;
+
+		if (violation != NO_VIOLATION)
 			break;
 
-		toVisitArr = toVisitNextArr;
+		statesDiscovered += nextFrontier.size();
+
+		// sorting keeps the LUT accesses of the next level in order (and
+		// makes skipping states after a violation deterministic)
+
+		sort(nextFrontier.begin(), nextFrontier.end());
 
-		toVisitArrOccupied = toVisitNextArrOccupied;
+		for (size_t i = 0; i < nextFrontier.size(); i++)
+			links[nextFrontier[i]] |= FFLAG;
+
+		frontier.swap(nextFrontier);
 
 		distance++;
 
 	}
 
-	clock_gettime(CLOCK_PROCESS_CPUTIME_ID, &endTime);
+	double searchTime = getTime() - startTime;
+
+	printf("Completed search in %f seconds\n", searchTime);
 
-	delete parentState;
+	printf("State bits                     : %d\n", stateBitCount);
 
-	delete inputVector;
+	printf("Input bits                     : %d\n", inputBitCount);
 
-	delete buf[0];
+	printf("Threads                        : %d\n", threads);
 
-	delete buf[1];
+	printf("State LUT                      : %s\n", getByteSize(8 * STATE_BUF_SIZE).c_str());
 
- 	double seconds = (endTime.tv_sec - startTime.tv_sec);
+	printf("States visited                 : %lu\n", (unsigned long) statesVisited);
 
- 	double nanoSeconds = (endTime.tv_nsec - startTime.tv_nsec);
+	printf("States discovered              : %lu\n", (unsigned long) statesDiscovered);
 
-	double searchTime = seconds + nanoSeconds / 1e9;
+	if (violation == NO_VIOLATION) {
 
-	printf("Completed search in %f seconds\n", searchTime);
+		printf("Assertion proven, no counter-examples were found.\n");
+
+		free(links);
+
+		return false;
+
+	}
+
+	printf("Counter-example found in %d cycles\n", distance);
+
+	counterExample.assign(distance + 1, 0);
+
+	uint64_t currentState = violation >> 32;
+
+	counterExample[distance] = (uint32_t) violation;
+
+	for (int j = distance - 1; j >= 0; j--) {
+
+		uint64_t link = links[currentState];
+
+		counterExample[j] = (uint32_t) link;
+
+		currentState = link >> 32 & 0x3fffffff;
+
+	}
+
+	free(links);
+
+	return true;
+
+}
+
+// State set
+//
+// Open addressing (linear probing) table of states with their flags in the
+// top 4 bits (PRESENT marks a used slot), grown when half full. The hash
+// engine also keeps the parent state and input vector of each state
+// (links) to build counter-examples.
+
+class StateSet {
+
+public:
+
+	static const uint64_t PRESENT = 1ULL << 63;
+
+	static const uint64_t DISCOVERED = 1ULL << 62; // by the outer search
+
+	static const uint64_t ON_STACK = 1ULL << 61; // on the outer stack
+
+	static const uint64_t INNER = 1ULL << 60; // reached by an inner search
+
+	static const uint64_t FLAGS = PRESENT | DISCOVERED | ON_STACK | INNER;
+
+	StateSet(bool withLinks) :
+			withLinks(withLinks), slots(1 << 16), parents(withLinks ? 1 << 16 : 0), inputs(withLinks ? 1 << 16 : 0),
+			count(0) {
+
+	}
+
+	uint64_t getFlags(uint64_t state) const {
+
+		return slots[find(state)] & ~PRESENT & FLAGS;
+
+	}
+
+	bool contains(uint64_t state) const {
+
+		return slots[find(state)] != 0;
+
+	}
+
+	void setFlags(uint64_t state, uint64_t flags) {
+
+		slots[reserve(state)] = state | flags | PRESENT;
+
+	}
+
+	void insert(uint64_t state, uint64_t parent, uint32_t input) {
+
+		size_t i = reserve(state);
+
+		slots[i] = state | PRESENT;
+
+		parents[i] = parent;
+
+		inputs[i] = input;
+
+	}
+
+	void getLink(uint64_t state, uint64_t &parent, uint32_t &input) const {
+
+		size_t i = find(state);
+
+		parent = parents[i];
+
+		input = inputs[i];
 
-	printf("State bits                     : %d\n", getStateBitCount());
+	}
+
+	size_t size() const {
+
+		return count;
+
+	}
+
+	uint64_t getBytes() const {
+
+		return (8 + (withLinks ? 12 : 0)) * (uint64_t) slots.size();
+
+	}
+
+private:
+
+	bool withLinks;
+
+	vector<uint64_t> slots, parents;
+
+	vector<uint32_t> inputs;
+
+	size_t count;
+
+	static inline uint64_t mix(uint64_t key) {
+
+		// finalizer of MurmurHash3 (64-bit)
+
+		key ^= key >> 33;
+		key *= 0xff51afd7ed558ccdULL;
+		key ^= key >> 33;
+		key *= 0xc4ceb9fe1a85ec53ULL;
+		key ^= key >> 33;
+
+		return key;
+
+	}
+
+	size_t find(uint64_t state) const {
+
+		// returns the slot of state, or the empty slot where it belongs
+
+		size_t mask = slots.size() - 1;
+
+		size_t i = mix(state) & mask;
+
+		while (slots[i] != 0 && (slots[i] & ~FLAGS) != state)
+			i = (i + 1) & mask;
+
+		return i;
+
+	}
+
+	size_t reserve(uint64_t state) {
+
+		// returns the slot of state, adding it if absent
+
+		size_t i = find(state);
+
+		if (slots[i] == 0) {
 
-	printf("Input bits                     : %d\n", getInputBitCount());
+			if (2 * (count + 1) > slots.size()) {
 
-	//printf("State LUT                      : %s\n", getByteSize(8 * ((long)STATE_BUF_SIZE)));
+				grow();
 
-	//printf("State discovery buffer         : %s\n", getByteSize(8 * ((long)DISCOVERED_BUF_SIZE)));
+				i = find(state);
 
-	printf("States visited                 : %d\n", statesVisited);
+			}
+
+			count++;
+
+		}
+
+		return i;
+
+	}
+
+	void grow() {
 
-	printf("States discovered              : %d\n", statesDiscovered);
+		vector<uint64_t> oldSlots(2 * slots.size()), oldParents(withLinks ? 2 * slots.size() : 0);
 
-	if (counter_example_found) {
+		vector<uint32_t> oldInputs(withLinks ? 2 * slots.size() : 0);
 
-		 printf("Counter-example found in %d cycles\n", distance);
+		oldSlots.swap(slots);
 
-		 //int currentState = state; // violation state
+		oldParents.swap(parents);
 
-		 //int transitions = distance;
+		oldInputs.swap(inputs);
 
-		 //Stack<Integer> rList = new Stack<Integer>();
+		for (size_t j = 0; j < oldSlots.size(); j++) {
 
-		 //rList.push(in);
+			if (oldSlots[j] == 0)
+				continue;
 
-		 //while (transitions > 0) {
+			size_t i = find(oldSlots[j] & ~FLAGS);
 
-			// if (printStateList)
-			//	 printf("currentState = " + getBinary(currentState, stateBitCount)
-			//		 + ", reached from parent using input vector "
-			//		 + getBinary(inputVector[currentState], inputBitCount));
+			slots[i] = oldSlots[j];
 
-			// rList.add(inputVector[currentState]);
+			if (withLinks) {
+
+				parents[i] = oldParents[j];
+
+				inputs[i] = oldInputs[j];
+
+			}
+
+		}
+
+	}
 
-			// currentState = parentState[currentState] & ~DMASK;
+};
 
-			// transitions--;
-		 //}
+// Hash engine
+//
+// The state set is read-only while a BFS level is expanded: each thread
+// collects the successors that are not in the set as (state, parent,
+// input) candidates. Between levels the candidates are sorted, the
+// smallest (parent, input) of each new state is kept and the new states
+// are added to the set, forming the next (sorted) frontier. As with the LUT
+// engine, counter-examples do not depend on the number of threads.
 
-		 //int[] result = new int[distance + 1];
+struct Candidate {
 
-		 //for (int j = 0; j < distance + 1; j++)
-			// result[j] = rList.pop();
+	uint64_t state, parent;
 
-		 //return result;
+	uint32_t input;
 
-	 } else {
+	bool operator<(const Candidate &o) const {
 
-		 printf("Assertion proven, no counter-examples were found.");
+		if (state != o.state)
+			return state < o.state;
 
-		 //return null;
+		return parent != o.parent ? parent < o.parent : input < o.input;
 
 	}
 
+};
+
+static void compact(vector<Candidate> &candidates) {
+
+	// sorts candidates and keeps the first of each state
+
+	sort(candidates.begin(), candidates.end());
+
+	size_t unique = 0;
+
+	for (size_t j = 0; j < candidates.size(); j++)
+		if (j == 0 || candidates[j].state != candidates[j - 1].state)
+			candidates[unique++] = candidates[j];
+
+	candidates.resize(unique);
+
 }
 
-int main()
-{
-	exploreSpace(0);
+bool exploreSpaceHash(uint64_t initial, vector<uint32_t> &counterExample) {
+
+	int stateBitCount = getStateBitCount();
+
+	int inputBitCount = getInputBitCount();
+
+	// the top 4 bits of state set entries are flags
+
+	if (stateBitCount > 60)
+		fail("Number of state bits exceeds 60");
+
+	if (inputBitCount > 30)
+		fail("Number of input bits exceeds 30");
+
+	const uint32_t inputPermutes = 1U << inputBitCount;
+
+	// candidate buffers of threads are compacted when they reach this size
+
+	const size_t COMPACT_SIZE = 1 << 20;
+
+	StateSet visited(true);
+
+	visited.insert(initial, 0, 0);
+
+	vector<uint64_t> frontier(1, initial);
+
+	vector<Candidate> candidates;
+
+	uint64_t violationState = NO_VIOLATION;
+
+	uint32_t violationInput = 0;
+
+	int distance = 0;
+
+	uint64_t statesVisited = 0;
+
+	uint64_t statesDiscovered = 0;
+
+	size_t peakFrontier = 1;
+
+	printf("Starting search (%d threads) ...\n", threads);
+
+	double startTime = getTime();
+
+	while (!frontier.empty()) {
+
+		candidates.clear();
+
+		long frontierSize = frontier.size();
+
+		#pragma omp parallel num_threads(threads) if (frontierSize >= MIN_PARALLEL_FRONTIER)
+		{
+
+			vector<Candidate> found;
+
+			uint64_t localState = NO_VIOLATION;
+
+			uint32_t localInput = 0;
+
+			#pragma omp for schedule(dynamic, 64)
+			for (long i1 = 0; i1 < frontierSize; i1++) {
+
+				uint64_t state = frontier[i1];
+
+				if (state > __atomic_load_n(&violationState, __ATOMIC_RELAXED))
+					continue;
+
+				for (uint32_t in = 0; in < inputPermutes; in++) {
+
+					Step s = evaluate(state, in, distance);
+
+					if (s.assumptions != H)
+						continue;
+
+					if (s.assertions == L) {
+
+						if (state < localState) {
+
+							localState = state;
+
+							localInput = in;
+
+						}
+
+						lowerTo(&violationState, state);
+
+						break;
+
+					}
+
+					if (visited.contains(s.next))
+						continue;
+
+					Candidate c = { s.next, state, in };
+
+					found.push_back(c);
+
+					if (found.size() == COMPACT_SIZE)
+						compact(found);
+
+				}
+
+			}
+
+			compact(found);
+
+			#pragma omp critical
+			{
+
+				candidates.insert(candidates.end(), found.begin(), found.end());
+
+				if (localState < violationState || (localState == violationState && localInput < violationInput)) {
+
+					violationState = localState;
+
+					violationInput = localInput;
+
+				}
+
+			}
+
+		}
+
+		statesVisited += frontierSize;
+
+		if (violationState != NO_VIOLATION)
+			break;
+
+		compact(candidates);
+
+		frontier.resize(candidates.size());
+
+		for (size_t j = 0; j < candidates.size(); j++) {
+
+			visited.insert(candidates[j].state, candidates[j].parent, candidates[j].input);
+
+			frontier[j] = candidates[j].state;
+
+		}
+
+		statesDiscovered += frontier.size();
+
+		peakFrontier = max(peakFrontier, frontier.size());
+
+		distance++;
+
+	}
+
+	double searchTime = getTime() - startTime;
+
+	printf("Completed search in %f seconds\n", searchTime);
+
+	printf("State bits                     : %d\n", stateBitCount);
+
+	printf("Input bits                     : %d\n", inputBitCount);
+
+	printf("Threads                        : %d\n", threads);
+
+	printf("State set                      : %s\n", getByteSize(visited.getBytes()).c_str());
+
+	printf("Frontier size (peak)           : %lu\n", (unsigned long) peakFrontier);
+
+	printf("States visited                 : %lu\n", (unsigned long) statesVisited);
+
+	printf("States discovered              : %lu\n", (unsigned long) statesDiscovered);
+
+	if (violationState == NO_VIOLATION) {
+
+		printf("Assertion proven, no counter-examples were found.\n");
+
+		return false;
+
+	}
+
+	printf("Counter-example found in %d cycles\n", distance);
+
+	counterExample.assign(distance + 1, 0);
+
+	uint64_t currentState = violationState;
+
+	counterExample[distance] = violationInput;
+
+	for (int j = distance - 1; j >= 0; j--)
+		visited.getLink(currentState, currentState, counterExample[j]);
+
+	return true;
+
+}
+
+// DFS engine
+//
+// Nested DFS on the product of the state graph with a one-bit liveness
+// monitor (layer), as in the DFS model (template2.j): in layer 0 the
+// monitor may move to layer 1 on any transition and in layer 1 it only
+// stays in armed states. After finishing a layer 1 state, an inner search
+// from it looks for a path back to the outer stack; such a cycle violates
+// a live assertion. Product states are `state | layer bit`.
+
+struct StateStack {
+
+	// product states and the next transition of each
+
+	vector<uint64_t> states;
+
+	vector<uint32_t> iters;
+
+	size_t maxSize = 0;
+
+	void push(uint64_t state, uint32_t iter) {
+
+		states.push_back(state);
+
+		iters.push_back(iter);
+
+		maxSize = max(maxSize, states.size());
+
+	}
+
+	void pop() {
+
+		states.pop_back();
+
+		iters.pop_back();
+
+	}
+
+	size_t size() const {
+
+		return states.size();
+
+	}
+
+};
+
+bool exploreSpaceDfs(uint64_t initial, vector<uint32_t> &counterExample) {
+
+	int stateBitCount = getStateBitCount();
+
+	int inputBitCount = getInputBitCount();
+
+	const bool liveness = getLiveAssertionCount() > 0;
+
+	const int layerBits = liveness ? 1 : 0;
+
+	const uint64_t STATE_MASK = (1ULL << stateBitCount) - 1;
+
+	const uint64_t LAYER1 = liveness ? 1ULL << stateBitCount : 0;
+
+	if (inputBitCount + layerBits > 30)
+		fail("Number of input bits exceeds %d", 30 - layerBits);
+
+	if (stateBitCount + layerBits > 60)
+		fail("Number of state bits exceeds %d", 60 - layerBits);
+
+	// stack entries hold the input vector of the next transition, shifted
+	// left by one when checking liveness to make room for the layer of the
+	// successor (layer 1 states only have layer 1 successors)
+
+	const uint32_t inputLimit = (1U << inputBitCount) << layerBits;
+
+	StateSet visited(false);
+
+	StateStack stack, innerStack; // inner stack holds layer 1 states
+
+	stack.push(initial, 0);
+
+	visited.setFlags(initial, StateSet::DISCOVERED | StateSet::ON_STACK);
+
+	uint64_t loopTarget = 0; // outer stack state closing a violating cycle
+
+	bool livenessViolation = false;
+
+	uint64_t statesDiscovered = 1;
+
+	uint64_t statesVisited = 0;
+
+	uint64_t innerSearches = 0;
+
+	uint64_t innerStatesVisited = 0;
+
+	printf("Starting search ...\n");
+
+	double startTime = getTime();
+
+	while (stack.size() > 0) {
+
+		bool inner = innerStack.size() > 0;
+
+		StateStack &top = inner ? innerStack : stack;
+
+		uint64_t current = top.states.back();
+
+		uint32_t currentInputVec = top.iters.back();
+
+		bool layer1 = (current & LAYER1) != 0;
+
+		if (currentInputVec < inputLimit) {
+
+			top.iters.back() = currentInputVec + (layer1 ? 2 : 1);
+
+			int distance = stack.size() - 1 + innerStack.size();
+
+			Step s = evaluate(current & STATE_MASK, currentInputVec >> layerBits, distance);
+
+			if (layer1 && s.armed == L) {
+
+				// the monitor cannot stay in layer 1 (pop)
+
+				if (!inner) {
+
+					statesVisited++;
+
+					visited.setFlags(current, visited.getFlags(current) & ~StateSet::ON_STACK);
+
+				}
+
+				top.pop();
+
+				continue;
+
+			}
+
+			if (s.assumptions != H)
+				continue;
+
+			if (!inner) {
+
+				if (s.assertions == L) {
+
+					printf("violation of (non-liveness) property\n");
+
+					break;
+
+				}
+
+				uint64_t next = s.next | ((currentInputVec & layerBits) == 0 ? LAYER1 : 0);
+
+				uint64_t flags = visited.getFlags(next);
+
+				if ((flags & StateSet::DISCOVERED) == 0) {
+
+					statesDiscovered++;
+
+					stack.push(next, 0);
+
+					visited.setFlags(next, flags | StateSet::DISCOVERED | StateSet::ON_STACK);
+
+				} else if (layer1 && (flags & StateSet::ON_STACK) != 0) {
+
+					// layer 1 transition into the stack
+
+					loopTarget = next;
+
+					livenessViolation = true;
+
+					break;
+
+				}
+
+			} else {
+
+				uint64_t next = s.next | LAYER1;
+
+				uint64_t flags = visited.getFlags(next);
+
+				if ((flags & StateSet::ON_STACK) != 0) {
+
+					// inner search reached the outer stack
+
+					loopTarget = next;
+
+					livenessViolation = true;
+
+					break;
+
+				}
+
+				if ((flags & StateSet::INNER) == 0) {
+
+					visited.setFlags(next, flags | StateSet::INNER);
+
+					innerStatesVisited++;
+
+					innerStack.push(next, 0);
+
+				}
+
+			}
+
+		} else if (inner) {
+
+			innerStack.pop();
+
+		} else if (layer1 && (visited.getFlags(current) & StateSet::INNER) == 0) {
+
+			// finished an (armed) layer 1 state, start an inner search from
+			// it
+
+			visited.setFlags(current, visited.getFlags(current) | StateSet::INNER);
+
+			innerSearches++;
+
+			innerStatesVisited++;
+
+			innerStack.push(current, 0);
+
+		} else {
+
+			statesVisited++;
+
+			visited.setFlags(current, visited.getFlags(current) & ~StateSet::ON_STACK);
+
+			stack.pop();
+
+		}
+
+	}
+
+	double searchTime = getTime() - startTime;
+
+	printf("Completed search in %f seconds\n", searchTime);
+
+	printf("State bits                     : %d\n", stateBitCount);
+
+	printf("Input bits                     : %d\n", inputBitCount);
+
+	printf("States visited                 : %lu\n", (unsigned long) statesVisited);
+
+	printf("States discovered              : %lu\n", (unsigned long) statesDiscovered);
+
+	if (liveness) {
+
+		printf("Inner searches                 : %lu\n", (unsigned long) innerSearches);
+
+		printf("States visited (inner)         : %lu\n", (unsigned long) innerStatesVisited);
+
+	}
+
+	printf("Visited set                    : %s\n", getByteSize(visited.getBytes()).c_str());
+
+	printf("Max stack depth                : %lu\n", (unsigned long) max(stack.maxSize, innerStack.maxSize));
+
+	if (stack.size() == 0) {
+
+		printf("Assertion proven, no counter-examples were found.\n");
+
+		return false;
+
+	}
+
+	// input vectors of the outer stack, the inner stack (except its first
+	// state, the top of the outer stack) and the last cycle
+
+	size_t stackSize = stack.size();
+
+	size_t innerStackSize = innerStack.size();
+
+	size_t innerCycles = innerStackSize > 0 ? innerStackSize - 1 : 0;
+
+	size_t cycles = stackSize + innerCycles + (livenessViolation ? 1 : 0);
+
+	counterExample.assign(cycles, 0);
+
+	for (size_t j = 0; j < stackSize; j++) {
+
+		uint64_t s = stack.states[j];
+
+		uint32_t next = j == stackSize - 1 && innerStackSize > 0 ? innerStack.iters[0] : stack.iters[j];
+
+		counterExample[j] = (next - ((s & LAYER1) != 0 ? 2 : 1)) >> layerBits;
+
+	}
+
+	for (size_t j = 1; j < innerStackSize; j++)
+		counterExample[stackSize + j - 1] = (innerStack.iters[j] - 2) >> layerBits;
+
+	if (livenessViolation) {
+
+		loopStart = 0;
+
+		while (stack.states[loopStart] != loopTarget)
+			loopStart++;
+
+		counterExample[cycles - 1] = counterExample[loopStart];
+
+		printf("found violation of live assertion (loop of %d cycles)\n", (int) (cycles - 1 - loopStart));
+
+	}
+
+	return true;
+
+}
+
+// Counter-examples
+
+struct Waveforms {
+
+	vector<string> names;
+
+	vector<vector<int> > values;
+
+	void add(const char *name, const vector<int> &value) {
+
+		names.push_back(name);
+
+		values.push_back(value);
+
+	}
+
+};
+
+void simulate(uint64_t initial, const vector<uint32_t> &inputs) {
+
+	int cycles = inputs.size();
+
+	// vector<int> {STATE_BIT}(cycles);
+
+	// vector<int> {INPUT_BIT}(cycles);
+
+	// {STATE_BIT}[0] = -(int) (initial >> {STATE_BIT_INDEX} & 1);
+
+	// vector<int> {NON_STATE_BIT}(cycles);
+
+	for (int i = 0; i < cycles; i++) {
+
+		// {INPUT_BIT}[i] = -(int) (inputs[i] >> {INPUT_BIT_INDEX} & 1);
+
+		// {COMB_ASSIGN} {POSTFIX1=[i]} {POSTFIX2=[i]}
+
+		if (i < cycles - 1) {
+
+			// {STATE_BIT}[i + 1] = {NEXT_STATE_BIT}[i];
+
+		}
+
+	}
+
+	Waveforms waveforms;
+
+	// waveforms.add("{STATE_BIT_ORG}", {STATE_BIT});
+
+	// waveforms.add("{INPUT_BIT_ORG}", {INPUT_BIT});
+
+	// waveforms.add("{NON_STATE_BIT_ORG}", {NON_STATE_BIT});
+
+	if (loopStart != -1) {
+
+		// lassos are saved with a "*loop" signal that is high in the
+		// cycles of the loop (the last cycle repeats cycle loopStart)
+
+		vector<int> loop(cycles, L);
+
+		fill(loop.begin() + loopStart, loop.end() - 1, H);
+
+		waveforms.add("*loop", loop);
+
+	}
+
+	if (txtFile == NULL)
+		return;
+
+	size_t maxSigName = 0;
+
+	for (size_t i = 0; i < waveforms.names.size(); i++)
+		maxSigName = max(maxSigName, waveforms.names[i].size());
+
+	printf("Saving counter-example waveform data (plain-text) to %s ...\n", txtFile);
+
+	FILE *fout = fopen(txtFile, "w");
+
+	if (fout == NULL)
+		fail("Could not write to %s", txtFile);
+
+	for (size_t i = 0; i < waveforms.names.size(); i++) {
+
+		fprintf(fout, "%*s : ", (int) maxSigName, waveforms.names[i].c_str());
+
+		for (int j = 0; j < cycles; j++) {
+
+			int v = waveforms.values[i][j];
+
+			fputc(v == H ? '1' : v == L ? '0' : 'x', fout);
+
+		}
+
+		fputc('\n', fout);
+
+	}
+
+	fclose(fout);
+
+}
+
+int main(int argc, char *argv[]) {
+
+	// usage:
+	// codesimulator [--txt <file>] [--hash|--dfs] [--threads <n>]
+
+	for (int i = 1; i < argc; i++) {
+
+		if (strcmp(argv[i], "--txt") == 0 && i + 1 < argc)
+			txtFile = argv[i + 1];
+
+		if (strcmp(argv[i], "--threads") == 0 && i + 1 < argc)
+			threads = atoi(argv[i + 1]);
+
+		if (strcmp(argv[i], "--hash") == 0)
+			engine = HASH;
+
+		if (strcmp(argv[i], "--dfs") == 0)
+			engine = DFS;
+
+	}
+
+	if (threads < 1)
+		fail("number of threads must be positive");
+
+	if (threads > 1 && engine == DFS)
+		fail("--threads is not supported by the DFS engine");
+
+#ifndef _OPENMP
+
+	if (threads > 1) {
+
+		printf("Built without OpenMP, using one thread\n");
+
+		threads = 1;
+
+	}
+
+#endif
+
+	if (getLiveAssertionCount() > 0 && engine != DFS)
+		printf("Live assertions are only checked by the DFS engine (--dfs)\n");
+
+	uint64_t initial = getResetState();
+
+	vector<uint32_t> counterExample;
+
+	bool found;
+
+	if (engine == LUT)
+		found = exploreSpaceLut(initial, counterExample);
+	else if (engine == HASH)
+		found = exploreSpaceHash(initial, counterExample);
+	else
+		found = exploreSpaceDfs(initial, counterExample);
+
+	if (found) {
+
+		simulate(initial, counterExample);
+
+		// 100 is a special return code for finding a counter-example but
+		// terminating successfully
+
+		return 100;
+
+	}
+
+	return 0;
 
-	return 0;
 }
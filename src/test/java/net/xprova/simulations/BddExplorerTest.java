@@ -0,0 +1,57 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BddExplorerTest {
+
+	@Test
+	public void testRandomSystems() throws Exception {
+
+		// symbolic reachability proves the assertions of safe systems and
+		// finds a shortest counter-example of unsafe ones (properties have
+		// no delays, so the first frame that reaches a state is the one
+		// that matters)
+
+		Random rnd = new Random(5);
+
+		int proofs = 0, counterExamples = 0;
+
+		for (int n = 0; n < 200; n++) {
+
+			int stateBits = 2 + rnd.nextInt(4);
+
+			TransitionSystem ts = RandomTransitionSystem.create(rnd, stateBits, rnd.nextInt(3), 10, 0);
+
+			Waveform w = new BddExplorer(ts).exploreSpace();
+
+			if (RandomTransitionSystem.isSafe(ts)) {
+
+				assertNull(w);
+
+				proofs++;
+
+			} else {
+
+				int expected = RandomTransitionSystem.getShortestViolation(ts, 1 << stateBits);
+
+				assertEquals(expected + 1, w.getCycles());
+
+				RandomTransitionSystem.checkCounterExample(ts, w);
+
+				counterExamples++;
+
+			}
+
+		}
+
+		assertTrue(proofs > 30 && counterExamples > 30);
+
+	}
+
+}
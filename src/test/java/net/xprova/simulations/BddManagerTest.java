@@ -0,0 +1,311 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BddManagerTest {
+
+	// Functions of VARS variables are checked against truth tables held in
+	// a long (bit a is the value of the function for the assignment a, in
+	// which bit v is the value of variable v)
+
+	private static final int VARS = 6;
+
+	private static final int ASSIGNMENTS = 1 << VARS;
+
+	private static long getVarTable(int v) {
+
+		long t = 0;
+
+		for (int a = 0; a < ASSIGNMENTS; a++)
+			t |= (a >> v & 1) == 1 ? 1L << a : 0;
+
+		return t;
+
+	}
+
+	private static long existsTable(long t, int v) {
+
+		// t with the value of variable v replaced by its other value, or-ed
+		// with t
+
+		long m = getVarTable(v);
+
+		int shift = 1 << v;
+
+		return t | (t & m) >>> shift | (t & ~m) << shift;
+
+	}
+
+	private static boolean[] getAssignment(int a) {
+
+		boolean[] result = new boolean[VARS];
+
+		for (int v = 0; v < VARS; v++)
+			result[v] = (a >> v & 1) == 1;
+
+		return result;
+
+	}
+
+	private static void checkFunction(BddManager bdd, int f, long table, HashMap<Long, Integer> canonical) {
+
+		for (int a = 0; a < ASSIGNMENTS; a++)
+			assertEquals((table >> a & 1) == 1, bdd.eval(f, getAssignment(a)));
+
+		int[] allVars = new int[VARS];
+
+		for (int v = 0; v < VARS; v++)
+			allVars[v] = v;
+
+		assertEquals(Long.bitCount(table), (long) bdd.satCount(f, allVars));
+
+		// counting over the support only
+
+		boolean[] support = bdd.support(f);
+
+		ArrayList<Integer> supportVars = new ArrayList<Integer>();
+
+		for (int v = 0; v < VARS; v++) {
+
+			if (support[v])
+				supportVars.add(v);
+			else
+				assertEquals(table, existsTable(table, v)); // f does not depend on v
+
+		}
+
+		int[] sv = new int[supportVars.size()];
+
+		for (int i = 0; i < sv.length; i++)
+			sv[i] = supportVars.get(i);
+
+		assertEquals(Long.bitCount(table) >> (VARS - sv.length), (long) bdd.satCount(f, sv));
+
+		boolean[] one = bdd.satOne(f);
+
+		if (table == 0)
+			assertNull(one);
+		else
+			assertTrue(bdd.eval(f, one));
+
+		// functions with the same truth table are the same node
+
+		Integer node = canonical.get(table);
+
+		if (node == null)
+			canonical.put(table, f);
+		else
+			assertEquals((int) node, f);
+
+	}
+
+	private static void runRandomOperations(long seed, boolean reorder) {
+
+		// builds random functions from earlier ones and checks all
+		// functions built so far after each batch of operations (and after
+		// reordering, when enabled)
+
+		Random rnd = new Random(seed);
+
+		BddManager bdd = new BddManager(1024);
+
+		for (int v = 0; v < VARS; v++)
+			bdd.newVar();
+
+		ArrayList<Integer> functions = new ArrayList<Integer>();
+
+		ArrayList<Long> tables = new ArrayList<Long>();
+
+		functions.add(BddManager.FALSE);
+
+		tables.add(0L);
+
+		functions.add(BddManager.TRUE);
+
+		tables.add(-1L);
+
+		for (int v = 0; v < VARS; v++) {
+
+			functions.add(bdd.ref(bdd.ithVar(v)));
+
+			tables.add(getVarTable(v));
+
+		}
+
+		ArrayList<int[]> groups = new ArrayList<int[]>();
+
+		for (int v = 0; v < VARS; v += 2)
+			groups.add(new int[] { v, v + 1 });
+
+		for (int batch = 0; batch < 20; batch++) {
+
+			for (int n = 0; n < 50; n++) {
+
+				int i = rnd.nextInt(functions.size()), j = rnd.nextInt(functions.size());
+
+				int f = functions.get(i), g = functions.get(j);
+
+				long tf = tables.get(i), tg = tables.get(j);
+
+				// existential quantification over a random set of variables
+
+				int[] cubeVars = new int[rnd.nextInt(3)];
+
+				long te = tf, teg = tf & tg;
+
+				for (int k = 0; k < cubeVars.length; k++) {
+
+					cubeVars[k] = rnd.nextInt(VARS);
+
+					te = existsTable(te, cubeVars[k]);
+
+					teg = existsTable(teg, cubeVars[k]);
+
+				}
+
+				int h, op = rnd.nextInt(7);
+
+				long th;
+
+				if (op == 0) {
+
+					h = bdd.and(f, g);
+
+					th = tf & tg;
+
+				} else if (op == 1) {
+
+					h = bdd.or(f, g);
+
+					th = tf | tg;
+
+				} else if (op == 2) {
+
+					h = bdd.xor(f, g);
+
+					th = tf ^ tg;
+
+				} else if (op == 3) {
+
+					h = bdd.not(f);
+
+					th = ~tf;
+
+				} else if (op == 4) {
+
+					int k = rnd.nextInt(functions.size());
+
+					h = bdd.ite(functions.get(k), f, g);
+
+					th = tables.get(k) & tf | ~tables.get(k) & tg;
+
+				} else if (op == 5) {
+
+					h = bdd.exists(f, bdd.cube(cubeVars));
+
+					th = te;
+
+				} else {
+
+					h = bdd.andExists(f, g, bdd.cube(cubeVars));
+
+					th = teg;
+
+				}
+
+				functions.add(bdd.ref(h));
+
+				tables.add(th);
+
+			}
+
+			if (reorder) {
+
+				bdd.reorder(groups);
+
+				// each group keeps its internal order
+
+				for (int[] grp : groups)
+					assertEquals(bdd.getLevel(grp[0]) + 1, bdd.getLevel(grp[1]));
+
+			}
+
+			HashMap<Long, Integer> canonical = new HashMap<Long, Integer>();
+
+			for (int k = 0; k < functions.size(); k++)
+				checkFunction(bdd, functions.get(k), tables.get(k), canonical);
+
+		}
+
+		if (reorder)
+			assertEquals(20, bdd.getReorderings());
+
+	}
+
+	@Test
+	public void testOperations() throws Exception {
+
+		for (long seed = 0; seed < 10; seed++)
+			runRandomOperations(seed, false);
+
+	}
+
+	@Test
+	public void testOperationsWithReordering() throws Exception {
+
+		for (long seed = 0; seed < 10; seed++)
+			runRandomOperations(seed, true);
+
+	}
+
+	@Test
+	public void testGarbageCollection() throws Exception {
+
+		// dereferenced functions are reclaimed, referenced ones survive
+
+		BddManager bdd = new BddManager(1024);
+
+		for (int v = 0; v < VARS; v++)
+			bdd.newVar();
+
+		int f = BddManager.FALSE;
+
+		long table = 0;
+
+		for (int v = 0; v < VARS; v++) {
+
+			f = bdd.xor(f, bdd.ithVar(v));
+
+			table ^= getVarTable(v);
+
+		}
+
+		bdd.ref(f);
+
+		int g = bdd.ref(bdd.and(bdd.ithVar(0), bdd.ithVar(5)));
+
+		bdd.gc();
+
+		int before = bdd.getNodeCount();
+
+		bdd.deref(g);
+
+		bdd.gc();
+
+		assertTrue(bdd.getNodeCount() < before);
+
+		checkFunction(bdd, f, table, new HashMap<Long, Integer>());
+
+		assertEquals(f, bdd.ref(bdd.xor(bdd.not(f), BddManager.TRUE)));
+
+	}
+
+}
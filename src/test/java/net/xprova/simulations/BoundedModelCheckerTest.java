@@ -0,0 +1,124 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.xprova.simulations.TransitionSystem.Gate;
+
+public class BoundedModelCheckerTest {
+
+	private static final int MAX_DEPTH = 12;
+
+	@Test
+	public void testRandomSystems() throws Exception {
+
+		// the depth of the first counter-example matches an explicit-state
+		// search of the same bound, and counter-examples replay from reset
+
+		Random rnd = new Random(3);
+
+		int found = 0, notFound = 0;
+
+		for (int n = 0; n < 300; n++) {
+
+			TransitionSystem ts = RandomTransitionSystem.create(rnd, 2 + rnd.nextInt(3), rnd.nextInt(3), 8, 2);
+
+			int expected = RandomTransitionSystem.getShortestViolation(ts, MAX_DEPTH);
+
+			BoundedModelChecker bmc = new BoundedModelChecker(ts);
+
+			boolean counterExampleFound = false;
+
+			while (bmc.getDepth() < MAX_DEPTH && !counterExampleFound)
+				counterExampleFound = bmc.step();
+
+			assertEquals(expected != -1, counterExampleFound);
+
+			if (counterExampleFound) {
+
+				assertEquals(expected, bmc.getDepth() + 1);
+
+				Waveform w = bmc.getCounterExample();
+
+				assertEquals(expected + 1, w.getCycles());
+
+				RandomTransitionSystem.checkCounterExample(ts, w);
+
+				found++;
+
+			} else {
+
+				notFound++;
+
+			}
+
+		}
+
+		assertTrue(found > 30 && notFound > 30);
+
+	}
+
+	@Test
+	public void testCounter() throws Exception {
+
+		// 3-bit counter (s0 is the least significant bit) with the assertion
+		// that it does not reach 7, found after 7 increments
+
+		TransitionSystem ts = new TransitionSystem();
+
+		ts.netNames = new String[] { "s0", "s1", "s2", "n0", "n1", "n2", "n3", "n4", "n5" };
+
+		ts.stateBitCount = 3;
+
+		ts.inputBitCount = 0;
+
+		ts.gates = new ArrayList<Gate>();
+
+		ts.gates.add(new Gate("NOT", 3, new int[] { 0 }, 0));
+
+		ts.gates.add(new Gate("XOR", 4, new int[] { 1, 0 }, 0));
+
+		ts.gates.add(new Gate("AND", 5, new int[] { 0, 1 }, 0));
+
+		ts.gates.add(new Gate("XOR", 6, new int[] { 2, 5 }, 0));
+
+		ts.gates.add(new Gate("AND", 7, new int[] { 0, 1, 2 }, 0));
+
+		ts.gates.add(new Gate("NOT", 8, new int[] { 7 }, 0));
+
+		ts.nextState = new int[] { 3, 4, 6 };
+
+		ts.resetBits = new boolean[3];
+
+		ts.assumptions = new int[0];
+
+		ts.assumptionDelays = new int[0];
+
+		ts.assertions = new int[] { 8 };
+
+		ts.assertionDelays = new int[] { 0 };
+
+		ts.liveAssertions = new int[0];
+
+		BoundedModelChecker bmc = new BoundedModelChecker(ts);
+
+		for (int d = 0; d < 7; d++)
+			assertFalse(bmc.step());
+
+		assertTrue(bmc.step());
+
+		Waveform w = bmc.getCounterExample();
+
+		assertEquals(8, w.getCycles());
+
+		RandomTransitionSystem.checkCounterExample(ts, w);
+
+	}
+
+}
@@ -0,0 +1,154 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BytecodeGeneratorTest {
+
+	private static CompiledModel compile(TransitionSystem ts) throws Exception {
+
+		return BytecodeGenerator.load("TestModel", BytecodeGenerator.generate(ts, "TestModel"));
+
+	}
+
+	private static void checkEvaluation(TransitionSystem ts, CompiledModel model) {
+
+		// every net, next state and property result of the compiled model
+		// matches a direct evaluation of the TransitionSystem, for all
+		// states and inputs
+
+		int[] nets = new int[ts.getNetCount()];
+
+		for (int s = 0; s < 1 << ts.stateBitCount; s++) {
+
+			for (int in = 0; in < 1 << ts.inputBitCount; in++) {
+
+				for (int i = 0; i < ts.stateBitCount; i++)
+					nets[i] = -(s >> i & 1);
+
+				for (int i = 0; i < ts.inputBitCount; i++)
+					nets[ts.stateBitCount + i] = -(in >> i & 1);
+
+				model.evaluate(nets);
+
+				boolean[] expected = RandomTransitionSystem.evaluate(ts, s, in);
+
+				boolean[] actual = new boolean[nets.length];
+
+				for (int i = 0; i < nets.length; i++) {
+
+					assertEquals(expected[i] ? -1 : 0, nets[i]);
+
+					actual[i] = nets[i] != 0;
+
+				}
+
+				assertEquals(RandomTransitionSystem.getNextState(ts, expected),
+						RandomTransitionSystem.getNextState(ts, actual));
+
+				for (int d = 0; d <= ts.getMaxDelay(); d++) {
+
+					assertEquals(RandomTransitionSystem.holds(expected, ts.assumptions, ts.assumptionDelays, d),
+							RandomTransitionSystem.holds(actual, ts.assumptions, ts.assumptionDelays, d));
+
+					assertEquals(RandomTransitionSystem.holds(expected, ts.assertions, ts.assertionDelays, d),
+							RandomTransitionSystem.holds(actual, ts.assertions, ts.assertionDelays, d));
+
+				}
+
+			}
+
+		}
+
+	}
+
+	@Test
+	public void testRandomSystems() throws Exception {
+
+		Random rnd = new Random(10);
+
+		for (int n = 0; n < 200; n++) {
+
+			TransitionSystem ts = RandomTransitionSystem.create(rnd, 1 + rnd.nextInt(4), rnd.nextInt(3), 12, 2);
+
+			checkEvaluation(ts, compile(ts));
+
+		}
+
+	}
+
+	@Test
+	public void testLargeSystem() throws Exception {
+
+		// enough gates to fill several chunk methods
+
+		Random rnd = new Random(11);
+
+		TransitionSystem ts = RandomTransitionSystem.create(rnd, 4, 2, 5000, 0);
+
+		CompiledModel model = compile(ts);
+
+		int chunks = 0;
+
+		for (Method m : model.getClass().getDeclaredMethods())
+			chunks += m.getName().startsWith("chunk") ? 1 : 0;
+
+		assertTrue(chunks > 5);
+
+		checkEvaluation(ts, model);
+
+	}
+
+	@Test
+	public void testExploreSpace() throws Exception {
+
+		// the search proves the assertions of safe systems and finds a
+		// shortest counter-example of unsafe ones, which replays from reset
+		// (properties have no delays, so the first frame that reaches a
+		// state is the one that matters)
+
+		Random rnd = new Random(12);
+
+		int proofs = 0, counterExamples = 0;
+
+		for (int n = 0; n < 200; n++) {
+
+			int stateBits = 2 + rnd.nextInt(4);
+
+			TransitionSystem ts = RandomTransitionSystem.create(rnd, stateBits, rnd.nextInt(3), 10, 0);
+
+			ModelExplorer explorer = new ModelExplorer(ts, compile(ts));
+
+			int[] inputs = explorer.exploreSpace();
+
+			if (RandomTransitionSystem.isSafe(ts)) {
+
+				assertNull(inputs);
+
+				proofs++;
+
+			} else {
+
+				int expected = RandomTransitionSystem.getShortestViolation(ts, 1 << stateBits);
+
+				assertEquals(expected + 1, inputs.length);
+
+				RandomTransitionSystem.checkCounterExample(ts, explorer.simulate(inputs));
+
+				counterExamples++;
+
+			}
+
+		}
+
+		assertTrue(proofs > 30 && counterExamples > 30);
+
+	}
+
+}
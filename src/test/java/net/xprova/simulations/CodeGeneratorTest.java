@@ -0,0 +1,359 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.xprova.netlist.GateLibrary;
+import net.xprova.netlist.Netlist;
+import net.xprova.netlistgraph.NetlistGraph;
+import net.xprova.netlistgraph.Vertex;
+import net.xprova.propertylanguage.Property;
+import net.xprova.propertylanguage.PropertyBuilder;
+import net.xprova.verilogparser.VerilogParser;
+
+public class CodeGeneratorTest {
+
+	private static GateLibrary library;
+
+	private static final String[] gateTypes = { "AND", "NAND", "OR", "XOR", "NOT" };
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+
+		String gateStrs = "module AND (y, a, b); input a, b; output y; endmodule\n"
+				+ "module NAND (y, a, b); input a, b; output y; endmodule\n"
+				+ "module OR (y, a, b); input a, b; output y; endmodule\n"
+				+ "module XOR (y, a, b); input a, b; output y; endmodule\n"
+				+ "module NOT (y, a); input a; output y; endmodule\n"
+				+ "module DFF (CK, RS, ST, D, Q); input CK, RS, ST, D; output Q; endmodule\n";
+
+		ArrayList<Netlist> gates = VerilogParser.parseString(gateStrs, null);
+
+		library = new GateLibrary(gates);
+
+	}
+
+	private static String getRandomDesign(Random rnd, int flops, int inputs, int gates) {
+
+		// flip-flops q0, q1 ... with inputs x0, x1 ... and gates w0, w1 ...
+		// driven by earlier nets (the flip-flops by any net)
+
+		ArrayList<String> nets = new ArrayList<String>();
+
+		String ports = "clk, rst";
+
+		for (int i = 0; i < inputs; i++) {
+
+			nets.add("x" + i);
+
+			ports += ", x" + i;
+
+		}
+
+		for (int i = 0; i < flops; i++)
+			nets.add("q" + i);
+
+		String body = "";
+
+		for (int i = 0; i < gates; i++) {
+
+			String type = gateTypes[rnd.nextInt(gateTypes.length)];
+
+			String a = nets.get(rnd.nextInt(nets.size())), b = nets.get(rnd.nextInt(nets.size()));
+
+			if ("NOT".equals(type))
+				body += String.format("NOT g%d (w%d, %s);", i, i, a);
+			else
+				body += String.format("%s g%d (w%d, %s, %s);", type, i, i, a, b);
+
+			nets.add("w" + i);
+
+		}
+
+		for (int i = 0; i < flops; i++)
+			body += String.format("DFF f%d (clk, rst, 1'b0, %s, q%d);", i, nets.get(rnd.nextInt(nets.size())), i);
+
+		return String.format("module top (%s); input %s; %s endmodule", ports, ports, body);
+
+	}
+
+	private static NetlistGraph parse(String designStr) throws Exception {
+
+		Netlist design = VerilogParser.parseString(designStr, library).get(0);
+
+		return new NetlistGraph(design);
+
+	}
+
+	private static Property getProperty(NetlistGraph graph, String str) throws Exception {
+
+		HashMap<String, Integer> identifiers = new HashMap<String, Integer>();
+
+		for (Vertex n : graph.getNets())
+			identifiers.put(n.name, 1);
+
+		return PropertyBuilder.build(str, identifiers);
+
+	}
+
+	private static String getRandomNet(Random rnd, int flops, int inputs, int gates) {
+
+		int n = rnd.nextInt(flops + inputs + gates);
+
+		return n < flops ? "q" + n : n < flops + inputs ? "x" + (n - flops) : "w" + (n - flops - inputs);
+
+	}
+
+	private static String getRandomProperty(Random rnd, int flops, int inputs, int gates, int maxDelay) {
+
+		// ~(a op @d b) or (a op @d b) with a random net a and a random
+		// flip-flop or input b (so that delayed operands often repeat)
+
+		String[] ops = { "&", "|", "^" };
+
+		String a = getRandomNet(rnd, flops, inputs, gates), b = getRandomNet(rnd, flops, inputs, 0);
+
+		String op = ops[rnd.nextInt(ops.length)];
+
+		String neg = rnd.nextBoolean() ? "~" : "";
+
+		return String.format("%s(%s %s @%d %s)", neg, a, op, rnd.nextInt(maxDelay + 1), b);
+
+	}
+
+	private static TransitionSystem build(String designStr, String[] assumptionStrs, String[] assertionStrs,
+			boolean reduceCone) throws Exception {
+
+		NetlistGraph graph = parse(designStr);
+
+		ArrayList<Property> assumptions = new ArrayList<Property>();
+
+		ArrayList<Property> assertions = new ArrayList<Property>();
+
+		for (String s : assumptionStrs)
+			assumptions.add(getProperty(graph, s));
+
+		for (String s : assertionStrs)
+			assertions.add(getProperty(graph, s));
+
+		CodeGenerator.addProperties(graph, assumptions, assertions);
+
+		if (reduceCone)
+			CodeGenerator.reduceCone(graph);
+
+		return CodeGenerator.build(graph);
+
+	}
+
+	private static int getDepth(TransitionSystem ts) {
+
+		// a bound that covers every reachable state and property delay
+
+		return ts.getMaxDelay() + (1 << ts.stateBitCount);
+
+	}
+
+	@Test
+	public void testConeReduction() throws Exception {
+
+		// cone-of-influence reduction does not change the first violation
+		// of the assertions (or their absence) and removes flip-flops and
+		// inputs that the properties do not depend on
+
+		Random rnd = new Random(8);
+
+		int reduced = 0, violations = 0;
+
+		for (int n = 0; n < 200; n++) {
+
+			int flops = 2 + rnd.nextInt(3), inputs = 1 + rnd.nextInt(2), gates = 3 + rnd.nextInt(5);
+
+			String designStr = getRandomDesign(rnd, flops, inputs, gates);
+
+			String[] assumptionStrs = new String[rnd.nextInt(2)];
+
+			for (int i = 0; i < assumptionStrs.length; i++)
+				assumptionStrs[i] = getRandomProperty(rnd, flops, inputs, gates, 1);
+
+			String[] assertionStrs = new String[1 + rnd.nextInt(2)];
+
+			for (int i = 0; i < assertionStrs.length; i++)
+				assertionStrs[i] = getRandomProperty(rnd, flops, inputs, gates, 2);
+
+			TransitionSystem full = build(designStr, assumptionStrs, assertionStrs, false);
+
+			TransitionSystem cone = build(designStr, assumptionStrs, assertionStrs, true);
+
+			int expected = RandomTransitionSystem.getShortestViolation(full, getDepth(full));
+
+			assertEquals(expected, RandomTransitionSystem.getShortestViolation(cone, getDepth(full)));
+
+			reduced += cone.stateBitCount + cone.inputBitCount < full.stateBitCount + full.inputBitCount ? 1 : 0;
+
+			violations += expected == -1 ? 0 : 1;
+
+		}
+
+		assertTrue(reduced > 50 && violations > 20 && violations < 180);
+
+	}
+
+	private static int countFlops(NetlistGraph graph) {
+
+		return graph.getModulesByType("DFF").size();
+
+	}
+
+	@Test
+	public void testSharedDelayLines() throws Exception {
+
+		// properties that delay the same expression share its flip-flops
+		// (shorter delays tap into the longer line), different expressions
+		// get their own
+
+		String designStr = "module top (clk, rst, x0, x1); input clk, rst, x0, x1;"
+				+ "DFF f0 (clk, rst, 1'b0, w0, q0); XOR g0 (w0, q0, x0); endmodule";
+
+		NetlistGraph graph = parse(designStr);
+
+		ArrayList<Property> assertions = new ArrayList<Property>();
+
+		String[] assertionStrs = { "~(@2 (x0 & q0) & x1)", "@2 (x0 & q0) | q0", "~(@1 (x0 & q0) ^ x1)",
+				"@2 (x0 | q0) | x1" };
+
+		for (String s : assertionStrs)
+			assertions.add(getProperty(graph, s));
+
+		int before = countFlops(graph);
+
+		CodeGenerator.addProperties(graph, new ArrayList<Property>(),
+				new ArrayList<Property>(assertions.subList(0, 1)));
+
+		assertEquals(2, countFlops(graph) - before);
+
+		graph = parse(designStr);
+
+		CodeGenerator.addProperties(graph, new ArrayList<Property>(),
+				new ArrayList<Property>(assertions.subList(0, 3)));
+
+		assertEquals(2, countFlops(graph) - before);
+
+		graph = parse(designStr);
+
+		CodeGenerator.addProperties(graph, new ArrayList<Property>(), assertions);
+
+		assertEquals(4, countFlops(graph) - before);
+
+	}
+
+	@Test
+	public void testSharedDelayLineResults() throws Exception {
+
+		// the first violation of a set of delayed assertions (which share
+		// delay lines) is the earliest first violation of the assertions
+		// checked one at a time (each with a delay line of its own)
+
+		Random rnd = new Random(9);
+
+		int shared = 0, mixed = 0;
+
+		for (int n = 0; n < 200; n++) {
+
+			int flops = 1 + rnd.nextInt(2), inputs = 1 + rnd.nextInt(2), gates = 2 + rnd.nextInt(3);
+
+			String designStr = getRandomDesign(rnd, flops, inputs, gates);
+
+			String[] assertionStrs = new String[2 + rnd.nextInt(2)];
+
+			for (int i = 0; i < assertionStrs.length; i++)
+				assertionStrs[i] = getRandomProperty(rnd, flops, inputs, gates, 3);
+
+			TransitionSystem all = build(designStr, new String[0], assertionStrs, false);
+
+			int expected = -1, singleFlops = 0;
+
+			HashSet<Integer> depths = new HashSet<Integer>();
+
+			for (String s : assertionStrs) {
+
+				TransitionSystem single = build(designStr, new String[0], new String[] { s }, false);
+
+				int depth = RandomTransitionSystem.getShortestViolation(single, getDepth(all));
+
+				if (depth != -1 && (expected == -1 || depth < expected))
+					expected = depth;
+
+				depths.add(depth);
+
+				singleFlops += single.stateBitCount - flops;
+
+			}
+
+			assertEquals(expected, RandomTransitionSystem.getShortestViolation(all, getDepth(all)));
+
+			shared += all.stateBitCount - flops < singleFlops ? 1 : 0;
+
+			mixed += depths.size() > 1 ? 1 : 0;
+
+		}
+
+		assertTrue(shared > 50 && mixed > 50);
+
+	}
+
+	private static String getResetLine(String template) throws Exception {
+
+		// returns the generated reset state line of a design with 32
+		// flip-flops that are set on reset (reset state 0xffffffff)
+
+		String body = "";
+
+		for (int i = 0; i < 32; i++)
+			body += String.format("DFF f%d (clk, 1'b0, rst, q%d, q%d);", i, i, i);
+
+		NetlistGraph graph = parse("module top (clk, rst); input clk, rst; " + body + " endmodule");
+
+		ArrayList<Property> assertions = new ArrayList<Property>();
+
+		assertions.add(getProperty(graph, "q0"));
+
+		Scanner sc = new Scanner(CodeGeneratorTest.class.getClassLoader().getResourceAsStream(template));
+
+		String templateCode = sc.useDelimiter("\\Z").next();
+
+		sc.close();
+
+		ArrayList<String> lines = CodeGenerator.generate(graph, new ArrayList<Property>(), assertions, templateCode);
+
+		for (String line : lines)
+			if (line.contains("return 0x"))
+				return line.trim();
+
+		return null;
+
+	}
+
+	@Test
+	public void testResetStateLiterals() throws Exception {
+
+		// templates with a long reset state get long literals, a plain
+		// 0xffffffff would be -1 and set the high state bits
+
+		assertEquals("return 0xffffffffL; // {EXPANDED}", getResetLine("template2.j"));
+
+		assertEquals("return 0xffffffffL; // {EXPANDED}", getResetLine("template4.j"));
+
+		assertEquals("return 0xffffffff; // {EXPANDED}", getResetLine("template1.j"));
+
+	}
+
+}
@@ -0,0 +1,164 @@
+package net.xprova.simulations;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.xprova.simulations.DepthFirstExplorer.CycleHandler;
+import net.xprova.simulations.DepthFirstExplorer.Graph;
+import net.xprova.simulations.DepthFirstExplorer.Strategy;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xss1g", "-Xmx4g" })
+public class DepthFirstExplorerBenchmark {
+
+	// Compares the cycle search strategies of DepthFirstExplorer on random
+	// and structured graphs. Run with:
+	//
+	// mvn test-compile exec:java -Dexec.classpathScope=test
+	// -Dexec.mainClass=net.xprova.simulations.DepthFirstExplorerBenchmark
+	//
+	// Graph shapes:
+	//
+	// random  : a ring through all nodes plus 3 random edges per node
+	// counter : state graph of a counter with enable (node i has edges to
+	//           itself and to i + 1, wrapping around)
+	// torus   : square grid with edges to the right and down, wrapping
+	//           around at the edges
+	//
+	// All shapes have search branches as deep as the graph, so the recursive
+	// search runs with a 1 GB thread stack (-Xss1g).
+
+	@Param({ "random", "counter", "torus" })
+	public String shape;
+
+	@Param({ "100000", "1000000" })
+	public int nodes;
+
+	@Param({ "RECURSIVE", "CONTAINERS", "ARRAYS" })
+	public Strategy strategy;
+
+	private Graph graph;
+
+	private static final CycleHandler COUNT_ONLY = new CycleHandler() {
+
+		@Override
+		public boolean handle(int[] path, int length, int target) {
+
+			return true;
+
+		}
+
+	};
+
+	@Setup
+	public void setUp() throws Exception {
+
+		if ("random".equals(shape))
+			graph = getRandomGraph(nodes, 3, new Random(1));
+		else if ("counter".equals(shape))
+			graph = getCounterGraph(nodes);
+		else
+			graph = getTorusGraph((int) Math.sqrt(nodes));
+
+	}
+
+	@Benchmark
+	public long findCycles() {
+
+		return DepthFirstExplorer.findCycles(graph, 0, strategy, COUNT_ONLY);
+
+	}
+
+	public static Graph getRandomGraph(int n, int degree, Random rnd) throws Exception {
+
+		int[] offsets = new int[n + 1];
+
+		int[] targets = new int[n * (degree + 1)];
+
+		for (int i = 0; i < n; i++) {
+
+			offsets[i + 1] = offsets[i] + degree + 1;
+
+			targets[offsets[i]] = (i + 1) % n;
+
+			for (int j = 1; j <= degree; j++)
+				targets[offsets[i] + j] = rnd.nextInt(n);
+
+		}
+
+		return new Graph(offsets, targets);
+
+	}
+
+	public static Graph getCounterGraph(int n) throws Exception {
+
+		int[] offsets = new int[n + 1];
+
+		int[] targets = new int[2 * n];
+
+		for (int i = 0; i < n; i++) {
+
+			offsets[i + 1] = offsets[i] + 2;
+
+			targets[offsets[i]] = i;
+
+			targets[offsets[i] + 1] = (i + 1) % n;
+
+		}
+
+		return new Graph(offsets, targets);
+
+	}
+
+	public static Graph getTorusGraph(int side) throws Exception {
+
+		int n = side * side;
+
+		int[] offsets = new int[n + 1];
+
+		int[] targets = new int[2 * n];
+
+		for (int i = 0; i < n; i++) {
+
+			int row = i / side, col = i % side;
+
+			offsets[i + 1] = offsets[i] + 2;
+
+			targets[offsets[i]] = row * side + (col + 1) % side;
+
+			targets[offsets[i] + 1] = (row + 1) % side * side + col;
+
+		}
+
+		return new Graph(offsets, targets);
+
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		Options opt = new OptionsBuilder().include(DepthFirstExplorerBenchmark.class.getSimpleName()).build();
+
+		new Runner(opt).run();
+
+	}
+
+}
@@ -0,0 +1,141 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import net.xprova.simulations.DepthFirstExplorer.Graph;
+import net.xprova.simulations.DepthFirstExplorer.Lasso;
+import net.xprova.simulations.DepthFirstExplorer.Strategy;
+
+public class DepthFirstExplorerTest {
+
+	private static final int[][][] graphs = {
+
+			{ { 1 }, { 2 }, { 0 } },
+
+			{ { 1, 2 }, { 3, 4 }, { 6 }, {}, { 5, 6 }, { 4 }, {} },
+
+			{ { 1 }, { 2, 5 }, { 3 }, { 4 }, { 2 }, { 6 }, { 7 }, { 5 } },
+
+			{ { 1 }, { 2, 4 }, { 3 }, { 2 }, { 3 } },
+
+			{ { 1, 2, 3 }, { 2 }, { 3 }, { 1 } },
+
+			{ { 1 }, { 2 }, { 3, 4 }, { 1 }, { 1 } },
+
+			{ { 1 }, { 0, 2 }, { 0, 1 } } };
+
+	// cycles of each graph (search branch followed by back edge target)
+
+	private static final int[][][] cycles = {
+
+			{ { 0, 1, 2, 0 } },
+
+			{ { 0, 1, 4, 5, 4 } },
+
+			{ { 0, 1, 2, 3, 4, 2 }, { 0, 1, 5, 6, 7, 5 } },
+
+			{ { 0, 1, 2, 3, 2 } },
+
+			{ { 0, 1, 2, 3, 1 } },
+
+			{ { 0, 1, 2, 3, 1 }, { 0, 1, 2, 4, 1 } },
+
+			{ { 0, 1, 0 }, { 0, 1, 2, 0 }, { 0, 1, 2, 1 } } };
+
+	@Test
+	public void testCycles() throws Exception {
+
+		for (int i = 0; i < graphs.length; i++) {
+
+			Graph graph = Graph.fromAdjacency(graphs[i]);
+
+			for (Strategy strategy : Strategy.values()) {
+
+				ArrayList<int[]> found = DepthFirstExplorer.getCycles(graph, 0, strategy);
+
+				assertEquals(cycles[i].length, found.size());
+
+				for (int j = 0; j < found.size(); j++)
+					assertArrayEquals(cycles[i][j], found.get(j));
+
+			}
+
+		}
+
+	}
+
+	@Test
+	public void testDeepGraph() throws Exception {
+
+		// a ring of a million nodes (a search branch of the same depth)
+
+		int n = 1000000;
+
+		int[] offsets = new int[n + 1];
+
+		int[] targets = new int[n];
+
+		for (int i = 0; i < n; i++) {
+
+			offsets[i + 1] = i + 1;
+
+			targets[i] = (i + 1) % n;
+
+		}
+
+		Graph ring = new Graph(offsets, targets);
+
+		assertEquals(1, DepthFirstExplorer.getCycles(ring, 0, Strategy.ARRAYS).size());
+
+		BitSet accepting = new BitSet(n);
+
+		accepting.set(n / 2);
+
+		Lasso lasso = DepthFirstExplorer.findLasso(ring, 0, accepting);
+
+		assertEquals(n + 1, lasso.nodes.length);
+
+		assertEquals(0, lasso.loopStart);
+
+	}
+
+	@Test
+	public void testLasso() throws Exception {
+
+		// graph 1 has a single cycle (4 -> 5 -> 4)
+
+		Graph graph = Graph.fromAdjacency(graphs[1]);
+
+		BitSet accepting = new BitSet();
+
+		accepting.set(2);
+
+		accepting.set(6);
+
+		assertNull(DepthFirstExplorer.findLasso(graph, 0, accepting));
+
+		accepting.set(5);
+
+		Lasso lasso = DepthFirstExplorer.findLasso(graph, 0, accepting);
+
+		assertArrayEquals(new int[] { 0, 1, 4, 5, 4 }, lasso.nodes);
+
+		assertEquals(2, lasso.loopStart);
+
+	}
+
+	@Test(expected = Exception.class)
+	public void testInvalidGraph() throws Exception {
+
+		new Graph(new int[] { 0, 1 }, new int[] { 1 });
+
+	}
+
+}
@@ -0,0 +1,143 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.xprova.simulations.TransitionSystem.Gate;
+
+public class InductionProverTest {
+
+	@Test
+	public void testRandomSystems() throws Exception {
+
+		// k-induction with simple paths is complete: for k up to the number
+		// of states it either proves the assertions of a safe system or
+		// finds a shortest counter-example of an unsafe one
+
+		Random rnd = new Random(4);
+
+		int proofs = 0, counterExamples = 0;
+
+		for (int n = 0; n < 200; n++) {
+
+			int stateBits = 2 + rnd.nextInt(3);
+
+			TransitionSystem ts = RandomTransitionSystem.create(rnd, stateBits, rnd.nextInt(3), 8, 2);
+
+			boolean safe = RandomTransitionSystem.isSafe(ts);
+
+			InductionProver prover = new InductionProver(ts);
+
+			Waveform w = prover.prove(1 << stateBits);
+
+			assertEquals(safe, prover.isProven());
+
+			if (safe) {
+
+				assertNull(w);
+
+				proofs++;
+
+			} else {
+
+				int maxDepth = ts.getMaxDelay() + (1 << stateBits);
+
+				int expected = RandomTransitionSystem.getShortestViolation(ts, maxDepth);
+
+				assertEquals(expected + 1, w.getCycles());
+
+				RandomTransitionSystem.checkCounterExample(ts, w);
+
+				counterExamples++;
+
+			}
+
+		}
+
+		assertTrue(proofs > 30 && counterExamples > 30);
+
+	}
+
+	private static TransitionSystem getShiftRegister(int length) {
+
+		// a one-hot token s0 -> s1 -> ... -> s(length - 1) -> s0 (reset to
+		// s0), with the assertion that the last two bits are never both high
+
+		TransitionSystem ts = new TransitionSystem();
+
+		ts.netNames = new String[length + 2];
+
+		for (int i = 0; i < length; i++)
+			ts.netNames[i] = "s" + i;
+
+		ts.netNames[length] = "both";
+
+		ts.netNames[length + 1] = "ok";
+
+		ts.stateBitCount = length;
+
+		ts.inputBitCount = 0;
+
+		ts.gates = new ArrayList<Gate>();
+
+		ts.gates.add(new Gate("AND", length, new int[] { length - 2, length - 1 }, 0));
+
+		ts.gates.add(new Gate("NOT", length + 1, new int[] { length }, 0));
+
+		ts.nextState = new int[length];
+
+		for (int i = 0; i < length; i++)
+			ts.nextState[i] = (i + length - 1) % length;
+
+		ts.resetBits = new boolean[length];
+
+		ts.resetBits[0] = true;
+
+		ts.resetState = 1;
+
+		ts.assumptions = new int[0];
+
+		ts.assumptionDelays = new int[0];
+
+		ts.assertions = new int[] { length + 1 };
+
+		ts.assertionDelays = new int[] { 0 };
+
+		ts.liveAssertions = new int[0];
+
+		return ts;
+
+	}
+
+	@Test
+	public void testShiftRegister() throws Exception {
+
+		// the violating state {s2, s3} follows {s1, s2}, which satisfies the
+		// assertion, and so on backwards around the rotation cycle of 4
+		// states. Induction steps with fewer than 5 frames have a
+		// counter-example, longer ones must repeat a state
+
+		TransitionSystem ts = getShiftRegister(4);
+
+		InductionProver prover = new InductionProver(ts);
+
+		assertNull(prover.prove(3));
+
+		assertFalse(prover.isProven());
+
+		prover = new InductionProver(ts);
+
+		assertNull(prover.prove(4));
+
+		assertTrue(prover.isProven());
+
+	}
+
+}
@@ -0,0 +1,278 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.xprova.netlist.GateLibrary;
+import net.xprova.netlist.Netlist;
+import net.xprova.netlistgraph.NetlistGraph;
+import net.xprova.netlistgraph.Vertex;
+import net.xprova.verilogparser.VerilogParser;
+
+public class NetlistOptimizerTest {
+
+	private static GateLibrary library;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+
+		String gateStrs = "module AND (y, a, b); input a, b; output y; endmodule\n"
+				+ "module NAND (y, a, b); input a, b; output y; endmodule\n"
+				+ "module OR (y, a, b); input a, b; output y; endmodule\n"
+				+ "module XOR (y, a, b); input a, b; output y; endmodule\n"
+				+ "module BUF (y, a); input a; output y; endmodule\n"
+				+ "module NOT (y, a); input a; output y; endmodule\n"
+				+ "module TIE0 (y); output y; endmodule\n"
+				+ "module TIE1 (y); output y; endmodule\n"
+				+ "module MUX2 (y, a, b, s); input a, b, s; output y; endmodule\n"
+				+ "module DFF (CK, RS, ST, D, Q); input CK, RS, ST, D; output Q; endmodule\n";
+
+		ArrayList<Netlist> gates = VerilogParser.parseString(gateStrs, null);
+
+		library = new GateLibrary(gates);
+
+	}
+
+	private static NetlistGraph parse(String designStr) throws Exception {
+
+		Netlist design = VerilogParser.parseString(designStr, library).get(0);
+
+		return new NetlistGraph(design);
+
+	}
+
+	private static String getDriverType(NetlistGraph graph, String net) {
+
+		return graph.getSourceModule(graph.getVertex(net)).subtype;
+
+	}
+
+	private static HashSet<String> getDriverInputs(NetlistGraph graph, String net) {
+
+		// returns the names of the input nets of the module driving `net`
+
+		HashSet<String> result = new HashSet<String>();
+
+		for (Vertex s : graph.getSources(graph.getSourceModule(graph.getVertex(net))))
+			result.add(s.name);
+
+		return result;
+
+	}
+
+	private static HashSet<String> set(String... names) {
+
+		return new HashSet<String>(Arrays.asList(names));
+
+	}
+
+	@Test
+	public void testConstantPropagation() throws Exception {
+
+		// TIE0/TIE1 inputs either control a gate (output replaced by a tie
+		// cell) or are dropped from it, MUX2 modules with constant selects
+		// become buffers of the selected input, and constants propagate
+		// through chains of gates
+
+		String designStr = "module top (x, w, y0, y1, y2, y3, y4, y5, y6, y7);" + "input x, w;"
+				+ "output y0, y1, y2, y3, y4, y5, y6, y7;" + "TIE0 t0 (.y(zero));" + "TIE1 t1 (.y(one));"
+				+ "AND g0 (.y(y0), .a(x), .b(zero));" + "NAND g1 (.y(y1), .a(x), .b(zero));"
+				+ "OR g2 (.y(y2), .a(x), .b(one));" + "XOR g3 (.y(y3), .a(x), .b(one));"
+				+ "AND g4 (.y(y4), .a(x), .b(one));" + "NOT g5 (.y(n5), .a(one));"
+				+ "OR g6 (.y(y5), .a(w), .b(n5));" + "MUX2 m1 (.y(y6), .a(x), .b(w), .s(one));"
+				+ "MUX2 m2 (.y(y7), .a(x), .b(w), .s(zero));" + "endmodule";
+
+		NetlistGraph graph = parse(designStr);
+
+		NetlistOptimizer.optimize(graph, new HashSet<Vertex>());
+
+		assertEquals("TIE0", getDriverType(graph, "y0"));
+
+		assertEquals("TIE1", getDriverType(graph, "y1"));
+
+		assertEquals("TIE1", getDriverType(graph, "y2"));
+
+		assertEquals("NOT", getDriverType(graph, "y3"));
+
+		assertEquals(set("x"), getDriverInputs(graph, "y3"));
+
+		assertEquals("BUF", getDriverType(graph, "y4"));
+
+		assertEquals(set("x"), getDriverInputs(graph, "y4"));
+
+		assertEquals("BUF", getDriverType(graph, "y5"));
+
+		assertEquals(set("w"), getDriverInputs(graph, "y5"));
+
+		assertEquals("BUF", getDriverType(graph, "y6"));
+
+		assertEquals(set("w"), getDriverInputs(graph, "y6"));
+
+		assertEquals("BUF", getDriverType(graph, "y7"));
+
+		assertEquals(set("x"), getDriverInputs(graph, "y7"));
+
+		// the original tie cells and the inverted constant are unused
+
+		assertNull(graph.getVertex("t0"));
+
+		assertNull(graph.getVertex("t1"));
+
+		assertNull(graph.getVertex("n5"));
+
+	}
+
+	@Test
+	public void testBufferCollapse() throws Exception {
+
+		// a buffer followed by two inverters collapses to the buffer input
+
+		String designStr = "module top (x, w, y);" + "input x, w;" + "output y;" + "BUF b1 (.y(n1), .a(x));"
+				+ "NOT i1 (.y(n2), .a(n1));" + "NOT i2 (.y(n3), .a(n2));" + "AND g (.y(y), .a(n3), .b(w));"
+				+ "endmodule";
+
+		NetlistGraph graph = parse(designStr);
+
+		int removed = NetlistOptimizer.optimize(graph, new HashSet<Vertex>());
+
+		assertEquals(3, removed);
+
+		assertEquals(1, graph.getModules().size());
+
+		assertEquals(set("x", "w"), getDriverInputs(graph, "y"));
+
+	}
+
+	@Test
+	public void testStructuralHashing() throws Exception {
+
+		// AND gates with swapped inputs are merged, MUX2 modules with swapped
+		// data inputs are not
+
+		String designStr = "module top (x, w, s, y0, y1, y2, y3);" + "input x, w, s;" + "output y0, y1, y2, y3;"
+				+ "AND g1 (.y(n1), .a(x), .b(w));" + "AND g2 (.y(n2), .a(w), .b(x));"
+				+ "NOT i1 (.y(y0), .a(n1));" + "NOT i2 (.y(y1), .a(n2));"
+				+ "MUX2 m1 (.y(n3), .a(x), .b(w), .s(s));" + "MUX2 m2 (.y(n4), .a(w), .b(x), .s(s));"
+				+ "NOT i3 (.y(y2), .a(n3));" + "NOT i4 (.y(y3), .a(n4));" + "endmodule";
+
+		NetlistGraph graph = parse(designStr);
+
+		int removed = NetlistOptimizer.optimize(graph, new HashSet<Vertex>());
+
+		assertEquals(1, removed);
+
+		assertEquals(1, graph.getModulesByType("AND").size());
+
+		assertEquals(getDriverInputs(graph, "y0"), getDriverInputs(graph, "y1"));
+
+		assertEquals(2, graph.getModulesByType("MUX2").size());
+
+		assertEquals(set("n3"), getDriverInputs(graph, "y2"));
+
+		assertEquals(set("n4"), getDriverInputs(graph, "y3"));
+
+	}
+
+	@Test
+	public void testProtectedNets() throws Exception {
+
+		// buffers are removed from flip-flop D inputs and unused logic is
+		// removed, but nets on other flip-flop pins, IO nets and nets in
+		// `keep` stay in the netlist
+
+		String designStr = "module top (clk, rst, x, y);" + "input clk, rst, x;" + "output y;"
+				+ "BUF b1 (.y(d), .a(x));" + "BUF b2 (.y(ck), .a(clk));"
+				+ "DFF ff (.CK(ck), .RS(rst), .D(d), .Q(q));" + "BUF b3 (.y(p), .a(q));" + "BUF b4 (.y(n), .a(q));"
+				+ "BUF b5 (.y(y), .a(q));" + "endmodule";
+
+		NetlistGraph graph = parse(designStr);
+
+		HashSet<Vertex> keep = new HashSet<Vertex>();
+
+		keep.add(graph.getVertex("p"));
+
+		int removed = NetlistOptimizer.optimize(graph, keep);
+
+		assertEquals(2, removed);
+
+		assertNull(graph.getVertex("b1"));
+
+		assertEquals("x", graph.getNet(graph.getVertex("ff"), "D").name);
+
+		assertNull(graph.getVertex("b4"));
+
+		assertNotNull(graph.getVertex("b2"));
+
+		assertEquals("ck", graph.getNet(graph.getVertex("ff"), "CK").name);
+
+		assertNotNull(graph.getVertex("b3"));
+
+		assertNotNull(graph.getVertex("b5"));
+
+	}
+
+	@Test
+	public void testMergeEquivalentFlops() throws Exception {
+
+		// ff1 and ff2 have the same reset value, clock and next state, and
+		// so do ff5 and ff6 once ff1 and ff2 are merged. ff3 (set), ff4
+		// (other clock) and ff7 (other next state) differ from ff1 in one
+		// respect each and are kept
+
+		String designStr = "module top (clk, clk2, rst, x, w);" + "input clk, clk2, rst, x, w;"
+				+ "DFF ff1 (.CK(clk), .RS(rst), .D(x), .Q(q1));" + "DFF ff2 (.CK(clk), .RS(rst), .D(x), .Q(q2));"
+				+ "DFF ff3 (.CK(clk), .ST(rst), .D(x), .Q(q3));" + "DFF ff4 (.CK(clk2), .RS(rst), .D(x), .Q(q4));"
+				+ "NOT i5 (.y(d5), .a(q1));" + "NOT i6 (.y(d6), .a(q2));"
+				+ "DFF ff5 (.CK(clk), .RS(rst), .D(d5), .Q(q5));" + "DFF ff6 (.CK(clk), .RS(rst), .D(d6), .Q(q6));"
+				+ "DFF ff7 (.CK(clk), .RS(rst), .D(w), .Q(q7));" + "endmodule";
+
+		NetlistGraph graph = parse(designStr);
+
+		int merged = NetlistOptimizer.mergeEquivalentFlops(graph);
+
+		assertEquals(2, merged);
+
+		assertEquals(5, graph.getModulesByType("DFF").size());
+
+		assertEquals("BUF", graph.getVertex("ff2").subtype);
+
+		assertEquals(set("q1"), getDriverInputs(graph, "q2"));
+
+		assertEquals("BUF", graph.getVertex("ff6").subtype);
+
+		assertEquals(set("q5"), getDriverInputs(graph, "q6"));
+
+		for (String ff : new String[] { "ff1", "ff3", "ff4", "ff5", "ff7" })
+			assertEquals("DFF", graph.getVertex(ff).subtype);
+
+	}
+
+	@Test
+	public void testMergeNonEquivalentFlops() throws Exception {
+
+		// ff1 and ff2 toggle in opposite phases (next states ~q1 and ~q2 are
+		// structurally alike but the flops start from different reset
+		// values), and ff3 and ff4 have an unknown reset value
+
+		String designStr = "module top (clk, rst);" + "input clk, rst;" + "NOT i1 (.y(d1), .a(q1));"
+				+ "NOT i2 (.y(d2), .a(q2));" + "DFF ff1 (.CK(clk), .RS(rst), .D(d1), .Q(q1));"
+				+ "DFF ff2 (.CK(clk), .ST(rst), .D(d2), .Q(q2));" + "DFF ff3 (.CK(clk), .D(d1), .Q(q3));"
+				+ "DFF ff4 (.CK(clk), .D(d1), .Q(q4));" + "endmodule";
+
+		NetlistGraph graph = parse(designStr);
+
+		assertEquals(0, NetlistOptimizer.mergeEquivalentFlops(graph));
+
+		assertEquals(4, graph.getModulesByType("DFF").size());
+
+	}
+
+}
@@ -0,0 +1,294 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import net.xprova.simulations.TransitionSystem.Gate;
+
+public class RandomTransitionSystem {
+
+	// Small random TransitionSystems and exhaustive (explicit-state)
+	// reference results for the SAT and BDD engines.
+	//
+	// Frames follow the semantics of bounded model checking: a path of
+	// d + 1 frames violates the assertions if the assumptions hold in all
+	// its frames and the assertions hold in all but the last one. Properties
+	// are ignored in frames before their delay.
+
+	private static final String[] gateTypes = { "AND", "NAND", "OR", "NOR", "XOR", "NOT", "BUF", "MUX2", "CONST" };
+
+	public static TransitionSystem create(Random rnd, int stateBits, int inputBits, int gateCount, int maxDelay) {
+
+		TransitionSystem ts = new TransitionSystem();
+
+		int netCount = stateBits + inputBits + gateCount;
+
+		ts.netNames = new String[netCount];
+
+		for (int i = 0; i < netCount; i++) {
+
+			String prefix = i < stateBits ? "s" : i < stateBits + inputBits ? "i" : "n";
+
+			ts.netNames[i] = prefix + i;
+
+		}
+
+		ts.stateBitCount = stateBits;
+
+		ts.inputBitCount = inputBits;
+
+		ts.gates = new ArrayList<Gate>();
+
+		for (int out = stateBits + inputBits; out < netCount; out++) {
+
+			String type = gateTypes[rnd.nextInt(gateTypes.length)];
+
+			int arity = "CONST".equals(type) ? 0 : "NOT".equals(type) || "BUF".equals(type) ? 1 : 2;
+
+			arity = "MUX2".equals(type) ? 3 : arity;
+
+			arity += arity == 2 && !"XOR".equals(type) ? rnd.nextInt(2) : 0;
+
+			int[] inputs = new int[arity];
+
+			for (int j = 0; j < arity; j++)
+				inputs[j] = rnd.nextInt(out);
+
+			int constant = rnd.nextBoolean() ? TransitionUnroller.H : TransitionUnroller.L;
+
+			ts.gates.add(new Gate(type, out, inputs, constant));
+
+		}
+
+		// next states and properties prefer gate outputs
+
+		ts.nextState = new int[stateBits];
+
+		for (int i = 0; i < stateBits; i++)
+			ts.nextState[i] = getNet(rnd, stateBits + inputBits, netCount);
+
+		ts.resetBits = new boolean[stateBits];
+
+		ts.resetState = 0;
+
+		for (int i = 0; i < stateBits; i++) {
+
+			ts.resetBits[i] = rnd.nextBoolean();
+
+			ts.resetState |= ts.resetBits[i] ? 1L << i : 0;
+
+		}
+
+		ts.assumptions = new int[rnd.nextInt(2)];
+
+		ts.assumptionDelays = new int[ts.assumptions.length];
+
+		for (int i = 0; i < ts.assumptions.length; i++) {
+
+			ts.assumptions[i] = getNet(rnd, stateBits + inputBits, netCount);
+
+			ts.assumptionDelays[i] = rnd.nextInt(maxDelay + 1);
+
+		}
+
+		ts.assertions = new int[1 + rnd.nextInt(2)];
+
+		ts.assertionDelays = new int[ts.assertions.length];
+
+		for (int i = 0; i < ts.assertions.length; i++) {
+
+			ts.assertions[i] = getNet(rnd, stateBits + inputBits, netCount);
+
+			ts.assertionDelays[i] = rnd.nextInt(maxDelay + 1);
+
+		}
+
+		ts.liveAssertions = new int[0];
+
+		return ts;
+
+	}
+
+	private static int getNet(Random rnd, int firstGateNet, int netCount) {
+
+		return rnd.nextInt(4) == 0 ? rnd.nextInt(netCount) : firstGateNet + rnd.nextInt(netCount - firstGateNet);
+
+	}
+
+	public static boolean[] evaluate(TransitionSystem ts, int state, int input) {
+
+		boolean[] nets = new boolean[ts.getNetCount()];
+
+		for (int i = 0; i < ts.stateBitCount; i++)
+			nets[i] = (state >> i & 1) == 1;
+
+		for (int i = 0; i < ts.inputBitCount; i++)
+			nets[ts.stateBitCount + i] = (input >> i & 1) == 1;
+
+		for (Gate g : ts.gates) {
+
+			boolean[] in = new boolean[g.inputs.length];
+
+			for (int j = 0; j < in.length; j++)
+				in[j] = nets[g.inputs[j]];
+
+			boolean y;
+
+			if ("CONST".equals(g.type)) {
+
+				y = g.constant == TransitionUnroller.H;
+
+			} else if ("NOT".equals(g.type)) {
+
+				y = !in[0];
+
+			} else if ("BUF".equals(g.type)) {
+
+				y = in[0];
+
+			} else if ("MUX2".equals(g.type)) {
+
+				y = in[2] ? in[1] : in[0];
+
+			} else if ("XOR".equals(g.type)) {
+
+				y = false;
+
+				for (boolean b : in)
+					y ^= b;
+
+			} else {
+
+				boolean isAnd = "AND".equals(g.type) || "NAND".equals(g.type);
+
+				y = isAnd;
+
+				for (boolean b : in)
+					y = isAnd ? y && b : y || b;
+
+				y ^= "NAND".equals(g.type) || "NOR".equals(g.type);
+
+			}
+
+			nets[g.output] = y;
+
+		}
+
+		return nets;
+
+	}
+
+	public static int getNextState(TransitionSystem ts, boolean[] nets) {
+
+		int next = 0;
+
+		for (int i = 0; i < ts.stateBitCount; i++)
+			next |= nets[ts.nextState[i]] ? 1 << i : 0;
+
+		return next;
+
+	}
+
+	public static boolean holds(boolean[] nets, int[] props, int[] delays, int distance) {
+
+		boolean result = true;
+
+		for (int i = 0; i < props.length; i++)
+			result &= distance < delays[i] || nets[props[i]];
+
+		return result;
+
+	}
+
+	public static int getShortestViolation(TransitionSystem ts, int maxDepth) {
+
+		// returns the last frame of a shortest violating path of at most
+		// maxDepth + 1 frames, or -1 if there is none
+
+		HashSet<Integer> states = new HashSet<Integer>();
+
+		states.add((int) ts.resetState);
+
+		for (int d = 0; d <= maxDepth; d++) {
+
+			HashSet<Integer> next = new HashSet<Integer>();
+
+			for (int s : states) {
+
+				for (int in = 0; in < 1 << ts.inputBitCount; in++) {
+
+					boolean[] nets = evaluate(ts, s, in);
+
+					if (!holds(nets, ts.assumptions, ts.assumptionDelays, d))
+						continue;
+
+					if (!holds(nets, ts.assertions, ts.assertionDelays, d))
+						return d;
+
+					next.add(getNextState(ts, nets));
+
+				}
+
+			}
+
+			states = next;
+
+		}
+
+		return -1;
+
+	}
+
+	public static boolean isSafe(TransitionSystem ts) {
+
+		// true if no path of any length violates the assertions (cycles of a
+		// violating path after the largest delay can be removed, so there is
+		// one within 2^stateBits frames of that delay)
+
+		int frames = ts.getMaxDelay() + (1 << ts.stateBitCount) + 1;
+
+		return getShortestViolation(ts, frames) == -1;
+
+	}
+
+	public static void checkCounterExample(TransitionSystem ts, Waveform w) {
+
+		// replays the inputs of a counter-example from reset and checks that
+		// its states follow the transition relation, that the assumptions
+		// hold throughout and that the assertions fail in the last cycle only
+
+		int cycles = w.getCycles();
+
+		int state = (int) ts.resetState;
+
+		for (int d = 0; d < cycles; d++) {
+
+			int input = 0;
+
+			for (int i = 0; i < ts.inputBitCount; i++)
+				input |= w.getSignal(ts.netNames[ts.stateBitCount + i])[d] != 0 ? 1 << i : 0;
+
+			boolean[] nets = evaluate(ts, state, input);
+
+			for (int i = 0; i < ts.getNetCount(); i++)
+				assertEquals(nets[i], w.getSignal(ts.netNames[i])[d] != 0);
+
+			assertTrue(holds(nets, ts.assumptions, ts.assumptionDelays, d));
+
+			if (d < cycles - 1)
+				assertTrue(holds(nets, ts.assertions, ts.assertionDelays, d));
+			else
+				assertFalse(holds(nets, ts.assertions, ts.assertionDelays, d));
+
+			state = getNextState(ts, nets);
+
+		}
+
+	}
+
+}
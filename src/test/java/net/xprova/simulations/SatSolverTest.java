@@ -0,0 +1,232 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SatSolverTest {
+
+	private static final int VARS = 10;
+
+	private static boolean isSatisfied(int[] clause, int assignment) {
+
+		// assignment: bit v holds the value of variable v
+
+		for (int lit : clause)
+			if (((assignment >> (lit >> 1) & 1) == 1) != ((lit & 1) == 1))
+				return true;
+
+		return false;
+
+	}
+
+	private static boolean isSatisfiable(ArrayList<int[]> clauses, int... assumptions) {
+
+		// truth table check
+
+		for (int a = 0; a < 1 << VARS; a++) {
+
+			boolean sat = true;
+
+			for (int[] c : clauses)
+				sat &= isSatisfied(c, a);
+
+			for (int lit : assumptions)
+				sat &= isSatisfied(new int[] { lit }, a);
+
+			if (sat)
+				return true;
+
+		}
+
+		return false;
+
+	}
+
+	private static void checkModel(SatSolver solver, ArrayList<int[]> clauses, int... assumptions) {
+
+		for (int[] c : clauses) {
+
+			boolean sat = false;
+
+			for (int lit : c)
+				sat |= solver.getModelValue(lit);
+
+			assertTrue("model does not satisfy a clause", sat);
+
+		}
+
+		for (int lit : assumptions)
+			assertTrue("model does not satisfy an assumption", solver.getModelValue(lit));
+
+	}
+
+	private static int[] randomLits(Random rnd, int count) {
+
+		int[] lits = new int[count];
+
+		for (int i = 0; i < count; i++)
+			lits[i] = SatSolver.lit(rnd.nextInt(VARS), rnd.nextBoolean());
+
+		return lits;
+
+	}
+
+	@Test
+	public void testRandomFormulas() throws Exception {
+
+		// random 3-CNF formulas around the satisfiability threshold, each
+		// solved without and then under several sets of assumptions (the
+		// solver keeps its learnt clauses between calls)
+
+		Random rnd = new Random(1);
+
+		int satCount = 0, unsatCount = 0;
+
+		for (int n = 0; n < 300; n++) {
+
+			SatSolver solver = new SatSolver();
+
+			for (int i = 0; i < VARS; i++)
+				solver.newVar();
+
+			ArrayList<int[]> clauses = new ArrayList<int[]>();
+
+			int clauseCount = 30 + rnd.nextInt(25);
+
+			for (int i = 0; i < clauseCount; i++) {
+
+				int[] c = randomLits(rnd, 3);
+
+				clauses.add(c);
+
+				solver.addClause(c);
+
+			}
+
+			boolean expected = isSatisfiable(clauses);
+
+			assertEquals(expected, solver.solve());
+
+			if (expected) {
+
+				checkModel(solver, clauses);
+
+				satCount++;
+
+			} else {
+
+				unsatCount++;
+
+			}
+
+			for (int k = 0; k < 5; k++) {
+
+				int[] assumptions = randomLits(rnd, 1 + rnd.nextInt(3));
+
+				boolean expectedA = isSatisfiable(clauses, assumptions);
+
+				assertEquals(expectedA, solver.solve(assumptions));
+
+				if (expectedA)
+					checkModel(solver, clauses, assumptions);
+
+			}
+
+		}
+
+		// the formulas cover both results
+
+		assertTrue(satCount > 50 && unsatCount > 50);
+
+	}
+
+	@Test
+	public void testIncrementalClauses() throws Exception {
+
+		// clauses added between calls to solve narrow the models down until
+		// the formula becomes unsatisfiable
+
+		Random rnd = new Random(2);
+
+		for (int n = 0; n < 100; n++) {
+
+			SatSolver solver = new SatSolver();
+
+			for (int i = 0; i < VARS; i++)
+				solver.newVar();
+
+			ArrayList<int[]> clauses = new ArrayList<int[]>();
+
+			boolean expected = true;
+
+			while (expected) {
+
+				int[] c = randomLits(rnd, 1 + rnd.nextInt(3));
+
+				clauses.add(c);
+
+				boolean added = solver.addClause(c);
+
+				expected = isSatisfiable(clauses);
+
+				assertTrue(added || !expected);
+
+				assertEquals(expected, solver.solve());
+
+				if (expected)
+					checkModel(solver, clauses);
+
+			}
+
+			assertFalse(solver.solve());
+
+		}
+
+	}
+
+	@Test
+	public void testPigeonHole() throws Exception {
+
+		// 5 pigeons do not fit into 4 holes, 4 pigeons do
+
+		for (int pigeons = 4; pigeons <= 5; pigeons++) {
+
+			int holes = 4;
+
+			SatSolver solver = new SatSolver();
+
+			int[][] vars = new int[pigeons][holes];
+
+			for (int p = 0; p < pigeons; p++)
+				for (int h = 0; h < holes; h++)
+					vars[p][h] = solver.newVar();
+
+			for (int p = 0; p < pigeons; p++) {
+
+				int[] c = new int[holes];
+
+				for (int h = 0; h < holes; h++)
+					c[h] = SatSolver.lit(vars[p][h], false);
+
+				solver.addClause(c);
+
+			}
+
+			for (int h = 0; h < holes; h++)
+				for (int p1 = 0; p1 < pigeons; p1++)
+					for (int p2 = p1 + 1; p2 < pigeons; p2++)
+						solver.addClause(SatSolver.lit(vars[p1][h], true), SatSolver.lit(vars[p2][h], true));
+
+			assertEquals(pigeons <= holes, solver.solve());
+
+		}
+
+	}
+
+}
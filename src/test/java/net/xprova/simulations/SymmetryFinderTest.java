@@ -0,0 +1,364 @@
+package net.xprova.simulations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.xprova.simulations.SymmetryFinder.Symmetry;
+import net.xprova.simulations.TransitionSystem.Gate;
+
+public class SymmetryFinderTest {
+
+	private static int swapBits(int x, int[] swaps, int offset) {
+
+		// applies the swaps (pairs of bit indices, less `offset`) to x
+
+		int result = x;
+
+		for (int j = 0; j < swaps.length; j += 2) {
+
+			int a = swaps[j] - offset, b = swaps[j + 1] - offset;
+
+			int bitA = x >> a & 1, bitB = x >> b & 1;
+
+			result = result & ~(1 << a) & ~(1 << b) | bitA << b | bitB << a;
+
+		}
+
+		return result;
+
+	}
+
+	private static boolean allHold(boolean[] nets, int[] props) {
+
+		boolean result = true;
+
+		for (int p : props)
+			result &= nets[p];
+
+		return result;
+
+	}
+
+	private static void checkAutomorphism(TransitionSystem ts, Symmetry sym) {
+
+		// exhaustive check that the swaps preserve the reset state, commute
+		// with the transition function and preserve the intersections of
+		// assumptions and of assertions
+
+		int reset = (int) ts.resetState;
+
+		assertEquals(reset, swapBits(reset, sym.stateSwaps, 0));
+
+		for (int s = 0; s < 1 << ts.stateBitCount; s++) {
+
+			for (int in = 0; in < 1 << ts.inputBitCount; in++) {
+
+				boolean[] nets = RandomTransitionSystem.evaluate(ts, s, in);
+
+				int s2 = swapBits(s, sym.stateSwaps, 0), in2 = swapBits(in, sym.inputSwaps, 0);
+
+				boolean[] nets2 = RandomTransitionSystem.evaluate(ts, s2, in2);
+
+				int next = RandomTransitionSystem.getNextState(ts, nets);
+
+				assertEquals(swapBits(next, sym.stateSwaps, 0), RandomTransitionSystem.getNextState(ts, nets2));
+
+				assertEquals(allHold(nets, ts.assumptions), allHold(nets2, ts.assumptions));
+
+				assertEquals(allHold(nets, ts.assertions), allHold(nets2, ts.assertions));
+
+			}
+
+		}
+
+	}
+
+	private static TransitionSystem duplicate(TransitionSystem c) {
+
+		// two copies of component c (copy names end with _dup) with an
+		// assertion that both copies satisfy the assertion of c
+
+		int s = c.stateBitCount, i = c.inputBitCount, g = c.gates.size();
+
+		int netCount = 2 * (s + i + g) + 1;
+
+		TransitionSystem ts = new TransitionSystem();
+
+		ts.netNames = new String[netCount];
+
+		ts.stateBitCount = 2 * s;
+
+		ts.inputBitCount = 2 * i;
+
+		// net n of copy k (state bits, then inputs, then gates)
+
+		int[][] map = new int[2][c.getNetCount()];
+
+		for (int k = 0; k < 2; k++) {
+
+			for (int n = 0; n < c.getNetCount(); n++) {
+
+				if (n < s)
+					map[k][n] = k * s + n;
+				else if (n < s + i)
+					map[k][n] = 2 * s + k * i + (n - s);
+				else
+					map[k][n] = 2 * (s + i) + k * g + (n - s - i);
+
+				ts.netNames[map[k][n]] = c.netNames[n] + (k == 1 ? "_dup" : "");
+
+			}
+
+		}
+
+		ts.gates = new ArrayList<Gate>();
+
+		for (int k = 0; k < 2; k++) {
+
+			for (Gate gate : c.gates) {
+
+				int[] inputs = new int[gate.inputs.length];
+
+				for (int j = 0; j < inputs.length; j++)
+					inputs[j] = map[k][gate.inputs[j]];
+
+				ts.gates.add(new Gate(gate.type, map[k][gate.output], inputs, gate.constant));
+
+			}
+
+		}
+
+		int both = netCount - 1;
+
+		ts.netNames[both] = "both";
+
+		ts.gates.add(new Gate("AND", both, new int[] { map[0][c.assertions[0]], map[1][c.assertions[0]] }, 0));
+
+		ts.nextState = new int[2 * s];
+
+		ts.resetBits = new boolean[2 * s];
+
+		for (int k = 0; k < 2; k++) {
+
+			for (int n = 0; n < s; n++) {
+
+				ts.nextState[k * s + n] = map[k][c.nextState[n]];
+
+				ts.resetBits[k * s + n] = c.resetBits[n];
+
+				ts.resetState |= c.resetBits[n] ? 1L << (k * s + n) : 0;
+
+			}
+
+		}
+
+		ts.assumptions = new int[0];
+
+		ts.assumptionDelays = new int[0];
+
+		ts.assertions = new int[] { both };
+
+		ts.assertionDelays = new int[] { 0 };
+
+		ts.liveAssertions = new int[0];
+
+		return ts;
+
+	}
+
+	private static boolean swapsCopies(TransitionSystem ts, Symmetry sym) {
+
+		// true if the symmetry maps the state bits of one copy onto the
+		// other
+
+		int half = ts.stateBitCount / 2;
+
+		boolean result = sym.stateSwaps.length > 0;
+
+		for (int j = 0; j < sym.stateSwaps.length; j += 2)
+			result &= sym.stateSwaps[j] < half && sym.stateSwaps[j + 1] >= half;
+
+		return result;
+
+	}
+
+	@Test
+	public void testDuplicatedComponents() throws Exception {
+
+		// a design made of two copies of a random component has a symmetry
+		// that swaps the copies, and every symmetry found is an automorphism
+
+		Random rnd = new Random(6);
+
+		for (int n = 0; n < 200; n++) {
+
+			TransitionSystem c = RandomTransitionSystem.create(rnd, 1 + rnd.nextInt(3), rnd.nextInt(2), 6, 0);
+
+			TransitionSystem ts = duplicate(c);
+
+			ArrayList<Symmetry> symmetries = SymmetryFinder.find(ts);
+
+			boolean swapsCopies = false;
+
+			for (Symmetry sym : symmetries) {
+
+				checkAutomorphism(ts, sym);
+
+				swapsCopies |= swapsCopies(ts, sym);
+
+			}
+
+			assertTrue("no symmetry swaps the copies", swapsCopies);
+
+		}
+
+	}
+
+	@Test
+	public void testNearSymmetricComponents() throws Exception {
+
+		// changing a reset value, a gate type or a gate input of the second
+		// copy breaks the symmetry of the copies, symmetries that remain
+		// (if any) must still be automorphisms
+
+		Random rnd = new Random(7);
+
+		String[] types = { "AND", "OR", "XOR" };
+
+		int broken = 0;
+
+		for (int n = 0; n < 300; n++) {
+
+			TransitionSystem c = RandomTransitionSystem.create(rnd, 1 + rnd.nextInt(3), rnd.nextInt(2), 6, 0);
+
+			TransitionSystem ts = duplicate(c);
+
+			int change = rnd.nextInt(3);
+
+			int gateIndex = c.gates.size() + rnd.nextInt(c.gates.size());
+
+			Gate gate = ts.gates.get(gateIndex);
+
+			if (change == 0) {
+
+				int k = c.stateBitCount + rnd.nextInt(c.stateBitCount);
+
+				ts.resetBits[k] = !ts.resetBits[k];
+
+				ts.resetState ^= 1L << k;
+
+			} else if (change == 1) {
+
+				ts.gates.set(gateIndex, new Gate(types[rnd.nextInt(3)], gate.output, new int[] { gate.output - 1,
+						gate.output - 2 }, 0));
+
+			} else if (gate.inputs.length > 0) {
+
+				gate.inputs[rnd.nextInt(gate.inputs.length)] = rnd.nextInt(gate.output);
+
+			}
+
+			ArrayList<Symmetry> symmetries = SymmetryFinder.find(ts);
+
+			boolean swapsCopies = false;
+
+			for (Symmetry sym : symmetries) {
+
+				checkAutomorphism(ts, sym);
+
+				swapsCopies |= swapsCopies(ts, sym);
+
+			}
+
+			broken += swapsCopies ? 0 : 1;
+
+		}
+
+		// most changes are observable
+
+		assertTrue(broken > 150);
+
+	}
+
+	private static TransitionSystem getCounters(boolean sameReset, boolean sameAssertion) {
+
+		// two 2-bit counters (a0, a1 and b0, b1) with enables ea and eb and
+		// the assertion that they are not both at 3 (or that the first one
+		// is not at 3)
+
+		TransitionSystem ts = new TransitionSystem();
+
+		ts.netNames = new String[] { "a0", "a1", "b0", "b1", "ea", "eb", "na0", "na1", "ca", "nb0", "nb1", "cb", "a3",
+				"b3", "both3", "ok" };
+
+		ts.stateBitCount = 4;
+
+		ts.inputBitCount = 2;
+
+		ts.gates = new ArrayList<Gate>();
+
+		for (int k = 0; k < 2; k++) {
+
+			int q0 = 2 * k, q1 = 2 * k + 1, en = 4 + k, base = 6 + 3 * k;
+
+			ts.gates.add(new Gate("XOR", base, new int[] { q0, en }, 0));
+
+			ts.gates.add(new Gate("AND", base + 2, new int[] { q0, en }, 0));
+
+			ts.gates.add(new Gate("XOR", base + 1, new int[] { q1, base + 2 }, 0));
+
+		}
+
+		ts.gates.add(new Gate("AND", 12, new int[] { 0, 1 }, 0));
+
+		ts.gates.add(new Gate("AND", 13, new int[] { 2, 3 }, 0));
+
+		ts.gates.add(new Gate("AND", 14, new int[] { 12, 13 }, 0));
+
+		ts.gates.add(new Gate("NOT", 15, new int[] { sameAssertion ? 14 : 12 }, 0));
+
+		ts.nextState = new int[] { 6, 7, 9, 10 };
+
+		ts.resetBits = new boolean[] { false, false, !sameReset, false };
+
+		ts.resetState = sameReset ? 0 : 4;
+
+		ts.assumptions = new int[0];
+
+		ts.assumptionDelays = new int[0];
+
+		ts.assertions = new int[] { 15 };
+
+		ts.assertionDelays = new int[] { 0 };
+
+		ts.liveAssertions = new int[0];
+
+		return ts;
+
+	}
+
+	@Test
+	public void testCounters() throws Exception {
+
+		TransitionSystem ts = getCounters(true, true);
+
+		ArrayList<Symmetry> symmetries = SymmetryFinder.find(ts);
+
+		assertEquals(1, symmetries.size());
+
+		checkAutomorphism(ts, symmetries.get(0));
+
+		assertEquals("[0, 2, 1, 3] [0, 1]", symmetries.get(0).toString());
+
+		assertEquals(0, SymmetryFinder.find(getCounters(false, true)).size());
+
+		assertEquals(0, SymmetryFinder.find(getCounters(true, false)).size());
+
+	}
+
+}
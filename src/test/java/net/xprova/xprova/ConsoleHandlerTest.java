@@ -0,0 +1,93 @@
+package net.xprova.xprova;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import net.xprova.netlistgraph.NetlistGraph;
+import net.xprova.netlistgraph.Vertex;
+
+public class ConsoleHandlerTest {
+
+	private static String writeTempFile(String content) throws Exception {
+
+		File f = File.createTempFile("xprova", ".v");
+
+		f.deleteOnExit();
+
+		PrintWriter pw = new PrintWriter(f);
+
+		pw.print(content);
+
+		pw.close();
+
+		return f.getAbsolutePath();
+
+	}
+
+	private static TreeSet<String> getModules(ConsoleHandler handler) throws Exception {
+
+		// returns "<name> <type>" of each module of the current design
+
+		Field field = ConsoleHandler.class.getDeclaredField("current");
+
+		field.setAccessible(true);
+
+		NetlistGraph current = (NetlistGraph) field.get(handler);
+
+		TreeSet<String> result = new TreeSet<String>();
+
+		for (Vertex v : current.getModules())
+			result.add(v.name + " " + v.subtype);
+
+		return result;
+
+	}
+
+	@Test
+	public void testKeepDoesNotReduceDesign() throws Exception {
+
+		// prove -k adds the property logic to the current design but must
+		// not remove flip-flops outside the cone of influence (f3) or
+		// collapse buffers (b1) in it
+
+		String libStr = "module AND (y, a, b); input a, b; output y; endmodule\n"
+				+ "module XOR (y, a, b); input a, b; output y; endmodule\n"
+				+ "module BUF (y, a); input a; output y; endmodule\n"
+				+ "module NOT (y, a); input a; output y; endmodule\n"
+				+ "module DFF (CK, RS, ST, D, Q); input CK, RS, ST, D; output Q; endmodule\n";
+
+		String designStr = "module top (clk, rst, x, y); input clk, rst, x; output y;"
+				+ "DFF f1 (clk, rst, 1'b0, x, q1); BUF b1 (q1b, q1); DFF f2 (clk, rst, 1'b0, q1b, q2);"
+				+ "DFF f3 (clk, rst, 1'b0, q3n, q3); NOT g1 (q3n, q3); XOR g2 (y, q2, q3); endmodule";
+
+		ConsoleHandler handler = new ConsoleHandler(new PrintStream(new ByteArrayOutputStream()));
+
+		handler.library(new String[] { "load", writeTempFile(libStr) });
+
+		handler.flop(new String[] { "define", "DFF", "CK", "RS", "D" });
+
+		handler.read(new String[] { writeTempFile(designStr) });
+
+		handler.assertp(new String[] { "~(q1", "&", "q2)" });
+
+		TreeSet<String> before = getModules(handler);
+
+		handler.prove(new String[] { "-k", "--bmc", "3" });
+
+		TreeSet<String> after = getModules(handler);
+
+		after.retainAll(before);
+
+		assertEquals(before, after);
+
+	}
+
+}